@@ -1,7 +1,8 @@
 package tests;
 
-import videoUtility.FourCC;
 import videoUtility.ICCFrameWriter;
+import videoUtility.Utility;
+import videoSender.FrameSource;
 import videoSender.ICCSetup;
 import java.io.ByteArrayOutputStream;
 import java.util.LinkedList;
@@ -9,8 +10,6 @@ import java.util.LinkedList;
 import javax.imageio.ImageIO;
 
 import org.opencv.core.Mat;
-import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.Videoio;
 import org.opencv.imgproc.Imgproc;
 
 public class CompressionTest {
@@ -18,20 +17,22 @@ public class CompressionTest {
 	//Main
 	//-------------------------------------------------------------------------
 	public static void main(String[] args) {
-		String cvlib = "C:\\Libraries\\opencv\\build\\java\\x64\\opencv_java320.dll";
-		System.load(cvlib);
-//		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		Utility.loadOpenCV();
 		
 		Mat _mat = new Mat();
 		ByteArrayOutputStream output = new ByteArrayOutputStream();
 		LinkedList<Long> matlist = new LinkedList<>();
 		LinkedList<Long> imglist = new LinkedList<>();
 		ICCFrameWriter segmentWriter = new ICCFrameWriter(_mat, output);
-		VideoCapture grabber = null;
+		FrameSource grabber = null;
 		try{
-			grabber = getVideoCapture();
+			grabber = new ICCSetup()
+					.setFPS(20)
+					.setSource(System.getProperty("source"))
+					.getFrameSource();
 		}catch(Exception e){
 			e.printStackTrace();
+			return;
 		}
 
 		for(int i=0;i<100;i++){
@@ -59,6 +60,7 @@ public class CompressionTest {
 			}
 		}
 
+		grabber.release();
 		System.out.println("Average mat size: " + avg(matlist));
 		System.out.println("Average img size: " + avg(imglist));
 		
@@ -73,20 +75,4 @@ public class CompressionTest {
 		}
 		return total/sz;
 	}
-	private static VideoCapture getVideoCapture() throws Exception {
-		VideoCapture _videoCap = new VideoCapture(0);
-//		_videoCap.set(Videoio.CAP_PROP_FOURCC, new FourCC("MJPG").toInt());
-		_videoCap.set(Videoio.CAP_PROP_FPS, 20);
-		_videoCap.set(Videoio.CV_CAP_PROP_FRAME_WIDTH, 640);
-		_videoCap.set(Videoio.CV_CAP_PROP_FRAME_HEIGHT, 480);
-
-		System.out.println("Prop: " + Videoio.CAP_PROP_FPS
-		+ "\nVideoGetFPS: " + _videoCap.get(Videoio.CV_CAP_PROP_FRAME_HEIGHT));
-		
-		if(!_videoCap.isOpened()){
-			throw new Exception("Failed to open video stream");
-		}
-		
-		return _videoCap;
-	}
 }
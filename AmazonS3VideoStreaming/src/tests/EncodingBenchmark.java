@@ -0,0 +1,103 @@
+package tests;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import videoUtility.ICCFrameWriter;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Measures how many 640x480 grayscale frames ICCFrameWriter can encode per
+ * second on one core, using the old ImageIO round trip and the direct
+ * imencode path. Frames are synthetic, so no camera is required.
+ */
+public class EncodingBenchmark {
+
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+	private static final int WARMUP_FRAMES = 50;
+	private static final int FRAMES = 300;
+	private static final int SEGMENT_LENGTH = 24;
+
+	//-------------------------------------------------------------------------
+	//Main
+	//-------------------------------------------------------------------------
+	public static void main(String[] args) {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+		Mat frame = createFrame();
+		double before = run(frame, false);
+		double after = run(frame, true);
+		DecimalFormat df = new DecimalFormat("#.##");
+
+		System.out.println("Resolution: " + WIDTH + "x" + HEIGHT + " grayscale");
+		System.out.println("ImageIO round trip: " + df.format(before) + " frames/sec per core");
+		System.out.println("Direct imencode:    " + df.format(after) + " frames/sec per core");
+		System.out.println("Speedup: " + df.format(after/before) + "x");
+		frame.release();
+	}
+
+	//-------------------------------------------------------------------------
+	//Private static methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Encodes FRAMES frames and reports frames per CPU second of the calling
+	 * thread, which is the throughput of a single core.
+	 *
+	 * @param frame		The frame to encode repeatedly.
+	 * @param direct	Which encoding path ICCFrameWriter should use.
+	 * @return			Frames encoded per second of thread CPU time.
+	 */
+	private static double run(Mat frame, boolean direct) {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ICCFrameWriter writer = new ICCFrameWriter(frame.clone(), output);
+		long start = 0;
+
+		writer.setDirectEncoding(direct);
+		writer.setFrames(SEGMENT_LENGTH);
+		try {
+			for(int i = 0; i < WARMUP_FRAMES + FRAMES; i++){
+				if(i == WARMUP_FRAMES){
+					start = bean.getCurrentThreadCpuTime();
+				}
+				writer.write();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		double seconds = (bean.getCurrentThreadCpuTime() - start)/1e9;
+		writer.close();
+
+		return FRAMES/seconds;
+	}
+
+	/**
+	 * Creates a gradient with noise so that the JPEG encoder has realistic
+	 * work to do.
+	 */
+	private static Mat createFrame() {
+		Mat frame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+		Mat noise = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+		byte[] row = new byte[WIDTH];
+
+		for(int y = 0; y < HEIGHT; y++){
+			for(int x = 0; x < WIDTH; x++){
+				row[x] = (byte)((x + y) / 5);
+			}
+			frame.put(y, 0, row);
+		}
+		Core.randn(noise, 0, 12);
+		Core.add(frame, noise, frame);
+		noise.release();
+
+		return frame;
+	}
+}
@@ -0,0 +1,150 @@
+package tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import videoUtility.InMemoryObjectStore;
+import videoUtility.LocalDirectoryObjectStore;
+import videoUtility.ObjectStore;
+import videoUtility.RangedDownload;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Checks that the local ObjectStores behave alike (put, get, ranges, list,
+ * delete, batch delete, exists and missing keys), then uploads segments to an
+ * InMemoryObjectStore shaped like a slow uplink with 1, 2 and 4 puts in
+ * flight, the way S3Uploader does with -DuploadWindow. Last, a large
+ * segment is downloaded with one GET and with parallel ranged GETs, and the
+ * time until its first bytes can be used is compared with the whole.
+ */
+public class ObjectStoreBenchmark {
+
+	private static final int SEGMENTS = 40;
+	private static final int SEGMENT_BYTES = 64 * 1024;
+	private static final long LATENCY = 50;//ms
+	private static final long BANDWIDTH = 2 * 1024 * 1024;//bytes per second
+	private static final int LARGE_SEGMENT = 4 * 1024 * 1024;
+	private static final int PART_SIZE = 512 * 1024;
+
+	//-------------------------------------------------------------------------
+	//Main
+	//-------------------------------------------------------------------------
+	public static void main(String[] args) throws Exception {
+		check(new InMemoryObjectStore());
+		check(new LocalDirectoryObjectStore(
+				Files.createTempDirectory("store").toString()));
+		System.out.println("Stores behave alike");
+
+		InMemoryObjectStore store = new InMemoryObjectStore()
+				.setLatency(LATENCY)
+				.setBandwidth(BANDWIDTH);
+		for(int window : new int[]{1, 2, 4}){
+			store.clear();
+			System.out.printf("window %d: %.1f segments/sec%n", window, upload(store, window));
+		}
+
+		byte[] large = new byte[LARGE_SEGMENT];
+		new Random(1).nextBytes(large);
+		store.put("large", large);
+		long start = System.nanoTime();
+		expect(Arrays.equals(store.get("large"), large), "single GET");
+		System.out.printf("single GET: %d ms%n", (System.nanoTime() - start)/1000000);
+		for(int threads : new int[]{2, 4, 8}){
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			RangedDownload download = new RangedDownload(store, executor, PART_SIZE);
+			start = System.nanoTime();
+			expect(Arrays.equals(download.get("large"), large), "ranged GET");
+			System.out.printf("ranged GET, %d threads: %d ms%n", threads,
+					(System.nanoTime() - start)/1000000);
+			executor.shutdown();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		final long[] firstBytes = {0};
+		final long begin = System.nanoTime();
+		byte[] data = new RangedDownload(store, executor, PART_SIZE).get("large",
+				new RangedDownload.Progress() {
+			public void started(byte[] data){}
+			public void received(int bytes){
+				if(firstBytes[0] == 0) firstBytes[0] = System.nanoTime() - begin;
+			}
+		});
+		expect(Arrays.equals(data, large), "progressive GET");
+		System.out.printf("progressive GET: first bytes %d ms, whole %d ms%n",
+				firstBytes[0]/1000000, (System.nanoTime() - begin)/1000000);
+		executor.shutdown();
+	}
+
+	//-------------------------------------------------------------------------
+	//Private static methods
+	//-------------------------------------------------------------------------
+	private static void check(ObjectStore store) throws Exception {
+		byte[] data = {1, 2, 3, 4, 5};
+		store.put("myvideo1", data);
+		store.put("myvideo2", data);
+		store.put("setup.txt", data);
+		expect(Arrays.equals(store.get("myvideo1"), data), store + ": get");
+		byte[] range = new byte[4];
+		expect(store.getRange("myvideo1", 3, range, 1, 3) == data.length, store + ": range length");
+		expect(Arrays.equals(range, new byte[]{0, 4, 5, 0}), store + ": range " + Arrays.toString(range));
+		byte[] small = new RangedDownload(store, null, 2).get("myvideo1");
+		expect(Arrays.equals(small, data), store + ": ranged download");
+		expect(store.exists("myvideo2"), store + ": exists");
+
+		List<String> keys = store.list("myvideo");
+		Collections.sort(keys);
+		expect(keys.equals(Arrays.asList("myvideo1", "myvideo2")), store + ": list " + keys);
+
+		store.delete("myvideo1");
+		store.delete("myvideo1");//not an error
+		expect(!store.exists("myvideo1"), store + ": delete");
+		List<String> failed = store.deleteAll(Arrays.asList("myvideo1", "myvideo2", "setup.txt"));
+		expect(failed.isEmpty() && store.list("").isEmpty(), store + ": delete all " + failed);
+		try{
+			store.get("myvideo1");
+			expect(false, store + ": missing key");
+		} catch(FileNotFoundException e){
+			//expected
+		}
+		store.close();
+	}
+
+	private static void expect(boolean condition, String what){
+		if(!condition){
+			throw new IllegalStateException("Failed: " + what);
+		}
+	}
+
+	/**
+	 * @return	Segments stored per second.
+	 */
+	private static double upload(ObjectStore store, int window)
+			throws InterruptedException, IOException {
+		final Semaphore inFlight = new Semaphore(window);
+		byte[] segment = new byte[SEGMENT_BYTES];
+		long start = System.nanoTime();
+		for(int i = 0; i < SEGMENTS; i++){
+			inFlight.acquire();
+			store.putAsync("myvideo" + i, new ByteArrayInputStream(segment), segment.length,
+					null, new ObjectStore.PutListener() {
+				public void putFinished(boolean success){
+					inFlight.release();
+				}
+			});
+		}
+		inFlight.acquire(window);
+		double rate = SEGMENTS/((System.nanoTime() - start)/1e9);
+		expect(store.list("myvideo").size() == SEGMENTS, "every segment stored");
+		return rate;
+	}
+}
@@ -0,0 +1,112 @@
+package tests;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import videoUtility.BoundedQueue;
+import videoUtility.SharedQueue;
+import videoUtility.SpscQueue;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Passes integers through the queues used between the ICC threads. Measures
+ * hand-offs per second with one producer and one consumer, and checks that
+ * every element arrives exactly once and in order. SharedQueue is also run
+ * with several producers and consumers.
+ */
+public class QueueBenchmark {
+
+	private static final int CAPACITY = 64;
+	private static final int ELEMENTS = 2000000;
+	private static final int THREADS = 4;
+
+	//-------------------------------------------------------------------------
+	//Main
+	//-------------------------------------------------------------------------
+	public static void main(String[] args) throws InterruptedException {
+		DecimalFormat df = new DecimalFormat("#,###");
+
+		//warm up
+		runSingle(new SharedQueue<Integer>(CAPACITY), ELEMENTS/10);
+		runSingle(new SpscQueue<Integer>(CAPACITY), ELEMENTS/10);
+
+		System.out.println("SharedQueue 1P/1C: "
+				+ df.format(runSingle(new SharedQueue<Integer>(CAPACITY), ELEMENTS)) + " ops/sec");
+		System.out.println("SpscQueue   1P/1C: "
+				+ df.format(runSingle(new SpscQueue<Integer>(CAPACITY), ELEMENTS)) + " ops/sec");
+		System.out.println("SharedQueue " + THREADS + "P/" + THREADS + "C: "
+				+ df.format(runMulti(new SharedQueue<Integer>(CAPACITY), ELEMENTS)) + " ops/sec");
+	}
+
+	//-------------------------------------------------------------------------
+	//Private static methods
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Elements passed per second.
+	 */
+	private static double runSingle(final BoundedQueue<Integer> queue, final int elements)
+			throws InterruptedException {
+		Thread producer = new Thread(new Runnable() {
+			public void run() {
+				for(int i = 0; i < elements; i++){
+					queue.enqueue(i);
+				}
+			}
+		});
+		long start = System.nanoTime();
+		producer.start();
+		for(int i = 0; i < elements; i++){
+			int next = queue.dequeue();
+			if(next != i){
+				throw new IllegalStateException("Expected " + i + " but got " + next);
+			}
+		}
+		producer.join();
+		return elements/((System.nanoTime() - start)/1e9);
+	}
+
+	/**
+	 * @return	Elements passed per second.
+	 */
+	private static double runMulti(final BoundedQueue<Integer> queue, int elements)
+			throws InterruptedException {
+		final int perThread = elements/THREADS;
+		final AtomicLong sum = new AtomicLong();
+		List<Thread> threads = new ArrayList<>();
+
+		for(int t = 0; t < THREADS; t++){
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					for(int i = 0; i < perThread; i++){
+						queue.enqueue(i);
+					}
+				}
+			}));
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					long local = 0;
+					for(int i = 0; i < perThread; i++){
+						local += queue.dequeue();
+					}
+					sum.addAndGet(local);
+				}
+			}));
+		}
+		long start = System.nanoTime();
+		for(Thread thread : threads){
+			thread.start();
+		}
+		for(Thread thread : threads){
+			thread.join();
+		}
+		double rate = perThread*THREADS/((System.nanoTime() - start)/1e9);
+		long expected = (long)THREADS * perThread * (perThread - 1) / 2;
+		if(sum.get() != expected || !queue.isEmpty()){
+			throw new IllegalStateException("Elements lost or duplicated");
+		}
+		return rate;
+	}
+}
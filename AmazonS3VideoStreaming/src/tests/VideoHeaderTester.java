@@ -4,11 +4,10 @@ import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.videoio.VideoCapture;
 
+import videoSender.FrameSource;
 import videoSender.ICCSetup;
 import videoUtility.DisplayFrame;
 import videoUtility.ICCFrameWriter;
@@ -32,7 +31,8 @@ public class VideoHeaderTester extends Thread{
 			.setFPS(20)
 			.setMaxIndex(MAX_VIDEO_INDEX)
 			.setMaxSegmentsSaved(MAX_SEGMENTS)
-			.setSegmentLength(5);//in seconds
+			.setSegmentLength(5)//in seconds
+			.setSource(System.getProperty("source"));
 	
 	//-------------------------------------------------------------------------
 	//Main
@@ -41,7 +41,7 @@ public class VideoHeaderTester extends Thread{
 		/* Used in Run configuration settings */
 //			Djava.library.path=/home/pi/Libraries/opencv-3.1.0/build/lib
 //			System.out.println(System.getProperty("java.library.path"));
-		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		Utility.loadOpenCV();
 
 		VideoHeaderTester test = new VideoHeaderTester();
 		test.run();
@@ -65,14 +65,14 @@ public class VideoHeaderTester extends Thread{
 		DisplayFrame display = this.getDisplay();
 		Mat mat = new Mat();
 		ICCFrameWriter segmentWriter = new ICCFrameWriter(mat, output);
-		VideoCapture grabber = null;
+		FrameSource grabber = null;
 		VideoSegment segment = null;
 		VideoSegmentHeader vHeader;
 
 		segmentWriter.setFrames(segmentLength);
 
 		try{
-			grabber = _setup.getVideoCapture();
+			grabber = _setup.getFrameSource();
 		}
 		catch(Exception e){
 			System.err.println("ERROR 100: Failed to open recording device");
@@ -95,7 +95,9 @@ public class VideoHeaderTester extends Thread{
 
 				//loops until end of current video segment
 				if(frameCount >= segmentLength){
-					vHeader = new VideoSegmentHeader(segmentWriter.getFrames());
+					vHeader = new VideoSegmentHeader(segmentWriter.getFrames(),
+							segmentWriter.getFrameTypes());
+					vHeader.setCodec(segmentWriter.getCodecId());
 					segment = new VideoSegment(currentSegment,
 							output.toByteArray(),vHeader);
 
@@ -141,7 +143,7 @@ public class VideoHeaderTester extends Thread{
 	//-------------------------------------------------------------------------
 	//Private methods
 	//-------------------------------------------------------------------------
-	private void closeEverything(VideoCapture grabber, ICCFrameWriter segmentWriter){
+	private void closeEverything(FrameSource grabber, ICCFrameWriter segmentWriter){
 		try{
 			grabber.release();
 			segmentWriter.close();
@@ -0,0 +1,164 @@
+package videoReceiver;
+
+import java.util.List;
+
+import videoUtility.Rendition;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Picks the rendition of each segment from how fast segments download and
+ * how many are waiting to be played. A rendition is chosen when its next
+ * segment is predicted to download within a share of the segment length:
+ * <pre>
+ * latency + size / bandwidth &lt;= segment length * safety
+ * </pre>
+ * The safety is lower while no segment is waiting, since a late segment
+ * then stalls playback. Latency is the time until the first bytes of a
+ * segment arrive and bandwidth is measured over the rest of it. Sizes are
+ * learned per rendition; a rendition not seen yet is estimated from another
+ * one by the square of their scales.
+ * <p>
+ * Playback starts on the smallest rendition. After that the controller
+ * drops straight to the rendition the link can carry, but only climbs one
+ * rendition per segment.
+ *
+ * @see S3Downloader, Rendition
+ */
+public class AbrController {
+
+	private static final double GAIN = 0.25;
+	private static final double SAFETY = 0.8;//of a segment length, with segments waiting
+	private static final double LOW_BUFFER_SAFETY = 0.5;//with none waiting
+	private static final int MIN_SAMPLE = 16 * 1024;//bytes needed to measure bandwidth
+
+	/*
+	 * @param _bandwidth	Bytes per ms after the first bytes, or 0 until
+	 * 						measured.
+	 * @param _latency		Ms from request to first bytes.
+	 * @param _level		The rendition picked last; 0 is the best.
+	 * @param _sizes		Bytes per segment of each rendition, or 0 until
+	 * 						seen.
+	 */
+	private double 			_bandwidth = 0;
+	private double 			_latency = 0;
+	private List<Rendition> _ladder;
+	private int 			_level;
+	private long 			_segmentMillis;
+	private double[] 		_sizes;
+
+	private long 			_switches = 0;
+	private long[] 			_picked;
+
+	/**
+	 * @param ladder		The renditions the sender encodes, best first.
+	 * @param segmentMillis	Length of one segment.
+	 */
+	public AbrController(List<Rendition> ladder, long segmentMillis){
+		_ladder = ladder;
+		_segmentMillis = Math.max(1, segmentMillis);
+		_sizes = new double[ladder.size()];
+		_picked = new long[ladder.size()];
+		_level = ladder.size() - 1;
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Picks the rendition of the next segment to request.
+	 * @param waiting	Segments downloaded but not played yet.
+	 * @return			Its level in the ladder; 0 is the best.
+	 */
+	public synchronized int select(int waiting){
+		if(_bandwidth > 0){
+			double budget = _segmentMillis * (waiting > 0 ? SAFETY : LOW_BUFFER_SAFETY);
+			int target = _ladder.size() - 1;
+			for(int level = 0; level < _ladder.size(); level++){
+				if(_latency + getSize(level) / _bandwidth <= budget){
+					target = level;
+					break;
+				}
+			}
+			int level = target < _level ? _level - 1 : target;
+			if(level != _level) _switches++;
+			_level = level;
+		}
+		_picked[_level]++;
+		return _level;
+	}
+
+	/**
+	 * Learns from a segment that finished downloading.
+	 * @param level		Its rendition.
+	 * @param size		Bytes in the segment.
+	 * @param first		Bytes that came with the first response.
+	 * @param latency	Ms from the request to the first response.
+	 * @param transfer	Ms from the first response to the last byte.
+	 */
+	public synchronized void downloaded(int level, long size, long first,
+			long latency, long transfer){
+		sized(level, size);
+		_latency = _latency == 0 ? latency : _latency + GAIN * (latency - _latency);
+		if(size - first >= MIN_SAMPLE && transfer > 0){
+			double bandwidth = (size - first) / (double)transfer;
+			_bandwidth = _bandwidth == 0 ? bandwidth : _bandwidth + GAIN * (bandwidth - _bandwidth);
+		} else if(_bandwidth == 0 && latency > 0){
+			//too small to measure; assume it took the whole time
+			_bandwidth = size / (double)(latency + transfer);
+		}
+	}
+
+	/**
+	 * Learns the size of a segment without downloading it, ie. from the
+	 * SegmentManifest, which lists the best rendition.
+	 */
+	public synchronized void sized(int level, long size){
+		_sizes[level] = _sizes[level] == 0 ? size : _sizes[level] + GAIN * (size - _sizes[level]);
+	}
+
+	//-------------------------------------------------------------------------
+	//GET METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Measured bandwidth in bits per second.
+	 */
+	public synchronized double getBitRate(){
+		return _bandwidth * 8000;
+	}
+	public List<Rendition> getLadder(){
+		return _ladder;
+	}
+	/**
+	 * @return	Segments requested from each rendition, best first.
+	 */
+	public synchronized long[] getPicks(){
+		return _picked.clone();
+	}
+	/**
+	 * @return	Times the rendition changed between segments.
+	 */
+	public synchronized long getSwitches(){
+		return _switches;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Predicted bytes in a segment of the rendition.
+	 */
+	private double getSize(int level){
+		if(_sizes[level] > 0) return _sizes[level];
+		//from the nearest rendition that has been seen
+		for(int distance = 1; distance < _sizes.length; distance++){
+			for(int known : new int[]{level - distance, level + distance}){
+				if(known >= 0 && known < _sizes.length && _sizes[known] > 0){
+					double ratio = _ladder.get(level).getScale() / _ladder.get(known).getScale();
+					return _sizes[known] * ratio * ratio;
+				}
+			}
+		}
+		return 0;
+	}
+}
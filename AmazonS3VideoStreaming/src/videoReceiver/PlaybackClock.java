@@ -0,0 +1,171 @@
+package videoReceiver;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Paces playback by the frame rate the video was recorded at. Frame k of a
+ * run of segments is due at start + k / fps on System.nanoTime, so the time
+ * spent decoding and painting a frame comes out of the wait for the next
+ * one instead of adding to it, and rounding does not add up over frames.
+ * <p>
+ * A segment that starts while its first frame is still due, or at most one
+ * frame late, carries on the timeline of the segment before it. A segment
+ * that starts later than that came after a stall, so the timeline starts
+ * over from it. Within a segment, a frame whose next frame is already due
+ * is late, and the VideoPlayer decodes it without showing it, so playback
+ * catches up instead of falling further behind.
+ * <p>
+ * Each segment may play slightly faster or slower than recorded, at the
+ * rate the VideoStream asks for to keep its depth near the target.
+ * <p>
+ * The clock keeps how late each shown frame was. Jitter is the average of
+ * those, and drift is how late the newest one was, which stays near zero
+ * as long as playback keeps up.
+ *
+ * @see VideoPlayer
+ */
+public class PlaybackClock {
+
+	/*
+	 * @param _frame		Frames since the start of the timeline.
+	 * @param _frameNanos	Time between frames at the current rate.
+	 * @param _realNanos	Time between frames in real time.
+	 * @param _start		nanoTime at which frame 0 of the timeline is due.
+	 */
+	private long 	_frame = 0;
+	private double 	_frameNanos;
+	private double 	_realNanos;
+	private boolean _running = false;
+	private long 	_start;
+
+	private long 	_drift = 0;
+	private long 	_lateSum = 0;
+	private long 	_maxLate = 0;
+	private long 	_restarts = 0;
+	private long 	_shown = 0;
+	private long 	_skipped = 0;
+
+	/**
+	 * @param fps	Frames per second the video was recorded at.
+	 */
+	public PlaybackClock(double fps){
+		_realNanos = 1e9 / (fps > 0 ? fps : 1);
+		_frameNanos = _realNanos;
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Called before the first frame of a segment played in real time.
+	 */
+	public void startSegment(){
+		startSegment(1);
+	}
+
+	/**
+	 * Called before the first frame of a segment. Starts the timeline over
+	 * if the segment came too late to carry it on.
+	 * @param rate	Playback speed for the segment, 1 being real time.
+	 */
+	public void startSegment(double rate){
+		long now = System.nanoTime();
+		if(_running && now - getDeadline(_frame) <= _frameNanos){
+			//carry on from where the last segment would have ended
+			_start = getDeadline(_frame);
+		} else{
+			if(_running) _restarts++;
+			_running = true;
+			_start = now;
+		}
+		_frame = 0;
+		_frameNanos = _realNanos / (rate > 0 ? rate : 1);
+	}
+
+	/**
+	 * @return	True if the next frame is already due, so the current one
+	 * 			should be skipped.
+	 */
+	public boolean isLate(){
+		return System.nanoTime() >= getDeadline(_frame + 1);
+	}
+
+	/**
+	 * Waits until the current frame is due. Returns early if the thread is
+	 * interrupted.
+	 */
+	public void awaitFrame(){
+		long deadline = getDeadline(_frame);
+		long wait;
+		while((wait = deadline - System.nanoTime()) > 0){
+			LockSupport.parkNanos(wait);
+			if(Thread.currentThread().isInterrupted()) return;
+		}
+	}
+
+	/**
+	 * Called right after the current frame is shown.
+	 */
+	public void shown(){
+		long late = Math.max(0, System.nanoTime() - getDeadline(_frame));
+		_drift = late;
+		_lateSum += late;
+		_maxLate = Math.max(_maxLate, late);
+		_shown++;
+		_frame++;
+	}
+
+	/**
+	 * Called instead of shown() when the current frame is skipped.
+	 */
+	public void skipped(){
+		_skipped++;
+		_frame++;
+	}
+
+	public String toString(){
+		return String.format("Playback clock: %d frames shown, %d skipped, %d restarts;"
+				+ " jitter %.2f ms, max %.2f ms, drift %.2f ms",
+				_shown, _skipped, _restarts, getJitter(), _maxLate / 1e6, getDrift());
+	}
+
+	//-------------------------------------------------------------------------
+	//GET METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Ms the newest frame was shown after it was due.
+	 */
+	public double getDrift(){
+		return _drift / 1e6;
+	}
+	/**
+	 * @return	Average ms frames were shown after they were due.
+	 */
+	public double getJitter(){
+		return _shown == 0 ? 0 : _lateSum / 1e6 / _shown;
+	}
+	/**
+	 * @return	Times a late segment started the timeline over.
+	 */
+	public long getRestarts(){
+		return _restarts;
+	}
+	public long getShown(){
+		return _shown;
+	}
+	public long getSkipped(){
+		return _skipped;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	nanoTime at which a frame of the timeline is due.
+	 */
+	private long getDeadline(long frame){
+		return _start + Math.round(frame * _frameNanos);
+	}
+}
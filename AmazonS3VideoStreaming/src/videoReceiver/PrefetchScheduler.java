@@ -0,0 +1,153 @@
+package videoReceiver;
+
+import videoUtility.SegmentManifest;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Predicts when the next video segments will be in the bucket, so the
+ * S3Downloader can ask for each one just after it is published instead of
+ * polling for it. Segments start every segment length, so segment N+k is
+ * recorded k cadences after segment N. The time from a segment's header
+ * timestamp until it can be downloaded (recording, encoding, upload and the
+ * clock difference between sender and receiver) is learned from the
+ * segments that arrive:
+ * <ul>
+ * <li>If the first request found the segment, it was published earlier
+ * than predicted, so the prediction moves a retry interval earlier.</li>
+ * <li>If it took retries, it was published between the last two requests,
+ * which the prediction moves toward.</li>
+ * </ul>
+ * Predictions only move part of the way each time, so one slow upload does
+ * not throw them off.
+ *
+ * @see S3Downloader
+ */
+public class PrefetchScheduler {
+
+	private static final double GAIN = 0.25;
+
+	/*
+	 * @param _cadence		Milliseconds between segment timestamps.
+	 * @param _guard		Milliseconds to wait past the predicted time.
+	 * @param _offset		Milliseconds from a segment's timestamp until it
+	 * 						can be downloaded, in the receiver's clock.
+	 */
+	private double 	_cadence;
+	private long 	_guard;
+	private int 	_lastIndex = -1;
+	private long 	_lastTimeStamp;
+	private int 	_maxIndex;
+	private double 	_offset;
+	private long 	_retryInterval;
+
+	private long 	_firstTry = 0;
+	private long 	_requests = 0;
+	private long 	_segments = 0;
+
+	/**
+	 * @param segmentMillis	Length of one segment, from the setup file.
+	 * @param maxIndex		Segment indices wrap around at this value.
+	 * @param retryInterval	Time between requests for a missing segment.
+	 * @param guard			Extra time to wait past a prediction.
+	 */
+	public PrefetchScheduler(long segmentMillis, int maxIndex, long retryInterval, long guard){
+		_cadence = Math.max(1, segmentMillis);
+		_maxIndex = maxIndex;
+		_retryInterval = retryInterval;
+		_guard = guard;
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Starts predicting from the newest segment in a manifest. Until a
+	 * segment arrives, it is assumed to have been published just now.
+	 */
+	public synchronized void start(SegmentManifest manifest){
+		SegmentManifest.Entry newest = manifest.getNewest();
+		if(newest == null) return;
+		if(_lastIndex < 0){
+			_offset = System.currentTimeMillis() - newest.getTimeStamp();
+		}
+		_lastIndex = newest.getIndex();
+		_lastTimeStamp = newest.getTimeStamp();
+	}
+
+	/**
+	 * @return	The wall clock time at which to request the segment.
+	 */
+	public synchronized long getRequestTime(int index){
+		int distance = _lastIndex < 0 ? 1 : Math.max(1, distance(_lastIndex, index));
+		double timeStamp = _lastTimeStamp + distance * _cadence;
+		return (long)(timeStamp + _offset) + _guard;
+	}
+
+	/**
+	 * Learns from a segment that was downloaded.
+	 * @param timeStamp		From the segment's header.
+	 * @param requested		When the request that found it was sent.
+	 * @param attempts		Requests sent for it, including that one.
+	 */
+	public synchronized void arrived(int index, long timeStamp, long requested, int attempts){
+		double published = attempts == 1
+				? requested - _retryInterval
+				: requested - _retryInterval/2.0;
+		_offset += GAIN * ((published - timeStamp) - _offset);
+
+		if(_lastIndex >= 0 && timeStamp > _lastTimeStamp){
+			int distance = distance(_lastIndex, index);
+			if(distance > 0){
+				double cadence = (timeStamp - _lastTimeStamp) / (double)distance;
+				_cadence += GAIN * (cadence - _cadence);
+			}
+		}
+		if(_lastIndex < 0 || timeStamp > _lastTimeStamp){
+			_lastIndex = index;
+			_lastTimeStamp = timeStamp;
+		}
+		_segments++;
+		_requests += attempts;
+		if(attempts == 1) _firstTry++;
+	}
+
+	/**
+	 * Counts the requests sent for a segment that never arrived.
+	 */
+	public synchronized void missed(int attempts){
+		_requests += attempts;
+	}
+
+	//-------------------------------------------------------------------------
+	//GET METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Predicted time from recording to availability, in ms.
+	 */
+	public synchronized long getPublishDelay(){
+		return (long)_offset;
+	}
+	/**
+	 * @return	Requests sent per segment downloaded; 1 means none wasted.
+	 */
+	public synchronized double getRequestsPerSegment(){
+		return _segments == 0 ? 0 : _requests / (double)_segments;
+	}
+	/**
+	 * @return	Fraction of segments found by their first request.
+	 */
+	public synchronized double getFirstTryRate(){
+		return _segments == 0 ? 0 : _firstTry / (double)_segments;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	How many segments after from the index to is, with wrap around.
+	 */
+	private int distance(int from, int to){
+		return ((to - from) % _maxIndex + _maxIndex) % _maxIndex;
+	}
+}
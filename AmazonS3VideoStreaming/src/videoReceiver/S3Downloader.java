@@ -3,63 +3,106 @@ package videoReceiver;
 import videoUtility.Utility;
 import videoUtility.VideoSegment;
 import videoUtility.FileData;
+import videoUtility.ObjectStore;
+import videoUtility.RangedDownload;
+import videoUtility.Rendition;
+import videoUtility.S3ObjectStore;
 import videoUtility.S3UserStream;
+import videoUtility.SegmentManifest;
 import videoUtility.SharedQueue;
+import videoUtility.VideoSegmentHeader;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
-import com.amazonaws.AmazonClientException;
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.ClientConfiguration;
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.profile.ProfileCredentialsProvider;
-import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
-import com.amazonaws.regions.Region;
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.model.S3ObjectInputStream;
-import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 import performance.PerformanceLogger;
 
-import com.amazonaws.services.s3.model.ObjectListing;
-
 /**
  * 
  * @author Ryan Babcock
  * 
  * This class downloads the setup file, playlist file, and video segments
  * created by the ICCRunner. These are then sent to the video player to
- * be watched by the client.
+ * be watched by the client. Objects are read from an ObjectStore, the S3
+ * bucket unless setStore picks another. New segments are found by polling
+ * the SegmentManifest kept by the S3Uploader, not by listing the bucket.
+ * <p>
+ * Once the stream is found, the manifest is no longer polled. Segments are
+ * published once per segment length, so the PrefetchScheduler predicts when
+ * each one can be downloaded, and it is requested just after that. The next
+ * segment and up to -Dlookahead=n more (default 1) are requested at once,
+ * so a slow download does not delay the segment after it. Large segments
+ * are downloaded as parallel byte ranges (see RangedDownload).
+ * <p>
+ * A segment goes to the VideoStream as soon as its header has arrived, and
+ * the rest of it keeps downloading. The player waits for each frame's bytes
+ * as it reaches them, so playback starts before the whole segment is in.
+ * <p>
+ * When the sender encodes several renditions, the AbrController picks the
+ * rendition of each segment as it is requested, from the measured download
+ * speed and the segments waiting in the VideoStream.
+ * <p>
+ * When the setup file says the sender publishes segments in parts, parts
+ * are fetched instead of segments, in the same way. Each part goes to the
+ * VideoStream on its own, so playback is only a part behind the camera.
+ * Parts are counted by stream index (see VideoSegment.getStreamIndex), so
+ * the manifest, the PrefetchScheduler and the AbrController work on parts
+ * as they would on segments.
  * 
  * @version v.0.0.20
- * @see VideoPlayer, ICCRunner, S3Uploader
+ * @see VideoPlayer, ICCRunner, S3Uploader, ObjectStore
  *
  */
 
 public class S3Downloader extends S3UserStream {
 
 	private final long DOWNLOAD_WAIT_LIMIT = 15000;//in seconds (3x segment length is good)
+	private final long MANIFEST_POLL = 100;//ms between polls of an unchanged manifest
+	private final int MAX_MISSES = 3;//segments in a row before starting over from the manifest
+	private final long PREFETCH_GUARD = 20;//ms to request after a segment is predicted
+	private final long RETRY_INTERVAL = 50;//ms between requests for a missing segment
 	
-	private int _currentIndex;
+	private AbrController _abr;
+	private int _currentIndex = -1;
+	private RangedDownload _download;
+	private ExecutorService _fetchPool;
+	private LinkedList<SegmentFetch> _fetches = new LinkedList<>();
 	private int _headerSize;
+	private List<Rendition> _ladder;
+	private int _lookahead = 1;
 	private int _maxIndex;
 	private int _maxSegmentsSaved;
+	private int _misses = 0;
+	private int _nextIndex;
+	private int _partFrames = 0;
+	private int _parts = 1;
+	private int _partSize = RangedDownload.DEFAULT_PART_SIZE;
+	private ExecutorService _rangePool;
+	private int _rangeThreads = 4;
 	private long _startTime;
-	private AmazonS3 _s3;
 	private PerformanceLogger _logger;
+	private SegmentManifest _manifest;
+	private String _manifestTag;
+	private PrefetchScheduler _scheduler;
+	private int _segmentFrames;
+	private long _segmentMillis;
 	private SharedQueue<String> _signalQueue;
+	private ObjectStore _store;
 	private VideoStream _stream;
 
 	//-------------------------------------------------------------------------
@@ -69,7 +112,6 @@ public class S3Downloader extends S3UserStream {
 		public void run() {
 			Runtime.getRuntime().addShutdownHook(new S3DownloaderShutdownHook(this));
 
-			byte[] videoData = null;
 			VideoSegment videoSegment = null;
 
 			/*
@@ -78,30 +120,28 @@ public class S3Downloader extends S3UserStream {
 			 */
 			java.security.Security.setProperty("networkaddress.cache.ttl", "60");
 			
-			/*
-			 * The ProfileCredentialsProvider will return your [default] credential
-			 * profile by reading from the credentials file located at
-			 * (/Users/username/.aws/credentials).
-			 */
-	
-			//Verify Amazon Credentials
+			//Open the store, verifying Amazon credentials for S3
 			//---------------------------------------------------------------------
-			AWSCredentials credentials = null;
-			try {
-				credentials = new ProfileCredentialsProvider("default").getCredentials();
-			} catch (Exception e) {
-				System.err.println("Cannot load the credentials from the credential profiles file. "
-						+ "\nPlease make sure that your credentials file is at the correct "
-						+ "location (/Users/username/.aws/credentials), and is in valid format.");
-				System.exit(-1);
+			if(_store == null){
+				try{
+					_store = new S3ObjectStore(_bucketName, configS3());
+				} catch(IOException e){
+					System.err.println(e.getMessage());
+					System.exit(-1);
+				}
 			}
-			ClientConfiguration config = configS3();
-			_s3 = new AmazonS3Client(credentials, config);
-			Region usWest2 = Region.getRegion(Regions.US_WEST_2);
-			_s3.setRegion(usWest2);
+	
+			_rangePool = Executors.newFixedThreadPool(_rangeThreads, new ThreadFactory() {
+				public Thread newThread(Runnable r){
+					Thread thread = new Thread(r, "S3 Range");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			_download = new RangedDownload(_store, _rangePool, _partSize);
 	
 			System.out.println("===========================================");
-			System.out.println("Getting Started with Amazon S3");
+			System.out.println("Getting Started with " + _store);
 			System.out.println("===========================================\n");
 
 			//Retrieve the setup file
@@ -112,7 +152,7 @@ public class S3Downloader extends S3UserStream {
 					if(FileData.ISLOGGING) initLogger();
 					break;
 	
-				} catch(IOException | ClientExecutionTimeoutException e){
+				} catch(IOException e){
 					System.err.println("S3: Failed to retrieve setup file!");
 				}
 			}
@@ -121,24 +161,40 @@ public class S3Downloader extends S3UserStream {
 			//---------------------------------------------------------------------		
 			System.out.println("Obtaining videostream from S3...\n");
 
-			int[] vIndexDebug = new int[1];
-			vIndexDebug[0] = 9;
+			_scheduler = new PrefetchScheduler(_segmentMillis / _parts, _maxIndex * _parts,
+					RETRY_INTERVAL, PREFETCH_GUARD);
+			_abr = new AbrController(_ladder, _segmentMillis / _parts);
+			_fetchPool = Executors.newFixedThreadPool(_lookahead + 1, new ThreadFactory() {
+				public Thread newThread(Runnable r){
+					Thread thread = new Thread(r, "S3 Prefetch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 			
 			while (!_isDone) {
 				try{
-					if((_key = getCurrentVideo()) == null){
-//						Utility.pause(15);
+					if(_fetches.isEmpty() && !startFetching()){
 						continue;
 					}
-//					_key = getCurVidDEBUG(vIndexDebug, 10);
-					System.out.println("Downloading file: " + _key);
-	
-					videoData = getFileData(_key);
-					videoSegment = new VideoSegment(_currentIndex+1, videoData, _headerSize);
+					//the next segment and up to lookahead more are always requested
+					while(_fetches.size() <= _lookahead){
+						scheduleFetch();
+					}
+					videoSegment = _fetches.getFirst().awaitSegment();
+					_fetches.removeFirst();
+					if(videoSegment == null){
+						//after several misses the sender has likely restarted or stalled
+						if(++_misses >= MAX_MISSES) cancelFetches();
+						continue;
+					}
+					_misses = 0;
 					_stream.add(videoSegment);
 //					System.out.println(videoSegment.toString() + "(TIME): " + videoSegment.getTimeStamp());
 					if(FileData.ISLOGGING) logDownload(videoSegment.getTimeStamp());
 	
+				} catch(InterruptedException ie){
+					//end() was called; the loop checks _isDone
 				} catch(SocketException se){
 	//				System.err.println(se.getMessage());
 					se.printStackTrace();
@@ -156,24 +212,6 @@ public class S3Downloader extends S3UserStream {
 	//				System.err.println(e.getLocalizedMessage());
 					Utility.pause(100);
 					continue;
-				} catch (AmazonServiceException ase) {
-					ase.printStackTrace();
-					System.out.println("Caught an AmazonServiceException, which means your request made it "
-							+ "to Amazon S3, but was rejected with an error response for some reason.");
-					System.out.println("Error Message:    " + ase.getMessage());
-					System.out.println("HTTP Status Code: " + ase.getStatusCode());
-					System.out.println("AWS Error Code:   " + ase.getErrorCode());
-					System.out.println("Error Type:       " + ase.getErrorType());
-					System.out.println("Request ID:       " + ase.getRequestId());
-					System.out.println("Key:	           '" + _key + "'");
-					continue;
-				} catch (AmazonClientException ace) {
-					ace.printStackTrace();
-					System.out.println("Caught an AmazonClientException, which means the client encountered "
-							+ "a serious internal problem while trying to communicate with S3, "
-							+ "such as not being able to access the network.");
-					System.out.println("Error Message: " + ace.getMessage());
-					continue;
 				} catch (Exception e){
 					e.printStackTrace();
 					continue;
@@ -226,6 +264,28 @@ public class S3Downloader extends S3UserStream {
 	public void setSignal(SharedQueue<String> signal){
 		_signalQueue = signal;
 	}
+	/**
+	 * Segments bigger than one part are downloaded as several byte ranges
+	 * at once.
+	 * @param threads	Ranges downloaded at once, per segment.
+	 * @param partSize	Bytes in each range.
+	 */
+	public void setRangedDownload(int threads, int partSize){
+		_rangeThreads = Math.max(1, threads);
+		_partSize = Math.max(1, partSize);
+	}
+	/**
+	 * @param segments	Segments requested ahead of the one being waited on.
+	 */
+	public void setLookahead(int segments){
+		_lookahead = Math.max(0, segments);
+	}
+	/**
+	 * @param store		Where segments are read from; the S3 bucket if not set.
+	 */
+	public void setStore(ObjectStore store){
+		_store = store;
+	}
 	
 	//-------------------------------------------------------------------------
 	//Private methods
@@ -234,22 +294,38 @@ public class S3Downloader extends S3UserStream {
 	 * Closes all closeable instances.
 	 */
 	private void closeEverything(){
-		if(!FileData.ISLOGGING) return;
-		
-		try{
-			_logger.close();
-			//must call to avoid VideoPlayer crash
-			_signalQueue.enqueue(getServerBitRate());
-		} catch(IOException e){
-			System.err.println("Could not close S3 logger!");
-		} catch (AmazonClientException ace) {
-			System.out.println("Caught an AmazonClientException, which means the client encountered "
-					+ "a serious internal problem while trying to communicate with S3, "
-					+ "such as not being able to access the network.");
-			System.out.println("Error Message: " + ace.getMessage());
+		cancelFetches();
+		if(_fetchPool != null) _fetchPool.shutdownNow();
+		if(_rangePool != null) _rangePool.shutdownNow();
+		if(_scheduler != null){
+			System.out.printf("S3: %.2f requests per segment, %.0f%% found first try, "
+					+ "publish delay %d ms%n", _scheduler.getRequestsPerSegment(),
+					_scheduler.getFirstTryRate() * 100, _scheduler.getPublishDelay());
+		}
+		if(_abr != null && _ladder.size() > 1){
+			System.out.printf("S3: renditions %s picked %s times, %d switches, %.0f kbps%n",
+					_ladder, Arrays.toString(_abr.getPicks()), _abr.getSwitches(),
+					_abr.getBitRate() / 1000);
+		}
+		if(FileData.ISLOGGING){
+			try{
+				_logger.close();
+				//must call to avoid VideoPlayer crash
+				_signalQueue.enqueue(getServerBitRate());
+			} catch(IOException e){
+				System.err.println("Could not close S3 logger!");
+			}
 		}
+		_store.close();
 	}
 	
+	private void cancelFetches(){
+		for(SegmentFetch fetch : _fetches){
+			fetch.cancel();
+		}
+		_fetches.clear();
+	}
+
 	private ClientConfiguration configS3(){
 		ClientConfiguration config = new ClientConfiguration();
 		config.setConnectionMaxIdleMillis(1000);
@@ -262,66 +338,57 @@ public class S3Downloader extends S3UserStream {
 		return config;
 	}
 	
-	private int getCurrentIndex(int[] indeces){
-		int debugOffset = 0;
-		Arrays.sort(indeces);
-		if(indeces[indeces.length-1] == _maxIndex-1){
-			if(indeces[0] == 0){
-				int index = -1;
-				for(int i = 0; i < indeces.length-1; i++){
-					//would like to just return i here, but sometimes
-					//files are deleted out of order
-					if((indeces[i+1] - indeces[i] >= _maxSegmentsSaved-1)
-							|| (index >= 0)){
-						return indeces[i] - debugOffset;
-					}
-				}
-			}
-		}
-		return indeces[indeces.length-1] - debugOffset;
-	}
-	
-	//Set to always look for future video
+	/**
+	 * Polls the manifest the S3Uploader keeps. An unchanged manifest costs
+	 * one conditional GET with no body, after which the caller is held back
+	 * for MANIFEST_POLL. Set to always look for future video: returns the
+	 * key after the newest uploaded segment, once per new segment.
+	 * @return	The key to download next, or null if nothing new was uploaded.
+	 */
 	private String getCurrentVideo() throws IOException{
-		int tempIndex;
-		int[] indeces;
-		String prefix = FileData.VIDEO_PREFIX;
-		String suffix = FileData.VIDEO_SUFFIX;
-		ObjectListing listing = null;
-		List<S3ObjectSummary> summaries = null;
-		
-		while(true){
-			try{
-				listing = _s3.listObjects(_bucketName, prefix );
-				summaries = listing.getObjectSummaries();
-				break;
-			} catch(ClientExecutionTimeoutException cete){
-				System.err.println("Attempting to read files in bucket");
-			}
+		ObjectStore.TaggedObject manifest;
+		try{
+			manifest = _store.getIfChanged(FileData.MANIFEST_FILE, _manifestTag);
+		} catch(FileNotFoundException e){
+			manifest = null;//nothing uploaded yet
 		}
-	
-		while (listing.isTruncated()) {
-		   listing = _s3.listNextBatchOfObjects(listing);
-		   summaries.addAll(listing.getObjectSummaries());
+		if(manifest == null){
+			Utility.pause(MANIFEST_POLL);
+			return null;
 		}
-		if(summaries.size() == 0){
-			throw new IOException("No video segments found");
+		_manifestTag = manifest.getETag();
+		_manifest = SegmentManifest.parse(manifest.getData());
+		if(_manifest.isEmpty()){
+			return null;
 		}
 
-		indeces = getIndeces(summaries, prefix, suffix);
-		tempIndex = _currentIndex;
-		_currentIndex = getCurrentIndex(indeces);
+		int tempIndex = _currentIndex;
+		_currentIndex = _manifest.getNewestIndex();
 	
 		if(tempIndex == (_currentIndex)){//SET HERE FOR FUTURE VIDEO
 			return null;				//REMOVE +1 TO REVERT CHANGES
 		}
 		
-		int nextIndex = (_currentIndex+1) % _maxIndex;
-		if(_currentIndex+1 == _maxIndex){
-			
-		}
-		
-		return (prefix + nextIndex + suffix);
+		int nextIndex = (_currentIndex+1) % (_maxIndex * _parts);
+		return getKey(0, nextIndex);
+	}
+
+	/**
+	 * @return	The key of a segment, or part, by its stream index.
+	 */
+	private String getKey(int level, int streamIndex){
+		if(_parts == 1) return Rendition.getKey(level, streamIndex);
+		return Rendition.getPartKey(level, streamIndex / _parts, streamIndex % _parts);
+	}
+
+	/**
+	 * @return	Bytes in the header of a segment, or part, by its stream
+	 * 			index.
+	 */
+	private int getHeaderSize(int streamIndex){
+		if(_parts == 1) return _headerSize;
+		int first = (streamIndex % _parts) * _partFrames;
+		return VideoSegmentHeader.size(Math.min(_partFrames, _segmentFrames - first));
 	}
 
 //	private String getCurVidDEBUG(int[] startIndex, int maxIndex){
@@ -335,6 +402,33 @@ public class S3Downloader extends S3UserStream {
 //		return prefix + num + suffix;
 //	}
 	
+	/**
+	 * Requests the segment after the last one requested.
+	 */
+	private void scheduleFetch(){
+		SegmentFetch fetch = new SegmentFetch(_nextIndex, _abr.select(_stream.size()));
+		fetch.start();
+		_fetches.addLast(fetch);
+		_nextIndex = (_nextIndex + 1) % (_maxIndex * _parts);
+	}
+
+	/**
+	 * Finds where the stream is from the manifest and starts predicting
+	 * from the newest segment in it.
+	 * @return	False if there is nothing new to download yet.
+	 */
+	private boolean startFetching() throws IOException {
+		if((_key = getCurrentVideo()) == null){
+			return false;
+		}
+		_scheduler.start(_manifest);
+		for(SegmentManifest.Entry entry : _manifest.getEntries()){
+			_abr.sized(0, entry.getSize());
+		}
+		_nextIndex = (_currentIndex + 1) % (_maxIndex * _parts);
+		return true;
+	}
+
 	/**
 	 * Retrieves the data located inside of the bucket indicated by key.
 	 * @param _key	The file to be retrieved from S3.
@@ -344,24 +438,18 @@ public class S3Downloader extends S3UserStream {
 	private byte[] getFileData(String key) throws IOException {
 		if(key == null) { throw new IOException("Null key"); }
 	
-		int alreadyRead = 0,
-			read,
-			size;
-		byte[] buffer;
-		S3Object object = null;
-		S3ObjectInputStream inputStream = null;
+		byte[] buffer = null;
 	
 		try{
 			long startTime = System.currentTimeMillis();
-			GetObjectRequest request = new GetObjectRequest(_bucketName, key);
-			while(object == null){
+			while(buffer == null){
 				try{
-					object = _s3.getObject(request);
-				}catch(AmazonServiceException e){
+					buffer = _download.get(key);
+				}catch(FileNotFoundException e){
 //					System.out.println("Waiting for file to upload '" + key + "'");
 					Utility.pause(100);
 				}
-				if((System.currentTimeMillis() - startTime) > DOWNLOAD_WAIT_LIMIT){
+				if(buffer == null && (System.currentTimeMillis() - startTime) > DOWNLOAD_WAIT_LIMIT){
 					System.err.println("Can't locate video segment");
 					throw new IOException("Can't locate video segment...");
 				}
@@ -369,19 +457,7 @@ public class S3Downloader extends S3UserStream {
 					throw new IOException("Application closing...");
 				}
 			}
-			inputStream = object.getObjectContent();
-	
-			size = (int) object.getObjectMetadata().getContentLength();
-			buffer = new byte[size];
-	
-			while ((read = inputStream.read(buffer, alreadyRead, size)) > 0) {
-				alreadyRead += read;
-			}
-			
-			inputStream.close();
-			
 		} catch (SocketTimeoutException e){
-			inputStream.abort();
 			throw new SocketTimeoutException("S3 read timeout for file: " + _key);
 		}
 		System.out.println("Finished download: " + key);
@@ -389,48 +465,13 @@ public class S3Downloader extends S3UserStream {
 		return buffer;
 	}
 
-	private int[] getIndeces(List<S3ObjectSummary> summaries, String prefix,
-				String suffix){
-			int prefLength = prefix.length();
-			int suffLength = suffix.length();
-			int[] indeces = new int[_maxSegmentsSaved];
-			//sometimes a file is busy being deleted on S3, so summaries is can be too big
-			int size = Math.min(_maxSegmentsSaved, summaries.size());
-			
-			for(int i = 0; i < size; i++){
-				S3ObjectSummary s = summaries.get(i);
-				String objKey = s.getKey();
-				String strIndex = objKey.substring(prefLength);
-				strIndex = strIndex.substring(0, strIndex.length() - suffLength);
-	//			System.out.println(objKey);
-	//			System.out.println("Index: " + strIndex);
-				indeces[i] = Integer.parseInt(strIndex);
-			}
-			return indeces;
-		}
-
 	/**
-	 * Retrieves setup file from S3 bucket.
+	 * Retrieves setup file from the store.
 	 * @return The data of the setup file.
 	 * @throws IOException
 	 */
 	private byte[] getSetupFile() throws IOException {
-		S3Object object = _s3.getObject(new GetObjectRequest(_bucketName, FileData.SETUP_FILE));
-
-		DataInputStream instream = new DataInputStream(object.getObjectContent());
-		byte[] buffer = new byte[instream.available()];
-
-		ByteArrayOutputStream outstream = new ByteArrayOutputStream();
-
-		int read = 0;
-		while ((read = instream.read(buffer)) > 0) {
-			outstream.write(buffer, 0, read);
-		}
-		
-		instream.close();
-		outstream.close();
-
-		return outstream.toByteArray();
+		return _store.get(FileData.SETUP_FILE);
 	}
 	
 	/**
@@ -490,6 +531,15 @@ public class S3Downloader extends S3UserStream {
 		_headerSize = Integer.parseInt(sc.nextLine());//read
 		
 		String[] specs = sc.nextLine().split(" ");//read
+		_segmentMillis = (long)(Double.parseDouble(specs[2]) * 1000);
+		_segmentFrames = (int)(Double.parseDouble(specs[1]) * Double.parseDouble(specs[2]));
+		
+		//senders that encode one rendition do not list it
+		_ladder = sc.hasNextLine() ? Rendition.parseLadder(sc.nextLine())
+				: Collections.singletonList(Rendition.FULL);
+		//nor do senders that publish whole segments list parts
+		_partFrames = sc.hasNextLine() ? Integer.parseInt(sc.nextLine().trim()) : 0;
+		_parts = _partFrames > 0 ? (_segmentFrames + _partFrames - 1) / _partFrames : 1;
 		
 		sc.close();
 
@@ -498,6 +548,140 @@ public class S3Downloader extends S3UserStream {
 		_signalQueue.enqueue(specs[1]);
 		_signalQueue.enqueue(specs[2]);
 	}
+
+	//-------------------------------------------------------------------------
+	//Segment downloads
+	//-------------------------------------------------------------------------
+	/**
+	 * Downloads one segment, or part, by its stream index. Waits until the
+	 * PrefetchScheduler predicts it has been published, then requests it
+	 * every RETRY_INTERVAL until it is found or DOWNLOAD_WAIT_LIMIT passes.
+	 * The segment is handed over once its header has arrived, while the rest
+	 * is still downloading, or null if it was never found. How long the
+	 * download took is reported to the AbrController.
+	 */
+	private class SegmentFetch implements Runnable, RangedDownload.Progress {
+
+		private int _attempts;
+		private byte[] _data;
+		private int _firstBytes;
+		private long _firstTime;
+		private Future<?> _future;
+		private int _index;
+		private int _level;
+		private CountDownLatch _ready = new CountDownLatch(1);
+		private long _requested;
+		private volatile VideoSegment _segment;
+
+		/**
+		 * @param level		The rendition to download.
+		 */
+		SegmentFetch(int index, int level){
+			_index = index;
+			_level = level;
+		}
+
+		void start(){
+			_future = _fetchPool.submit(this);
+		}
+
+		/**
+		 * Stops the download. A segment already handed over stops waiting
+		 * for the rest of its frames.
+		 */
+		void cancel(){
+			_future.cancel(true);
+			VideoSegment segment = _segment;
+			if(segment != null && !segment.isComplete()){
+				segment.failed();
+			}
+		}
+
+		/**
+		 * @return	The segment once its header is in, or null if it was
+		 * 			never found.
+		 */
+		VideoSegment awaitSegment() throws InterruptedException {
+			_ready.await();
+			return _segment;
+		}
+
+		public void run(){
+			try{
+				download();
+			} catch(InterruptedException e){
+				//canceled
+			} finally {
+				_ready.countDown();
+			}
+		}
+
+		public void started(byte[] data){
+			_data = data;
+		}
+
+		public void received(int bytes){
+			if(_firstTime == 0){
+				_firstTime = System.currentTimeMillis();
+				_firstBytes = bytes;
+			}
+			if(_segment != null){
+				_segment.received(bytes);
+			} else if(bytes >= getHeaderSize(_index)){
+				VideoSegment segment = new VideoSegment(_index / _parts, _data,
+						getHeaderSize(_index));
+				segment.setRendition(_level);
+				if(_parts > 1) segment.setPart(_index % _parts, _parts);
+				segment.received(bytes);
+				_scheduler.arrived(_index, segment.getTimeStamp(), _requested, _attempts);
+				_segment = segment;
+				_ready.countDown();
+			}
+		}
+
+		private void download() throws InterruptedException {
+			String key = getKey(_level, _index);
+			long wait;
+			//checked again while waiting, since earlier segments refine it
+			while((wait = _scheduler.getRequestTime(_index) - System.currentTimeMillis()) > 0){
+				Thread.sleep(Math.min(wait, MANIFEST_POLL));
+			}
+			System.out.println("Downloading file: " + key);
+			long deadline = System.currentTimeMillis() + DOWNLOAD_WAIT_LIMIT;
+			for(_attempts = 1; ; _attempts++){
+				_requested = System.currentTimeMillis();
+				_firstTime = 0;
+				try{
+					_download.get(key, this);
+					if(_segment != null){
+						_abr.downloaded(_level, _data.length, _firstBytes,
+								_firstTime - _requested, System.currentTimeMillis() - _firstTime);
+						System.out.println("Finished download: " + key);
+						return;
+					}
+					System.err.println("S3: '" + key + "' is shorter than its header");
+				} catch(FileNotFoundException e){
+					//not published yet
+				} catch(IOException e){
+					if(_segment != null){
+						//already playing, so the frames that did not arrive are lost
+						_segment.failed();
+						if(!_isDone) System.err.println("S3: Download of '" + key + "' failed: " + e.getMessage());
+						return;
+					}
+					if(_isDone) return;
+					System.err.println("S3: Download of '" + key + "' failed: " + e.getMessage());
+				}
+				if(_isDone) return;
+				if(System.currentTimeMillis() > deadline){
+					_scheduler.missed(_attempts);
+					System.err.println("Can't locate video segment '" + key + "'");
+					return;
+				}
+				Thread.sleep(RETRY_INTERVAL);
+			}
+		}
+	}
 }
 
 //-----------------------------------------------------------------------------
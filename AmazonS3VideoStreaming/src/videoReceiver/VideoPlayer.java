@@ -3,9 +3,13 @@ package videoReceiver;
 //local package
 import videoUtility.DisplayFrame;
 import videoUtility.FileData;
+import videoUtility.FrameCursor;
+import videoUtility.ObjectStores;
+import videoUtility.RangedDownload;
 import videoUtility.SharedQueue;
 import videoUtility.Utility;
 import videoUtility.VideoSegment;
+import videoUtility.VideoSegmentHeader;
 import videoUtility.VideoSource;
 
 import java.awt.image.BufferedImage;
@@ -14,7 +18,6 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.LinkedList;
 
 import performance.GNUPlotObject;
 import performance.GNUScriptParameters;
@@ -31,9 +34,18 @@ import performance.PerformanceLogger;
  * The S3Downloader creates a video segment based on the video data. The video 
  * segment is then sent to the VideoPlayer where the video is displayed
  * using the ICCFrameReader and DisplayFrame classes.
+ * <p>
+ * The sender may lower quality, frame rate or resolution between segments.
+ * Each header says how the segment was encoded; skipped frames are stored
+ * as repeats, so every segment still plays for its full length.
+ * <p>
+ * Frames are shown at the times a PlaybackClock gives them, so playback
+ * keeps to the frame rate the video was recorded at. The VideoStream is a
+ * jitter buffer holding -DtargetLatency=ms of media, which it keeps by
+ * playing segments slightly faster or slower.
  * 
  * @version v.3
- * @see VideoSource, S3Downloader, PlaylistParser, ICCFrameReader
+ * @see VideoSource, S3Downloader, PlaybackClock, PlaylistParser, ICCFrameReader
  *
  */
 public class VideoPlayer extends VideoSource {
@@ -60,6 +72,7 @@ public class VideoPlayer extends VideoSource {
 	private static double[] 		   _specs = new double[3];
 	//_specs: 0=Compression, 1=FPS, 2=SegmentLength; from setup file on S3
 	private VideoStream _stream;
+	private String _encoding;
 
 	//-------------------------------------------------------------------------
 	//Constructor
@@ -92,7 +105,10 @@ while(_tests < NUM_OF_TESTS && !_isDone){
 		
 		double endPlayTime, startPlayTime;
 		double fps = _specs[1];
-		LinkedList<BufferedImage> frameList;
+		PlaybackClock clock = new PlaybackClock(fps);
+		_stream.setFrameRate(fps);
+		_stream.setTargetLatency(Long.getLong("targetLatency", -1));
+		FrameCursor frames = null;
 		VideoSegment videoSegment = null;
 		
 		if(FileData.ISLOGGING){
@@ -108,17 +124,18 @@ while(_tests < NUM_OF_TESTS && !_isDone){
 				if(_mLogger.getPlays() >= SEGS_T0_PLAY) break;
 			}
 			try {
-				//Always get most current frame
-				while(_stream.size() > 1){
-					videoSegment = _stream.getVideoSegment();
-					_mLogger.logBytes(videoSegment.size());
-					if(FileData.ISLOGGING) _mLogger.logSegmentDrop();
-				}
+				//the stream drops segments only when it is far too deep
+				long drops = _stream.getDrops();
 				if(FileData.ISLOGGING){
 					if(_stream.isEmpty()) _mLogger.logBufferEvent();
 				}
 				videoSegment = _stream.getVideoSegment();
-				frameList = videoSegment.getImageList();
+				if(FileData.ISLOGGING){
+					for(long i = drops; i < _stream.getDrops(); i++) _mLogger.logSegmentDrop();
+				}
+				frames = _stream.getFrames(videoSegment);
+				checkEncoding(videoSegment.getHeader());
+				BufferedImage img = frames.next();
 				
 				if(FileData.ISLOGGING){
 					_mLogger.logBytes(videoSegment.size());
@@ -127,23 +144,32 @@ while(_tests < NUM_OF_TESTS && !_isDone){
 					startPlayTime = System.currentTimeMillis()/1000.0;
 					_mLogger.logBuffer(startPlayTime - endPlayTime);
 	//				_logger.logBytes(imgSize * (int)(_specs[1] * _specs[2]));//faster
-					_mLogger.setSegmentPixelSize((int)(frameList.get(0).getWidth()*_specs[0]),
-							(int)(frameList.get(0).getHeight()*_specs[0]), fps);
+					_mLogger.setSegmentPixelSize((int)(img.getWidth()*_specs[0]),
+							(int)(img.getHeight()*_specs[0]), fps);
 				}
 				System.out.println("Playing '" + videoSegment.toString() + "'");
 
-				for(BufferedImage img : frameList){
-					_display.setCurrentFrame(img);
-					if(FileData.ISLOGGING) {
-						_mLogger.logFrame();
-//						DataBuffer buff = img.getRaster().getDataBuffer();
-//						int bytes = buff.getSize() * DataBuffer.getDataTypeSize(buff.getDataType()) / 8;
-//						_mLogger.logBytes(bytes);//more accurate
+				//frames are decoded even when skipped, as the next may depend on them
+				clock.startSegment(_stream.getPlaybackRate());
+				while(true){
+					if(frames.hasNext() && clock.isLate()){
+						clock.skipped();
+					} else{
+						clock.awaitFrame();
+						_display.setCurrentFrame(img);
+						clock.shown();
+						if(FileData.ISLOGGING) {
+							_mLogger.logFrame();
+//							DataBuffer buff = img.getRaster().getDataBuffer();
+//							int bytes = buff.getSize() * DataBuffer.getDataTypeSize(buff.getDataType()) / 8;
+//							_mLogger.logBytes(bytes);//more accurate
+						}
 					}
 					if(_isDone) break;
-//					System.out.println(fps);
-					Utility.pause((long)(1000/fps));
+					if(!frames.hasNext()) break;
+					img = frames.next();
 				}
+				frames.close();
 				
 				if(FileData.ISLOGGING){
 					endPlayTime = System.currentTimeMillis()/1000.0;
@@ -152,10 +178,13 @@ while(_tests < NUM_OF_TESTS && !_isDone){
 				}
 				
 			} catch (Exception e) {
+				if(frames != null) frames.close();
 				if(_isDone) continue;
 				System.err.println("VP: Problem reading video file: " + videoSegment.toString());
 			}
 		}//end video play
+		System.out.println(clock);
+		System.out.println(_stream);
 		
 		
 		if(FileData.ISLOGGING){
@@ -339,6 +368,18 @@ while(_tests < NUM_OF_TESTS && !_isDone){
 		_downloader = new S3Downloader(_stream);
 		_signalQueue = new SharedQueue<>(10);
 		_downloader.setSignal(_signalQueue);
+		_downloader.setLookahead(Integer.getInteger("lookahead", 1));
+		_downloader.setRangedDownload(Integer.getInteger("rangeThreads", 4),
+				Integer.getInteger("rangeSize", RangedDownload.DEFAULT_PART_SIZE));
+		//-Dstore=local:dir|memory reads from somewhere other than S3
+		if(System.getProperty("store") != null){
+			try{
+				_downloader.setStore(ObjectStores.open(System.getProperty("store")));
+			} catch(IOException e){
+				System.err.println("Cannot open store: " + e.getMessage());
+				System.exit(-1);
+			}
+		}
 		_downloader.start();
 		
 		if(FileData.ISLOGGING) {
@@ -379,6 +420,18 @@ while(_tests < NUM_OF_TESTS && !_isDone){
 		}
 	}
 
+	/**
+	 * Reports when the sender changes how segments are encoded.
+	 */
+	private void checkEncoding(VideoSegmentHeader header){
+		String encoding = "quality " + header.getQuality() + ", " + header.getScale()
+				+ "% scale, 1/" + header.getDecimation() + " frames";
+		if(!encoding.equals(_encoding)){
+			System.out.println("VP: Sender encoding at " + encoding);
+			_encoding = encoding;
+		}
+	}
+
 	private void reset(){
 		closeEverything();
 		_programStartTime = System.currentTimeMillis();
@@ -1,44 +1,239 @@
 package videoReceiver;
 
-import videoUtility.SharedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import videoUtility.BoundedQueue;
+import videoUtility.FrameCursor;
+import videoUtility.SpscQueue;
 import videoUtility.VideoSegment;
 
+/**
+ * @author Ryan Babcock
+ * 
+ * Holds the video segments waiting to be played. Segments stay compressed
+ * until they are played; each frame is decoded just ahead of playback on a
+ * pool of decode threads (one per core by default, or -DdecodeThreads=n),
+ * which keep up to -Dprefetch=n frames ready (default 4).
+ * <p>
+ * Only the S3Downloader adds and only the VideoPlayer removes, so segments
+ * pass through a lock-free single-producer, single-consumer queue.
+ * <p>
+ * The stream is also the player's jitter buffer. Its depth is the media
+ * waiting to be played, counted in frames, including the segment just
+ * taken. The target depth is set with -DtargetLatency=ms (default two
+ * segments, or two parts when the sender publishes parts). Rather than
+ * drop segments, the stream asks for playback slightly faster while it is
+ * deeper than the target and slightly slower while it is shallower, by at
+ * most MAX_RATE_CHANGE. When it runs dry, the next segment is held until
+ * the target depth has arrived or had time to. Only a stream deeper than
+ * twice the target plus a segment drops its oldest segments, so a target
+ * of 0 keeps the old behavior of always playing the newest segment, and a
+ * larger target trades latency for fewer stalls.
+ */
 public class VideoStream {
 
 	//-------------------------------------------------------------------------
 	//PARAMETERS
 	//-------------------------------------------------------------------------
 	private final int DEFAULT_SIZE = 100;
+	private static final int DEFAULT_PREFETCH = 4;
+	private static final double MAX_RATE_CHANGE = 0.1;
+	private static final int CONVERGE_SEGMENTS = 8;//to make up a depth error over
+	private static final long REFILL_POLL = 10;//ms
 	
-	private SharedQueue<VideoSegment> _stream;
+	private static ExecutorService _decodePool;
+	private BoundedQueue<VideoSegment> _stream;
+
+	/*
+	 * @param _frameMillis	Media in one frame.
+	 * @param _queuedFrames	Frames in the segments waiting.
+	 * @param _rate			Playback speed asked for the segment taken last,
+	 * 						1 being real time.
+	 * @param _takenFrames	Frames in the segment taken last.
+	 * @param _targetMillis	Depth the stream steers toward, or -1 for two
+	 * 						segments.
+	 */
+	private double 			_frameMillis = 1000 / 15.0;
+	private AtomicInteger 	_queuedFrames = new AtomicInteger();
+	private double 			_rate = 1;
+	private int 			_takenFrames = 0;
+	private long 			_targetMillis = -1;
+
+	private long 	_drops = 0;
+	private double 	_rateSum = 0;
+	private long 	_taken = 0;
+	private long 	_underruns = 0;
 
 	//-------------------------------------------------------------------------
 	//CONSTRUCTORS
 	//-------------------------------------------------------------------------
 	public VideoStream(){
-		_stream = new SharedQueue<>(DEFAULT_SIZE);
+		_stream = new SpscQueue<>(DEFAULT_SIZE);
 	}
 
 	public VideoStream(int size){
-		_stream = new SharedQueue<>(size);
+		_stream = new SpscQueue<>(size);
 	}
 	
 	//-------------------------------------------------------------------------
 	//PUBLIC METHODS
 	//-------------------------------------------------------------------------
 	public void add(VideoSegment video) {
-		video.getImageList();//turns byte[] data into BufferedImage list
+		_queuedFrames.addAndGet(getFrameCount(video));
 		_stream.enqueue(video);
 	}
-	public VideoSegment getVideoSegment() {
-		return _stream.dequeue();
+	/**
+	 * @param video	A segment taken from this stream.
+	 * @return		A cursor that decodes the frames of video as it plays.
+	 */
+	public FrameCursor getFrames(VideoSegment video) {
+		return video.frames(getDecodePool(), Integer.getInteger("prefetch", DEFAULT_PREFETCH));
+	}
+	/**
+	 * Waits for the next segment, refilling the stream first if it ran dry,
+	 * and sets the playback rate for it.
+	 * @throws InterruptedException when the player is ending.
+	 */
+	public VideoSegment getVideoSegment() throws InterruptedException {
+		boolean dry = _stream.isEmpty();
+		VideoSegment segment = take();
+		if(dry){
+			if(_taken > 0) _underruns++;
+			refill();
+		}
+		while(getDepth() > 2 * getTargetLatency() + getSegmentMillis() && !_stream.isEmpty()){
+			segment = take();
+			_drops++;
+		}
+
+		double error = getDepth() - getTargetLatency();
+		if(Math.abs(error) * 2 <= getSegmentMillis()){
+			_rate = 1;
+		} else{
+			double change = error / (getSegmentMillis() * CONVERGE_SEGMENTS);
+			_rate = 1 + Math.max(-MAX_RATE_CHANGE, Math.min(MAX_RATE_CHANGE, change));
+		}
+		_rateSum += _rate;
+		_taken++;
+		return segment;
 	}
 	
 	public boolean isEmpty(){
 		return _stream.isEmpty();
 	}
+
+	/**
+	 * @param fps	Frames per second the video was recorded at.
+	 */
+	public void setFrameRate(double fps){
+		_frameMillis = 1000 / (fps > 0 ? fps : 1);
+	}
+	/**
+	 * @param millis	Media to keep waiting, counting the segment playing,
+	 * 					or a negative value for two segments.
+	 */
+	public void setTargetLatency(long millis){
+		_targetMillis = Math.max(-1, millis);
+	}
 	
 	public int size(){
 		return _stream.size();
 	}
+
+	public String toString(){
+		return String.format("Jitter buffer: target %d ms, %d segments played,"
+				+ " %d dropped, %d underruns, average rate %.3f",
+				getTargetLatency(), _taken, _drops, _underruns,
+				_taken == 0 ? 1.0 : _rateSum / _taken);
+	}
+
+	//-------------------------------------------------------------------------
+	//GET METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Ms of media waiting, counting the segment taken last.
+	 */
+	public long getDepth(){
+		return Math.round((_queuedFrames.get() + _takenFrames) * _frameMillis);
+	}
+	/**
+	 * @return	Segments dropped because the stream was far too deep.
+	 */
+	public long getDrops(){
+		return _drops;
+	}
+	/**
+	 * @return	Playback speed for the segment taken last, 1 being real
+	 * 			time.
+	 */
+	public double getPlaybackRate(){
+		return _rate;
+	}
+	public long getTargetLatency(){
+		return _targetMillis < 0 ? 2 * getSegmentMillis() : _targetMillis;
+	}
+	/**
+	 * @return	Times the stream ran dry after playback started.
+	 */
+	public long getUnderruns(){
+		return _underruns;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Frames in a segment, or in a part.
+	 */
+	private static int getFrameCount(VideoSegment video){
+		return video.getHeader().getFrameOrder().length;
+	}
+
+	/**
+	 * @return	Ms of media in the segment taken last.
+	 */
+	private long getSegmentMillis(){
+		return Math.max(1, Math.round(_takenFrames * _frameMillis));
+	}
+
+	/**
+	 * Waits until the target depth has arrived, or until it would have if
+	 * segments arrived in real time.
+	 */
+	private void refill() throws InterruptedException {
+		long end = System.currentTimeMillis() + getTargetLatency() - getDepth();
+		while(getDepth() < getTargetLatency() && System.currentTimeMillis() < end){
+			Thread.sleep(REFILL_POLL);
+		}
+	}
+
+	private VideoSegment take() throws InterruptedException {
+		VideoSegment segment = _stream.take();
+		_takenFrames = getFrameCount(segment);
+		_queuedFrames.addAndGet(-_takenFrames);
+		return segment;
+	}
+
+	/**
+	 * The decode pool is shared by every stream and uses daemon threads, so
+	 * it never keeps the player alive.
+	 */
+	private static synchronized ExecutorService getDecodePool(){
+		if(_decodePool == null){
+			int threads = Integer.getInteger("decodeThreads",
+					Runtime.getRuntime().availableProcessors());
+			_decodePool = Executors.newFixedThreadPool(Math.max(1, threads),
+					new ThreadFactory() {
+						public Thread newThread(Runnable r){
+							Thread thread = new Thread(r, "VP Decoder");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return _decodePool;
+	}
 }
@@ -0,0 +1,18 @@
+package videoSender;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * What the capture thread does when the encoders fall behind.
+ * <p>
+ * BLOCK		Wait for a free frame. Capture timing slips, nothing is lost.
+ * DROP_OLDEST	Drop the oldest frame still waiting to be encoded. It is
+ * 				recorded as a repeat of the previous frame, so segment length
+ * 				and playback timing are unchanged.
+ * 
+ * @see EncodingPipeline
+ */
+public enum BackpressurePolicy {
+	BLOCK,
+	DROP_OLDEST
+}
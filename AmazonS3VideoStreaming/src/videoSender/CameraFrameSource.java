@@ -0,0 +1,28 @@
+package videoSender;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Frames from a camera, which sets the pace itself.
+ *
+ * @see ICCSetup#getVideoCapture
+ */
+public class CameraFrameSource implements FrameSource {
+
+	private VideoCapture _capture;
+
+	public CameraFrameSource(VideoCapture capture){
+		_capture = capture;
+	}
+
+	public boolean read(Mat mat){
+		return _capture.read(mat);
+	}
+
+	public void release(){
+		_capture.release();
+	}
+}
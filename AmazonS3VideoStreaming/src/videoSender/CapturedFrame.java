@@ -0,0 +1,177 @@
+package videoSender;
+
+import org.opencv.core.Mat;
+
+import videoUtility.ReusableByteArrayOutputStream;
+import videoUtility.VideoSegmentHeader;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * One frame travelling through the EncodingPipeline. Frames are pooled: the
+ * mat and the encode buffers are reused for the life of the pipeline. The
+ * frame has one encode buffer and frame type per rendition; the methods
+ * without a rendition refer to the first one.
+ * 
+ * @see EncodingPipeline, FramePool
+ */
+public class CapturedFrame {
+
+	private ReusableByteArrayOutputStream[] _buffers;
+	private byte[] 							_frameTypes;
+	private Mat 							_mat;
+	private boolean 						_pooled;
+	private long 							_sequence;
+	private EncodeSettings 					_settings = EncodeSettings.DEFAULT;
+	private long 							_timeStamp;
+
+	//-------------------------------------------------------------------------
+	//Constructors
+	//-------------------------------------------------------------------------
+	/**
+	 * Creates a pooled frame with its own mat and encode buffer.
+	 */
+	public CapturedFrame(){
+		this(1);
+	}
+
+	/**
+	 * Creates a pooled frame with its own mat and an encode buffer for each
+	 * rendition.
+	 * @see videoUtility.Rendition
+	 */
+	public CapturedFrame(int renditions){
+		_buffers = new ReusableByteArrayOutputStream[renditions];
+		for(int i = 0; i < renditions; i++){
+			_buffers[i] = new ReusableByteArrayOutputStream();
+		}
+		_frameTypes = new byte[renditions];
+		_mat = new Mat();
+		_pooled = true;
+		clear();
+	}
+
+	private CapturedFrame(int renditions, long sequence, long timeStamp){
+		_frameTypes = new byte[renditions];
+		setFrameType(VideoSegmentHeader.REPEAT_FRAME);
+		_pooled = false;
+		_sequence = sequence;
+		_timeStamp = timeStamp;
+	}
+
+	/**
+	 * Creates a placeholder without a mat that repeats the previous frame.
+	 * Used when a frame is dropped.
+	 * 
+	 * @param frame	The frame being dropped.
+	 */
+	public static CapturedFrame repeat(CapturedFrame frame){
+		CapturedFrame repeat = new CapturedFrame(frame.getRenditions(),
+				frame.getSequence(), frame.getTimeStamp());
+		repeat.setSettings(frame.getSettings());
+		return repeat;
+	}
+
+	//-------------------------------------------------------------------------
+	//Get methods
+	//-------------------------------------------------------------------------
+	public ReusableByteArrayOutputStream getBuffer(){
+		return getBuffer(0);
+	}
+	public ReusableByteArrayOutputStream getBuffer(int rendition){
+		return _buffers == null ? null : _buffers[rendition];
+	}
+	/**
+	 * @return	The encoded frame, valid up to getLength().
+	 */
+	public byte[] getData(){
+		return getData(0);
+	}
+	public byte[] getData(int rendition){
+		return _buffers == null ? null : _buffers[rendition].getBuffer();
+	}
+	public byte getFrameType(){
+		return _frameTypes[0];
+	}
+	public byte getFrameType(int rendition){
+		return _frameTypes[rendition];
+	}
+	public int getLength(){
+		return getLength(0);
+	}
+	public int getLength(int rendition){
+		return isRepeat() ? 0 : _buffers[rendition].size();
+	}
+	public Mat getMat(){
+		return _mat;
+	}
+	public int getRenditions(){
+		return _frameTypes.length;
+	}
+	public long getSequence(){
+		return _sequence;
+	}
+	/**
+	 * @return	The settings of the segment the frame belongs to.
+	 */
+	public EncodeSettings getSettings(){
+		return _settings;
+	}
+	/**
+	 * @return	When the frame was captured.
+	 */
+	public long getTimeStamp(){
+		return _timeStamp;
+	}
+	public boolean isPooled(){
+		return _pooled;
+	}
+	public boolean isRepeat(){
+		return _frameTypes[0] == VideoSegmentHeader.REPEAT_FRAME;
+	}
+
+	//-------------------------------------------------------------------------
+	//Set methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Sets the type of every rendition, ie. to record a repeat.
+	 */
+	public void setFrameType(byte frameType){
+		for(int i = 0; i < _frameTypes.length; i++){
+			_frameTypes[i] = frameType;
+		}
+	}
+	public void setFrameType(int rendition, byte frameType){
+		_frameTypes[rendition] = frameType;
+	}
+	public void setSequence(long sequence){
+		_sequence = sequence;
+	}
+	public void setSettings(EncodeSettings settings){
+		_settings = settings;
+	}
+	public void setTimeStamp(long timeStamp){
+		_timeStamp = timeStamp;
+	}
+
+	//-------------------------------------------------------------------------
+	//Public methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Prepares the frame to be captured into again.
+	 */
+	public void clear(){
+		if(_buffers != null){
+			for(ReusableByteArrayOutputStream buffer : _buffers){
+				buffer.reset();
+			}
+		}
+		setFrameType(VideoSegmentHeader.KEY_FRAME);
+	}
+
+	public void release(){
+		if(_mat != null){
+			_mat.release();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package videoSender;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Turns the encoding down when the camera produces more than it can upload,
+ * and back up once the link recovers. It is updated once per segment with:
+ * <ul>
+ * <li>the segments waiting in the upload queue,</li>
+ * <li>how long the S3Uploader takes to upload a segment, and</li>
+ * <li>how late the segment was assembled after its recording ended.</li>
+ * </ul>
+ * The link is congested when segments wait beyond what one segment's worth
+ * of renditions explains, when an upload takes longer than a segment lasts,
+ * or when assembly falls behind. Each congested segment moves one step down
+ * LEVELS, which lowers quality first, then frame rate, then resolution.
+ * It moves one step back up after RECOVERY clear segments in a row. Between
+ * the two the level holds, so it does not flap.
+ *
+ * @see EncodeSettings, ICCRunner, S3Uploader
+ */
+public class CongestionController {
+
+	/*
+	 * @param LEVELS		Quality drop, frames recorded per frame encoded and
+	 * 						scale in percent, from none to the most.
+	 * @param RECOVERY		Clear segments in a row before a step back up.
+	 * @param CLEAR_LATENCY	Share of a segment an upload may take while
+	 * 						clear.
+	 */
+	private static final EncodeSettings[] LEVELS = {
+		EncodeSettings.DEFAULT,
+		new EncodeSettings(20, 1, 100),
+		new EncodeSettings(20, 2, 100),
+		new EncodeSettings(20, 2, 75),
+		new EncodeSettings(40, 2, 75),
+		new EncodeSettings(40, 3, 50),
+		new EncodeSettings(40, 4, 50)
+	};
+	private static final int RECOVERY = 3;
+	private static final double CLEAR_LATENCY = 0.5;
+
+	private int 	_clear = 0;
+	private int 	_level = 0;
+	private int 	_renditions;
+	private long 	_segmentMillis;
+	private long 	_steps = 0;
+
+	/**
+	 * @param segmentMillis	Length of one segment.
+	 * @param renditions	Segments queued for each recording.
+	 */
+	public CongestionController(long segmentMillis, int renditions){
+		_segmentMillis = Math.max(1, segmentMillis);
+		_renditions = Math.max(1, renditions);
+	}
+
+	//-------------------------------------------------------------------------
+	//Public methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Called once a segment has been queued for upload.
+	 * @param backlog		Segments waiting in the upload queue.
+	 * @param uploadMillis	Recent time to upload a segment, or 0 if none
+	 * 						has finished yet.
+	 * @param recordLag		Ms the segment was assembled after its recording
+	 * 						should have ended.
+	 * @return				The settings for the next segment.
+	 */
+	public synchronized EncodeSettings update(int backlog, long uploadMillis, long recordLag){
+		boolean congested = backlog > _renditions
+				|| uploadMillis > _segmentMillis
+				|| recordLag > _segmentMillis / 2;
+		boolean clear = backlog <= _renditions
+				&& uploadMillis <= _segmentMillis * CLEAR_LATENCY
+				&& recordLag <= _segmentMillis / 10;
+
+		if(congested){
+			_clear = 0;
+			if(_level < LEVELS.length - 1){
+				_level++;
+				_steps++;
+			}
+		} else if(clear && _level > 0 && ++_clear >= RECOVERY){
+			_clear = 0;
+			_level--;
+			_steps++;
+		} else if(!clear){
+			_clear = 0;
+		}
+		return LEVELS[_level];
+	}
+
+	//-------------------------------------------------------------------------
+	//Get methods
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	0 when nothing is turned down.
+	 */
+	public synchronized int getLevel(){
+		return _level;
+	}
+	public synchronized EncodeSettings getSettings(){
+		return LEVELS[_level];
+	}
+	/**
+	 * @return	Times the level changed.
+	 */
+	public synchronized long getSteps(){
+		return _steps;
+	}
+}
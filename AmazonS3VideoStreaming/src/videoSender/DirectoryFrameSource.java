@@ -0,0 +1,87 @@
+package videoSender;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Replays the images of a directory in name order, over and over, scaled
+ * to the size of the setup. A single image may be given instead, which
+ * makes a static scene.
+ *
+ * @see FrameSources
+ */
+public class DirectoryFrameSource extends PacedFrameSource {
+
+	private static final String[] EXTENSIONS = {".bmp", ".jpeg", ".jpg", ".png", ".pgm", ".ppm", ".tif", ".tiff"};
+
+	private List<String> 	_files;
+	private int 			_next = 0;
+	private Size 			_size;
+
+	/**
+	 * @param path	A directory of images, or one image.
+	 * @param fps	Frames per second, or 0 for no pacing.
+	 * @throws IOException if there are no images to replay.
+	 */
+	public DirectoryFrameSource(File path, int width, int height, double fps) throws IOException {
+		super(fps);
+		_size = new Size(width, height);
+		_files = new ArrayList<>();
+		File[] files = path.isDirectory() ? path.listFiles() : new File[]{path};
+		if(files != null){
+			for(File file : files){
+				if(file.isFile() && isImage(file.getName())){
+					_files.add(file.getPath());
+				}
+			}
+		}
+		if(_files.isEmpty()){
+			throw new IOException("No images in " + path);
+		}
+		Collections.sort(_files);
+	}
+
+	public void release(){
+		_files.clear();
+	}
+
+	//-------------------------------------------------------------------------
+	//Protected methods
+	//-------------------------------------------------------------------------
+	protected boolean readFrame(Mat mat){
+		if(_files.isEmpty()) return false;
+		Mat image = Imgcodecs.imread(_files.get(_next));
+		_next = (_next + 1) % _files.size();
+		if(image.empty()){
+			return false;
+		}
+		if(image.cols() == (int)_size.width && image.rows() == (int)_size.height){
+			image.copyTo(mat);
+		} else{
+			Imgproc.resize(image, mat, _size);
+		}
+		image.release();
+		return true;
+	}
+
+	//-------------------------------------------------------------------------
+	//Private methods
+	//-------------------------------------------------------------------------
+	private static boolean isImage(String name){
+		name = name.toLowerCase();
+		for(String extension : EXTENSIONS){
+			if(name.endsWith(extension)) return true;
+		}
+		return false;
+	}
+}
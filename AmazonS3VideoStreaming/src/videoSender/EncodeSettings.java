@@ -0,0 +1,76 @@
+package videoSender;
+
+/**
+ * @author Ryan Babcock
+ *
+ * How far the CongestionController has turned the encoding down from what
+ * ICCSetup asks for. Settings only change between segments: the capture
+ * thread stamps the settings of a segment on each of its frames, and the
+ * values are written to the segment header.
+ *
+ * @see CongestionController, EncodingPipeline
+ */
+public class EncodeSettings {
+
+	public static final EncodeSettings DEFAULT = new EncodeSettings(0, 1, 100);
+
+	private static final int MIN_QUALITY = 10;
+
+	private int _decimation;
+	private int _qualityDrop;
+	private int _scale;
+
+	/**
+	 * @param qualityDrop	Subtracted from the quality of lossy codecs.
+	 * @param decimation	Frames recorded per frame encoded.
+	 * @param scale			Resolution in percent of the camera's.
+	 */
+	public EncodeSettings(int qualityDrop, int decimation, int scale){
+		_qualityDrop = qualityDrop;
+		_decimation = Math.max(1, decimation);
+		_scale = Math.max(1, Math.min(100, scale));
+	}
+
+	//-------------------------------------------------------------------------
+	//Public methods
+	//-------------------------------------------------------------------------
+	/**
+	 * @param quality	The quality asked for by the setup or rendition.
+	 * @param lossy		False for codecs whose quality does not trade size
+	 * 					for detail, which are left alone.
+	 * @return			The quality to encode at.
+	 */
+	public int getQuality(int quality, boolean lossy){
+		if(!lossy) return quality;
+		return Math.max(Math.min(quality, MIN_QUALITY), quality - _qualityDrop);
+	}
+
+	/**
+	 * @return	True if the frame at this position in the segment is
+	 * 			encoded; the first frame always is.
+	 */
+	public boolean isEncoded(int position){
+		return position % _decimation == 0;
+	}
+
+	public String toString(){
+		return "quality -" + _qualityDrop + ", 1/" + _decimation + " frames, "
+				+ _scale + "% scale";
+	}
+
+	//-------------------------------------------------------------------------
+	//Get methods
+	//-------------------------------------------------------------------------
+	public int getDecimation(){
+		return _decimation;
+	}
+	public int getQualityDrop(){
+		return _qualityDrop;
+	}
+	/**
+	 * @return	Resolution in percent of the camera's.
+	 */
+	public int getScale(){
+		return _scale;
+	}
+}
@@ -0,0 +1,21 @@
+package videoSender;
+
+import java.io.IOException;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Receives frames from the EncodingPipeline in capture order. Called from
+ * the assembler thread only.
+ * 
+ * @see EncodingPipeline
+ */
+public interface EncodedFrameListener {
+
+	/**
+	 * @param frame	The encoded frame. It returns to the pool after this
+	 * 				method returns, so its data must be copied.
+	 * @throws IOException
+	 */
+	public void frameReady(CapturedFrame frame) throws IOException;
+}
@@ -0,0 +1,419 @@
+package videoSender;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import videoUtility.FrameCodec;
+import videoUtility.FrameEncoder;
+import videoUtility.Rendition;
+import videoUtility.VideoSegmentHeader;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Splits recording into stages so that a slow encode never delays the next
+ * grab from the camera:
+ * <p>
+ * capture thread -> capture ring of pooled frames -> N encoder workers
+ * -> reorder buffer (by sequence number) -> assembler thread
+ * <p>
+ * The capture thread acquires a frame from the pool, grabs into its mat and
+ * submits it. Workers encode frames in parallel, each with its own
+ * FrameEncoder. The assembler hands frames to the EncodedFrameListener in
+ * capture order. Codecs that depend on the previous frame (DELTA, BLOCK) are
+ * encoded by a single worker so their frames stay in order. When the setup
+ * lists several renditions, the worker scales each frame down and encodes it
+ * once per rendition, each with its own encoder.
+ * <p>
+ * The CongestionController changes the EncodeSettings through setSettings.
+ * The capture thread applies new settings at the first frame of a segment
+ * and stamps them on every frame, so a segment is encoded one way only.
+ * Frames skipped by the settings' frame rate are recorded as repeats.
+ * <p>
+ * The capture ring holds at most captureDepth frames and the reorder buffer
+ * at most outputDepth. When the pool runs dry, the BackpressurePolicy decides
+ * whether capture waits or the oldest waiting frame is dropped. Dropped
+ * frames become repeats of the previous frame. The first frame of a segment
+ * is never dropped, since it cannot be a repeat.
+ * <p>
+ * When segments are published in parts (ICCSetup.setPartFrames), the first
+ * frame of every part is treated like the first frame of a segment: the
+ * encoders start over and it is never a repeat, so each part plays alone.
+ * If such a frame fails to encode, a black key frame takes its place.
+ *
+ * @see ICCRunner, BackpressurePolicy, FramePool
+ */
+public class EncodingPipeline {
+
+	private Thread 								_assembler;
+	private ArrayBlockingQueue<CapturedFrame> 	_captureRing;
+	private long 								_dropped = 0;
+	private EncodedFrameListener 				_listener;
+	private long 								_nextAssembled = 0;
+	private long 								_nextSequence = 0;
+	private int 								_outputDepth;
+	private BackpressurePolicy 					_policy;
+	private FramePool 							_pool;
+	private EncodeSettings 						_segmentSettings = EncodeSettings.DEFAULT;
+	private volatile EncodeSettings 			_nextSettings = EncodeSettings.DEFAULT;
+	private int 								_partFrames;
+	private TreeMap<Long, CapturedFrame> 		_reorder;
+	private ReentrantLock 						_reorderLock;
+	private Condition 							_reorderChanged;
+	private int 								_segmentLength;
+	private ICCSetup 							_setup;
+	private volatile boolean 					_stopped = false;
+	private Thread[] 							_workers;
+
+	//-------------------------------------------------------------------------
+	//Constructor
+	//-------------------------------------------------------------------------
+	/**
+	 * @param setup			Supplies the encoder, stage depths and policy.
+	 * @param segmentLength	Frames per video segment.
+	 * @param listener		Receives encoded frames in capture order.
+	 * @see ICCSetup
+	 */
+	public EncodingPipeline(ICCSetup setup, int segmentLength,
+			EncodedFrameListener listener){
+		int workers = FrameCodec.isIntraFrame(setup.getCodec())
+				? setup.getEncoderThreads() : 1;
+
+		_setup = setup;
+		_segmentLength = segmentLength;
+		_partFrames = setup.getPartFrames() > 0 ? setup.getPartFrames() : segmentLength;
+		_listener = listener;
+		_policy = setup.getBackpressurePolicy();
+		_outputDepth = Math.max(1, setup.getOutputDepth());
+		_captureRing = new ArrayBlockingQueue<>(Math.max(1, setup.getCaptureDepth()));
+		//one frame for the capture thread, plus every stage full
+		_pool = new FramePool(1 + setup.getCaptureDepth() + workers + _outputDepth,
+				setup.getRenditions().size());
+		_reorder = new TreeMap<>();
+		_reorderLock = new ReentrantLock();
+		_reorderChanged = _reorderLock.newCondition();
+		_workers = new Thread[workers];
+	}
+
+	//-------------------------------------------------------------------------
+	//Public methods
+	//-------------------------------------------------------------------------
+	public void start(){
+		for(int i = 0; i < _workers.length; i++){
+			_workers[i] = new Thread(new EncoderWorker(), "ICC Encoder " + i);
+			_workers[i].start();
+		}
+		_assembler = new Thread(new Assembler(), "ICC Assembler");
+		_assembler.start();
+		System.out.println("ICCR: Encoding with " + _workers.length + " worker(s)");
+	}
+
+	/**
+	 * Stops every stage and waits for the threads to finish. Frames that
+	 * have not been assembled yet are discarded and their mats released.
+	 */
+	public void stop(){
+		_stopped = true;
+		for(Thread worker : _workers){
+			if(worker != null) worker.interrupt();
+		}
+		if(_assembler != null) _assembler.interrupt();
+		try{
+			for(Thread worker : _workers){
+				if(worker != null) worker.join();
+			}
+			if(_assembler != null) _assembler.join();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		//frames still waiting in a stage go back to the pool to be released
+		CapturedFrame frame;
+		while((frame = _captureRing.poll()) != null){
+			_pool.release(frame);
+		}
+		_reorderLock.lock();
+		try{
+			for(CapturedFrame waiting : _reorder.values()){
+				_pool.release(waiting);
+			}
+			_reorder.clear();
+		} finally {
+			_reorderLock.unlock();
+		}
+		_pool.close();
+	}
+
+	/**
+	 * Gets a free frame for the capture thread to grab into. Under the
+	 * DROP_OLDEST policy, the oldest frame waiting to be encoded is dropped
+	 * if the pool is empty.
+	 *
+	 * @return	A cleared frame.
+	 * @throws InterruptedException
+	 */
+	public CapturedFrame acquire() throws InterruptedException {
+		CapturedFrame frame = _pool.poll();
+		if(frame == null && _policy == BackpressurePolicy.DROP_OLDEST){
+			frame = dropOldest();
+		}
+		if(frame == null){
+			frame = _pool.take();
+		}
+		return frame;
+	}
+
+	/**
+	 * Gives back a frame that was acquired but not submitted, ie. when the
+	 * grab failed.
+	 */
+	public void release(CapturedFrame frame){
+		_pool.release(frame);
+	}
+
+	/**
+	 * @param settings	Used from the next segment on.
+	 */
+	public void setSettings(EncodeSettings settings){
+		_nextSettings = settings;
+	}
+
+	/**
+	 * Passes a captured frame to the encoders, or straight to the assembler
+	 * if it only repeats the previous frame.
+	 *
+	 * @param frame		A frame from acquire() holding the captured mat.
+	 * @param changed	False to record the frame as a repeat.
+	 * @throws InterruptedException
+	 */
+	public void submit(CapturedFrame frame, boolean changed) throws InterruptedException {
+		frame.setSequence(_nextSequence++);
+		int position = getPosition(frame);
+		if(position == 0){
+			_segmentSettings = _nextSettings;
+		}
+		frame.setSettings(_segmentSettings);
+		if(!isPartStart(position) && (!changed || !_segmentSettings.isEncoded(position))){
+			frame.setFrameType(VideoSegmentHeader.REPEAT_FRAME);
+			deliver(frame);
+			return;
+		}
+		while(!_captureRing.offer(frame)){
+			CapturedFrame dropped = null;
+			if(_policy == BackpressurePolicy.DROP_OLDEST){
+				dropped = dropOldest();
+			}
+			if(dropped == null){
+				_captureRing.put(frame);
+				return;
+			}
+			_pool.release(dropped);
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//Get methods
+	//-------------------------------------------------------------------------
+	public synchronized long getDroppedFrames(){
+		return _dropped;
+	}
+	public int getWorkerCount(){
+		return _workers.length;
+	}
+
+	//-------------------------------------------------------------------------
+	//Private methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Places a frame in the reorder buffer. Waits while the buffer is full,
+	 * unless the frame is the next one the assembler needs.
+	 */
+	private void deliver(CapturedFrame frame) throws InterruptedException {
+		_reorderLock.lockInterruptibly();
+		try{
+			while(!_stopped && _reorder.size() >= _outputDepth
+					&& frame.getSequence() != _nextAssembled){
+				_reorderChanged.await();
+			}
+			_reorder.put(frame.getSequence(), frame);
+			_reorderChanged.signalAll();
+		} finally {
+			_reorderLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the oldest frame waiting in the capture ring that is not the
+	 * first frame of a segment or part, and records a repeat in its place.
+	 *
+	 * @return	The dropped frame, cleared, or null if none could be dropped.
+	 */
+	private CapturedFrame dropOldest() throws InterruptedException {
+		Iterator<CapturedFrame> it = _captureRing.iterator();
+		while(it.hasNext()){
+			CapturedFrame frame = it.next();
+			if(isPartStart(getPosition(frame))){
+				continue;
+			}
+			//a worker may have taken it in the meantime
+			if(_captureRing.remove(frame)){
+				deliver(CapturedFrame.repeat(frame));
+				synchronized(this){
+					_dropped++;
+				}
+				frame.clear();
+				return frame;
+			}
+		}
+		return null;
+	}
+
+	private int getPosition(CapturedFrame frame){
+		return (int)(frame.getSequence() % _segmentLength);
+	}
+
+	/**
+	 * @return	True for the first frame of a segment or of a part.
+	 */
+	private boolean isPartStart(int position){
+		return position % _partFrames == 0;
+	}
+
+	//-------------------------------------------------------------------------
+	//Stages
+	//-------------------------------------------------------------------------
+	/**
+	 * Encodes frames from the capture ring into their own buffers.
+	 */
+	private class EncoderWorker implements Runnable {
+
+		private FrameEncoder[] 		_encoders;
+		private List<Rendition> 	_renditions = _setup.getRenditions();
+		private Mat 				_scaled = new Mat();
+		private EncodeSettings 		_settings = EncodeSettings.DEFAULT;
+
+		public void run(){
+			_encoders = new FrameEncoder[_renditions.size()];
+			for(int i = 0; i < _encoders.length; i++){
+				_encoders[i] = _setup.getFrameEncoder(_renditions.get(i), _settings);
+			}
+			while(!_stopped){
+				CapturedFrame frame = null;
+				try{
+					frame = _captureRing.take();
+					if(frame.getSettings() != _settings){
+						//the frame belongs to a segment with other settings
+						_settings = frame.getSettings();
+						for(int i = 0; i < _encoders.length; i++){
+							_encoders[i].close();
+							_encoders[i] = _setup.getFrameEncoder(_renditions.get(i), _settings);
+						}
+					}
+					encode(frame);
+					deliver(frame);
+				} catch(InterruptedException e){
+					_pool.release(frame);
+					break;
+				} catch(Exception e){
+					System.err.println("ICCR: Failed to encode frame " + frame.getSequence());
+					e.printStackTrace();
+					try{
+						recover(frame);
+					} catch(InterruptedException ie){
+						break;
+					}
+				}
+			}
+			for(FrameEncoder encoder : _encoders){
+				encoder.close();
+			}
+			_scaled.release();
+		}
+
+		/**
+		 * Encodes the frame once per rendition into its buffers.
+		 */
+		private void encode(CapturedFrame frame) throws Exception {
+			for(int i = 0; i < _encoders.length; i++){
+				if(isPartStart(getPosition(frame))){
+					_encoders[i].reset();
+				}
+				Mat mat = frame.getMat();
+				double scale = _renditions.get(i).getScale() * _settings.getScale() / 100.0;
+				if(scale < 1){
+					Imgproc.resize(mat, _scaled, new Size(), scale, scale, Imgproc.INTER_AREA);
+					mat = _scaled;
+				}
+				frame.getBuffer(i).reset();
+				frame.setFrameType(i, _encoders[i].encode(mat, frame.getBuffer(i)));
+			}
+		}
+
+		/**
+		 * Keeps the sequence intact after a frame failed to encode so the
+		 * assembler does not stall. A frame that starts a segment or part
+		 * cannot be a repeat, so a black key frame is encoded in its place.
+		 * If that fails too, the repeat is delivered anyway and the runner
+		 * drops the rest of the segment.
+		 */
+		private void recover(CapturedFrame frame) throws InterruptedException {
+			if(isPartStart(getPosition(frame))){
+				try{
+					frame.getMat().setTo(Scalar.all(0));
+					encode(frame);
+					deliver(frame);
+					return;
+				} catch(InterruptedException e){
+					_pool.release(frame);
+					throw e;
+				} catch(Exception e){
+					System.err.println("ICCR: Failed to encode a black frame in place of frame "
+							+ frame.getSequence());
+				}
+			}
+			try{
+				deliver(CapturedFrame.repeat(frame));
+			} finally {
+				_pool.release(frame);
+			}
+		}
+	}
+
+	/**
+	 * Hands frames to the listener in sequence order.
+	 */
+	private class Assembler implements Runnable {
+		public void run(){
+			while(!_stopped){
+				CapturedFrame frame;
+				_reorderLock.lock();
+				try{
+					while(!_stopped && !_reorder.containsKey(_nextAssembled)){
+						_reorderChanged.await();
+					}
+					if(_stopped) break;
+					frame = _reorder.remove(_nextAssembled++);
+					_reorderChanged.signalAll();
+				} catch(InterruptedException e){
+					break;
+				} finally {
+					_reorderLock.unlock();
+				}
+				try{
+					_listener.frameReady(frame);
+				} catch(Exception e){
+					e.printStackTrace();
+				}
+				_pool.release(frame);
+			}
+		}
+	}
+}
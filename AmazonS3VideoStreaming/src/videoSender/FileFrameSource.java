@@ -0,0 +1,56 @@
+package videoSender;
+
+import java.io.IOException;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Replays a video file over and over, scaled to the size of the setup.
+ * A file is read as fast as it is asked for, so it is paced at the rate
+ * of the setup rather than the rate it was recorded at.
+ *
+ * @see FrameSources
+ */
+public class FileFrameSource extends PacedFrameSource {
+
+	private VideoCapture 	_capture;
+	private Size 			_size;
+
+	/**
+	 * @param fps	Frames per second, or 0 for no pacing.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public FileFrameSource(String path, int width, int height, double fps) throws IOException {
+		super(fps);
+		_size = new Size(width, height);
+		_capture = new VideoCapture(path);
+		if(!_capture.isOpened()){
+			throw new IOException("Failed to open video file " + path);
+		}
+	}
+
+	public void release(){
+		_capture.release();
+	}
+
+	//-------------------------------------------------------------------------
+	//Protected methods
+	//-------------------------------------------------------------------------
+	protected boolean readFrame(Mat mat){
+		if(!_capture.read(mat)){
+			//rewind at the end of the file
+			_capture.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+			if(!_capture.read(mat)) return false;
+		}
+		if(mat.cols() != (int)_size.width || mat.rows() != (int)_size.height){
+			Imgproc.resize(mat, mat, _size);
+		}
+		return true;
+	}
+}
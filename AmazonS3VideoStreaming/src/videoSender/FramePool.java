@@ -0,0 +1,79 @@
+package videoSender;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * A fixed set of CapturedFrames (each with its own mat) shared by the stages
+ * of the EncodingPipeline. No frames are allocated after construction.
+ * 
+ * @see CapturedFrame, EncodingPipeline
+ */
+public class FramePool {
+
+	private ArrayBlockingQueue<CapturedFrame> 	_frames;
+	private int 								_size;
+
+	public FramePool(int size){
+		this(size, 1);
+	}
+
+	/**
+	 * @param renditions	Encode buffers in each frame.
+	 */
+	public FramePool(int size, int renditions){
+		_size = size;
+		_frames = new ArrayBlockingQueue<>(size);
+		for(int i = 0; i < size; i++){
+			_frames.add(new CapturedFrame(renditions));
+		}
+	}
+
+	/**
+	 * @return	A free frame, or null if every frame is in use.
+	 */
+	public CapturedFrame poll(){
+		CapturedFrame frame = _frames.poll();
+		if(frame != null){
+			frame.clear();
+		}
+		return frame;
+	}
+
+	/**
+	 * Waits for a free frame.
+	 */
+	public CapturedFrame take() throws InterruptedException {
+		CapturedFrame frame = _frames.take();
+		frame.clear();
+		return frame;
+	}
+
+	/**
+	 * Returns a frame to the pool. Placeholder frames are ignored.
+	 */
+	public void release(CapturedFrame frame){
+		if(frame != null && frame.isPooled()){
+			_frames.offer(frame);
+		}
+	}
+
+	/**
+	 * Releases the mats of every frame currently in the pool.
+	 */
+	public void close(){
+		CapturedFrame frame;
+		while((frame = _frames.poll()) != null){
+			frame.release();
+		}
+	}
+
+	public int available(){
+		return _frames.size();
+	}
+
+	public int size(){
+		return _size;
+	}
+}
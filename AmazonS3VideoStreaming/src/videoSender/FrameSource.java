@@ -0,0 +1,27 @@
+package videoSender;
+
+import org.opencv.core.Mat;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Where the ICCRunner gets its frames: a camera, a recording, or a
+ * generated pattern. Frames come as 8-bit BGR at the size of the ICCSetup,
+ * as a camera delivers them.
+ *
+ * @see FrameSources, ICCRunner
+ */
+public interface FrameSource {
+
+	/**
+	 * Reads the next frame, waiting for it if the source is paced.
+	 * @param mat	Receives the frame.
+	 * @return		False if no frame was ready.
+	 */
+	boolean read(Mat mat);
+
+	/**
+	 * Frees the device or memory held by the source.
+	 */
+	void release();
+}
@@ -0,0 +1,87 @@
+package videoSender;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Opens a FrameSource from a short description, ie. the value of -Dsource:
+ * <ul>
+ * <li>camera or camera:device - the camera of the setup, device 0 by
+ * default</li>
+ * <li>dir:path - the images of a directory, or one image, replayed in name
+ * order</li>
+ * <li>file:path - a video file, replayed</li>
+ * <li>synthetic or synthetic:motion,noise,seed - a generated pattern, with
+ * motion in pixels per frame and noise in gray levels</li>
+ * </ul>
+ * Every source but the camera is paced at the source rate of the setup.
+ *
+ * @see ICCSetup#getSourceFPS
+ */
+public class FrameSources {
+
+	private static final double DEFAULT_MOTION = 4;
+	private static final double DEFAULT_NOISE = 8;
+
+	private FrameSources(){}
+
+	/**
+	 * @param spec	Which source to open; null opens the camera.
+	 * @param setup	Size and rate of the frames.
+	 * @throws IOException if the source cannot be opened.
+	 */
+	public static FrameSource open(String spec, ICCSetup setup) throws IOException {
+		if(spec == null || spec.equals("camera")){
+			return openCamera(setup);
+		}
+		int colon = spec.indexOf(':');
+		String type = colon < 0 ? spec : spec.substring(0, colon);
+		String arg = colon < 0 ? "" : spec.substring(colon + 1);
+		int width = setup.getWidth();
+		int height = setup.getHeight();
+		double fps = setup.getSourceFPS();
+
+		switch(type){
+		case "camera":
+			try{
+				setup.setDevice(Integer.parseInt(arg.trim()));
+			} catch(NumberFormatException e){
+				throw new IOException("Bad camera: " + spec, e);
+			}
+			return openCamera(setup);
+		case "dir":
+			return new DirectoryFrameSource(new File(arg), width, height, fps);
+		case "file":
+			return new FileFrameSource(arg, width, height, fps);
+		case "synthetic":
+			double motion = DEFAULT_MOTION, noise = DEFAULT_NOISE;
+			long seed = SyntheticFrameSource.DEFAULT_SEED;
+			if(!arg.isEmpty()){
+				String[] shape = arg.split(",");
+				try{
+					motion = Double.parseDouble(shape[0].trim());
+					if(shape.length > 1) noise = Double.parseDouble(shape[1].trim());
+					if(shape.length > 2) seed = Long.parseLong(shape[2].trim());
+				} catch(NumberFormatException e){
+					throw new IOException("Bad synthetic source: " + spec, e);
+				}
+			}
+			return new SyntheticFrameSource(width, height, fps, motion, noise, seed);
+		default:
+			throw new IOException("Unknown source: " + spec);
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//Private methods
+	//-------------------------------------------------------------------------
+	private static FrameSource openCamera(ICCSetup setup) throws IOException {
+		try{
+			return new CameraFrameSource(setup.getVideoCapture());
+		} catch(Exception e){
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+}
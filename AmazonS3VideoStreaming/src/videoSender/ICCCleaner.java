@@ -1,48 +1,188 @@
 package videoSender;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import videoUtility.Utility;
+import videoUtility.RetryPolicy;
 
+/**
+ * @author Ryan Babcock
+ *
+ * Deletes old video segments from the bucket on its own thread, so the
+ * recorder never waits on a delete. Keys may be added from any thread and
+ * wait in a queue. The cleaner takes every key waiting, up to MAX_BATCH,
+ * and deletes them with one multi-object delete request, so the renditions
+ * of an expired segment cost one round trip.
+ * <p>
+ * Keys that fail are not retried on the spot. They are kept with their
+ * attempt count and sent again with a later batch once their RetryPolicy
+ * backoff has passed. A key that runs out of attempts is left for the
+ * S3Uploader, which lists and deletes every segment at startup and
+ * shutdown through deleteNow.
+ *
+ * @see S3Uploader, ObjectStore#deleteAll
+ */
 public class ICCCleaner extends Thread {
-	boolean _isDone = false;
-	S3Uploader s3;
-	LinkedList<String> _listDel;
-	
-	public ICCCleaner(S3Uploader S3) {
-		s3 = S3;
-		_listDel = new LinkedList<>();
-	}
-	
-	public void add(String s3file){
-		_listDel.addLast(s3file);
-		this.interrupt();
+
+	public static final int MAX_BATCH = 1000;//keys in one DeleteObjects request
+	private static final RetryPolicy RETRY = RetryPolicy.DEFAULT;
+
+	/*
+	 * @param _expired	Keys waiting for their first delete.
+	 * @param _failed	Keys that failed, with their attempts so far. Only
+	 * 					used by the cleaner thread.
+	 * @param _retryAt	When each failed key may be sent again.
+	 */
+	private volatile boolean 			_isDone = false;
+	private LinkedBlockingQueue<String> _expired;
+	private Map<String, Integer> 		_failed;
+	private Map<String, Long> 			_retryAt;
+	private S3Uploader 					_s3;
+
+	private AtomicLong 					_deleted = new AtomicLong();
+	private AtomicLong 					_requests = new AtomicLong();
+
+	public ICCCleaner(S3Uploader s3) {
+		super("ICC Cleaner");
+		setDaemon(true);
+		_s3 = s3;
+		_expired = new LinkedBlockingQueue<>();
+		_failed = new HashMap<>();
+		_retryAt = new HashMap<>();
+	}
+
+	//-------------------------------------------------------------------------
+	//Public methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Queues a key to be deleted.
+	 */
+	public void add(String key){
+		_expired.offer(key);
 	}
-	
+
 	public void end(){
 		System.out.println("Attempting to close Cleaner...");
 		_isDone = true;
 		this.interrupt();
 	}
-	
+
+	/**
+	 * Deletes keys on the calling thread, in batches, retrying the keys that
+	 * fail under the RetryPolicy. Used when the caller cannot go on until
+	 * the keys are gone.
+	 * @return	The keys that could not be deleted.
+	 */
+	public List<String> deleteNow(Collection<String> keys){
+		List<String> remaining = new ArrayList<>(keys);
+		for(int attempt = 1; !remaining.isEmpty(); attempt++){
+			List<String> failed = new ArrayList<>();
+			for(int start = 0; start < remaining.size(); start += MAX_BATCH){
+				failed.addAll(deleteBatch(remaining.subList(start,
+						Math.min(remaining.size(), start + MAX_BATCH))));
+			}
+			remaining = failed;
+			if(remaining.isEmpty() || !RETRY.canRetry(attempt)){
+				break;
+			}
+			try{
+				Thread.sleep(RETRY.getDelay(attempt));
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return remaining;
+	}
+
 	public void run(){
-		String delKey;
+		List<String> batch = new ArrayList<>();
 		while(!_isDone){
-			if(_listDel.isEmpty()){
-				try{
-					synchronized(this){						
-						wait();
-					}
-					continue;
-				} catch(InterruptedException e){ continue; }
+			try{
+				String key = _expired.poll(nextRetry(), TimeUnit.MILLISECONDS);
+				if(key != null){
+					batch.add(key);
+				}
+			} catch(InterruptedException e){
+				continue;
 			}
-			delKey = _listDel.removeFirst();
-			s3.delete(delKey);
-			
-			while(!s3.isDeleted(delKey)){
-				Utility.pause(50);
-			}		
+			_expired.drainTo(batch, MAX_BATCH - batch.size());
+			addDueRetries(batch);
+			if(batch.isEmpty()) continue;
+
+			List<String> failed = deleteBatch(batch);
+			for(String key : batch){
+				if(failed.contains(key)){
+					failed(key);
+				} else{
+					_failed.remove(key);
+				}
+			}
+			batch.clear();
+		}
+		System.out.println("Cleaner successfully closed! Deleted " + _deleted
+				+ " objects in " + _requests + " requests");
+	}
+
+	//-------------------------------------------------------------------------
+	//Private methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Adds failed keys whose backoff has passed, up to MAX_BATCH.
+	 */
+	private void addDueRetries(List<String> batch){
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, Long>> it = _retryAt.entrySet().iterator();
+		while(it.hasNext() && batch.size() < MAX_BATCH){
+			Map.Entry<String, Long> retry = it.next();
+			if(retry.getValue() <= now && !batch.contains(retry.getKey())){
+				batch.add(retry.getKey());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return	The keys of batch that were not deleted.
+	 */
+	private List<String> deleteBatch(List<String> batch){
+		List<String> failed = _s3.deleteObjects(batch);
+		_requests.incrementAndGet();
+		_deleted.addAndGet(batch.size() - failed.size());
+		return failed;
+	}
+
+	/**
+	 * Schedules another attempt for a key, or gives up on it.
+	 */
+	private void failed(String key){
+		Integer attempts = _failed.get(key);
+		int attempt = attempts == null ? 1 : attempts + 1;
+		if(!RETRY.canRetry(attempt)){
+			_failed.remove(key);
+			System.err.println("Cleaner: Gave up deleting '" + key + "'");
+			return;
+		}
+		_failed.put(key, attempt);
+		_retryAt.put(key, System.currentTimeMillis() + RETRY.getDelay(attempt));
+	}
+
+	/**
+	 * @return	Ms until the next failed key may be sent again.
+	 */
+	private long nextRetry(){
+		long next = Long.MAX_VALUE;
+		for(long retryAt : _retryAt.values()){
+			next = Math.min(next, retryAt);
 		}
-		System.out.println("Cleaner successfully closed!");
+		return next == Long.MAX_VALUE ? Long.MAX_VALUE
+				: Math.max(0, next - System.currentTimeMillis());
 	}
-}
\ No newline at end of file
+}
@@ -11,10 +11,14 @@ import performance.GNUScriptWriter;
 import performance.PerformanceLogger;
 import videoUtility.SharedQueue;
 import videoUtility.VideoSegment;
+import videoUtility.ReusableByteArrayOutputStream;
+import videoUtility.ObjectStores;
+import videoUtility.Rendition;
+import videoUtility.SegmentPool;
+import videoUtility.Utility;
 
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 //import java.io.FileOutputStream;
 import java.io.FileWriter;
@@ -28,7 +32,6 @@ import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.Scalar;
-import org.opencv.videoio.VideoCapture;
 import org.opencv.imgproc.Imgproc;
 
 /**
@@ -43,16 +46,34 @@ import org.opencv.imgproc.Imgproc;
  * <p>
  * This version uses a video naming convention that lets the client know which 
  * video is most current.
+ * <p>
+ * Capture and encoding run on separate threads (see EncodingPipeline): this
+ * thread only grabs frames, while encoder workers compress them and the
+ * assembler thread builds each segment in capture order.
+ * <p>
+ * Each segment is built once per rendition (-Drenditions=full,half,quarter,
+ * default full). Every rendition is uploaded under its own key, and the
+ * receiver picks the one its link can carry.
+ * <p>
+ * When uploads fall behind, a CongestionController lowers quality, frame
+ * rate and resolution from the next segment on (-Dcongestion=false turns
+ * it off). The values used are written to each segment's header.
+ * <p>
+ * With -DpartFrames=n, every n frames of a segment are uploaded as a part
+ * under their own key as soon as they are encoded, instead of the whole
+ * segment once its last frame is. Latency then depends on the part length
+ * instead of the segment length, while segments still set the cadence of
+ * settings, the manifest and deletion.
  * 
- * Used in Run configuration settings:
+ * Used in Run configuration settings (or -Dopencv.lib=path of the library):
  * 	Djava.library.path=/home/pi/Libraries/opencv-3.1.0/build/lib
- *  Djava.library.path=C:\Libraries\opencv\build\java\x64\opencv_java320.dll
+ *  Djava.library.path=C:\Libraries\opencv\build\java\x64
  * 	System.out.println(System.getProperty("java.library.path"));
 
  * @version v.3.1
  * @see VideoSource
  */
-public class ICCRunner extends VideoSource {
+public class ICCRunner extends VideoSource implements EncodedFrameListener {
 
 	/*
 	 * @param MAX_VIDEO_INDEX	Refers to the number used in the file name for
@@ -63,15 +84,48 @@ public class ICCRunner extends VideoSource {
 	 */
 	private final static short MAX_VIDEO_INDEX = 500;
 	private final static short MAX_SEGMENTS = 20;
+	private final static int FRAME_BYTES = 32 * 1024;//initial estimate per encoded frame
 	private final static float PERF_TOLERRANCE = 0.1f;//alarms when recording takes longer than it should
 	private final static boolean PREVIEW = false;
 	private final short TOTAL_SEGS_TO_PLAY = 1200;
 	private short _totalPlayed = 0;
 	
 	/*
-	 * ICCSetup is used to configure the video recorder settings
+	 * ICCSetup is used to configure the video recorder settings. The codec
+	 * and its quality can be chosen per deployment with
+	 * -Dcodec=jpeg|png|raw|delta|block, -Dquality=n and -Dblock=8|16.
+	 * Motion gating is enabled with -Dmotion=fraction (ie. 0.01), in which
+	 * case static scenes are only encoded at -DkeepAliveFPS. The encoding
+	 * pipeline is tuned with -DencoderThreads, -DcaptureDepth, -DoutputDepth
+	 * and -Dbackpressure=block|drop_oldest. -DuploadWindow=n sets how many
+	 * segments may upload at once. -Dstore=s3|local:dir|memory picks where
+	 * they are uploaded (see ObjectStores). -Drenditions lists the
+	 * renditions encoded for every segment, best first (see Rendition).
+	 * -Dcongestion=false keeps the encoding fixed however far uploads fall
+	 * behind. -DpartFrames=n publishes segments in parts of n frames.
+	 * -Dsource=camera|dir:path|file:path|synthetic:motion,noise picks where
+	 * frames come from (see FrameSources), and -DsourceFPS=n the rate of
+	 * sources other than the camera, 0 being as fast as they are taken.
 	 */
 	private static ICCSetup _setup = new ICCSetup()
+			.setCodec(System.getProperty("codec", "jpeg"))
+			.setQuality(Integer.getInteger("quality", -1))
+			.setBlockSize(Integer.getInteger("block", 16))
+			.setMotionThreshold(Double.parseDouble(System.getProperty("motion", "0")))
+			.setKeepAliveFPS(Double.parseDouble(System.getProperty("keepAliveFPS", "0.5")))
+			.setEncoderThreads(Integer.getInteger("encoderThreads",
+					Runtime.getRuntime().availableProcessors()))
+			.setCaptureDepth(Integer.getInteger("captureDepth", 4))
+			.setOutputDepth(Integer.getInteger("outputDepth", 8))
+			.setBackpressurePolicy(BackpressurePolicy.valueOf(
+					System.getProperty("backpressure", "DROP_OLDEST").toUpperCase()))
+			.setUploadWindow(Integer.getInteger("uploadWindow", 3))
+			.setStore(System.getProperty("store"))
+			.setRenditions(System.getProperty("renditions", "full"))
+			.setCongestionControl(Boolean.parseBoolean(System.getProperty("congestion", "true")))
+			.setPartFrames(Integer.getInteger("partFrames", 0))
+			.setSource(System.getProperty("source"))
+			.setSourceFPS(Double.parseDouble(System.getProperty("sourceFPS", "-1")))
 			.setCompressionRatio(.75)
 			.setDevice(0)
 			.setFourCC("MJPG")
@@ -94,8 +148,22 @@ public class ICCRunner extends VideoSource {
 	//-------------------------------------------------------------------------
 	//Private variables
 	//-------------------------------------------------------------------------
-	private Mat 	_mat;
-	private Point 	_timeStampLocation;
+	private CongestionController 	_congestion;
+	private short 					_currentSegment = 0;
+	private short 					_framesAssembled = 0;
+	private VideoSegmentHeader 		_header;
+	private MotionDetector 			_motion;
+	private short 					_oldestSegment = 0;
+	private ReusableByteArrayOutputStream[] _outputs;
+	private VideoSegmentHeader 		_partHeader;
+	private long 					_partTimeStamp;
+	private EncodingPipeline 		_pipeline;
+	private boolean 				_preloaded = false;
+	private short 					_segmentLength;
+	private SegmentPool 			_segmentPool;
+	private EncodeSettings 			_segmentSettings = EncodeSettings.DEFAULT;
+	private ICCFrameWriter[] 		_segmentWriters;
+	private Point 					_timeStampLocation;
 
 	//-------------------------------------------------------------------------
 	//DVC
@@ -104,18 +172,16 @@ public class ICCRunner extends VideoSource {
 		super();
 		_startTime = System.currentTimeMillis();
 		_className = "ICC Runner";
-		_mat = new Mat();
 		_signalQueue = new SharedQueue<>(10);
-		_videoStream = new SharedQueue<>(MAX_SEGMENTS + 1);
+		_videoStream = new SharedQueue<>((MAX_SEGMENTS + 1) * _setup.getRenditions().size()
+				* getParts());
 	}
 
 	//-------------------------------------------------------------------------
 	//Main
 	//-------------------------------------------------------------------------
 	public static void main(String[] args) {
-		String cvlib = "C:\\Libraries\\opencv\\build\\java\\x64\\opencv_java320.dll";
-		System.load(cvlib);
-//		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		Utility.loadOpenCV();
 //		loadLibrary();
 
 		ICCRunner iccr = new ICCRunner();
@@ -147,109 +213,147 @@ public class ICCRunner extends VideoSource {
 	public void run() {
 		Runtime.getRuntime().addShutdownHook(new ICCRunnerShutdownHook(this));
 
-		short frameCount = 0, oldestSegment = 0, currentSegment = 0;
-		short segmentLength = (short)(_setup.getFPS() * _setup.getSegmentLength());
-		boolean preloaded = false;
-		double timeStarted;
-		ByteArrayOutputStream output = new ByteArrayOutputStream();
-		ICCFrameWriter segmentWriter = new ICCFrameWriter(_mat, output);
-		VideoCapture grabber = null;
-		VideoSegment segment = new VideoSegment();
-		VideoSegmentHeader header = new VideoSegmentHeader();
-
-		segmentWriter.setFrames(segmentLength);
+		short frameCount = 0;
+		int keepAliveInterval = _setup.getKeepAliveInterval();
+		FrameSource source = null;
+
+		int renditions = _setup.getRenditions().size();
+		_segmentLength = (short)(_setup.getFPS() * _setup.getSegmentLength());
+		_outputs = new ReusableByteArrayOutputStream[renditions];
+		_segmentWriters = new ICCFrameWriter[renditions];
+		for(int i = 0; i < renditions; i++){
+			_outputs[i] = new ReusableByteArrayOutputStream();
+			_segmentWriters[i] = new ICCFrameWriter(new Mat(), _outputs[i]);
+			_segmentWriters[i].setFrames(_segmentLength);
+		}
+		//queued segments, plus those uploading and the one being filled
+		int frames = getParts() > 1 ? _setup.getPartFrames() : _segmentLength;
+		_segmentPool = new SegmentPool((MAX_SEGMENTS + 2 + _setup.getUploadWindow()) * renditions
+				* getParts(), VideoSegmentHeader.size(frames) + frames * FRAME_BYTES, false);
+		_header = new VideoSegmentHeader();
+		_partHeader = new VideoSegmentHeader();
+		_pipeline = new EncodingPipeline(_setup, _segmentLength, this);
+		if(_setup.isCongestionControl()){
+			_congestion = new CongestionController((long)(_setup.getSegmentLength() * 1000),
+					renditions);
+		}
+		if(_setup.getMotionThreshold() > 0){
+			_motion = new MotionDetector(_setup.getMotionThreshold(),
+					(int)_setup.getFPS());
+		}
 
 		try{
-			grabber = _setup.getVideoCapture();
+			source = _setup.getFrameSource();
 			_timeStampLocation = new Point(10, 20);
 		}
 		catch(Exception e){
-			System.err.println("ERROR 100: Failed to open recording device");
+			System.err.println("ERROR 100: Failed to open recording device: " + e.getMessage());
 			System.exit(-1);
 		}
+		_pipeline.start();
 
-		header.setTimeStamp(System.currentTimeMillis());
-		timeStarted = header.getTimeStamp();
-		
 		//isDone becomes false when "end()" function is called
 		while (!_isDone) {
 			
 			try {
-				//capture and record video
-				if (!grabber.read(_mat)) {
+				//capture video; encoding happens on the pipeline workers
+				CapturedFrame frame = _pipeline.acquire();
+				Mat mat = frame.getMat();
+				if (!source.read(mat)) {
+					_pipeline.release(frame);
 					continue;
 				}
-				Imgproc.cvtColor(_mat, _mat, Imgproc.COLOR_BGR2GRAY);
-				Imgproc.putText(_mat, getTime(),
+				frame.setTimeStamp(System.currentTimeMillis());
+				Imgproc.cvtColor(mat, mat, Imgproc.COLOR_BGR2GRAY);
+				//checked before the time stamp is drawn, which changes every frame
+				boolean changed = isSceneChanged(mat, frameCount, keepAliveInterval);
+				Imgproc.putText(mat, getTime(),
 						_timeStampLocation,
 						Core.FONT_HERSHEY_PLAIN, 1, new Scalar(0));
 				
 				if(PREVIEW){
-					_display.setCurrentFrame(this.getCurrentFrame());
-				}
-				segmentWriter.write();
-				frameCount++;
-
-				//loops until end of current video segment
-				if(frameCount >= segmentLength){
-					//set parameters instead of 'new' to avoid memory usage
-					header.setFrameOrder(segmentWriter.getFrames());
-					segment.setIndex(currentSegment);
-					segment.setData(output.toByteArray());
-					segment.setHeader(header);
-
-					sendSegmentToS3(segment);
-					
-					if(FileData.ISLOGGING){
-						logSegment(timeStarted);
-					}
-
-					if(preloaded){
-						oldestSegment = (short)(++oldestSegment % MAX_VIDEO_INDEX);
-						deleteOldSegments(currentSegment);
-					}
-					else if(currentSegment == MAX_SEGMENTS-1){
-						preloaded = true;
-					}
-
-					//start new recording
-					currentSegment = incrementVideoSegment(currentSegment);
-					segmentWriter.reset();
-					frameCount = 0;
-					
-//					System.out.println("CurrSeg: " + currentSegment);
-//					System.out.println("Record time: " 
-//					+ ((System.currentTimeMillis() - timeStarted)/1000.0));
-					
-					segment = new VideoSegment();
-					header = new VideoSegmentHeader();
-					
-					header.setTimeStamp(System.currentTimeMillis());
-
-					if((header.getTimeStamp() - timeStarted)/1000.0
-							> (_setup.getSegmentLength() + PERF_TOLERRANCE)){
-						System.err.println("VISUAL QUALITY IS AFFECTING PERFORMANCE!");
-						System.err.println("Please lower compression, FPS, color, etc.");
-					}
-					timeStarted = header.getTimeStamp();
-
-					if(++_totalPlayed == TOTAL_SEGS_TO_PLAY && !PREVIEW) end();
+					_display.setCurrentFrame(this.getCurrentFrame(mat));
 				}
+				_pipeline.submit(frame, changed);
+				frameCount = (short)((frameCount + 1) % _segmentLength);
 			}//end try
+			catch (InterruptedException e) {
+				continue;//end() was called
+			}
 			catch (Exception e) {
 				e.printStackTrace();
 			}
 		}//end while
-		closeEverything(grabber, segmentWriter);
+		_pipeline.stop();
+		closeEverything(source, _segmentWriters);
 		System.out.println("Runner successfully closed");
 	}
 
+	//-------------------------------------------------------------------------
+	//Public methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Appends an encoded frame to the current video segment. Called by the
+	 * EncodingPipeline assembler thread in capture order. A frame is counted
+	 * only once every rendition has written it; if one cannot, the segment
+	 * is dropped.
+	 * 
+	 * @param frame		The encoded frame.
+	 * @throws IOException if the frame could not be written.
+	 * @see EncodingPipeline
+	 */
+	public void frameReady(CapturedFrame frame) throws IOException {
+		int position = (int)(frame.getSequence() % _segmentLength);
+		if(position != _framesAssembled){
+			//the segment was dropped; frames are skipped until the next one
+			return;
+		}
+		if(_framesAssembled == 0){
+			_header.setTimeStamp(frame.getTimeStamp());
+			_header.setCodec(_setup.getCodec());
+			_segmentSettings = frame.getSettings();
+		}
+		boolean partStart = getParts() > 1 && _framesAssembled % _setup.getPartFrames() == 0;
+		if(partStart){
+			_partTimeStamp = frame.getTimeStamp();
+		}
+		try{
+			if(frame.isRepeat() && (partStart || _framesAssembled == 0)){
+				throw new IOException("First frame of a part cannot be repeated");
+			}
+			for(int i = 0; i < _segmentWriters.length; i++){
+				_segmentWriters[i].writeFrame(frame.getData(i), frame.getLength(i),
+						frame.getFrameType(i));
+			}
+		} catch(IOException e){
+			dropSegment();
+			throw new IOException("Dropped segment at frame " + frame.getSequence(), e);
+		}
+		_framesAssembled++;
+		if(getParts() > 1 && (_framesAssembled % _setup.getPartFrames() == 0
+				|| _framesAssembled >= _segmentLength)){
+			finishPart();
+		}
+		//loops until end of current video segment
+		if(_framesAssembled >= _segmentLength){
+			finishSegment();
+		}
+	}
+
 	//-------------------------------------------------------------------------
 	//Private static methods
 	//-------------------------------------------------------------------------	
+	/**
+	 * @return	Parts each segment is published in, 1 if published whole.
+	 */
+	private static int getParts(){
+		int frames = (int)(_setup.getFPS() * _setup.getSegmentLength());
+		if(_setup.getPartFrames() <= 0 || _setup.getPartFrames() >= frames) return 1;
+		return (frames + _setup.getPartFrames() - 1) / _setup.getPartFrames();
+	}
+
 	private static void initCleaner(){
-		_cleaner = new ICCCleaner(_uploader);
-		_cleaner.start();
+		_cleaner = _uploader.getCleaner();
 	}
 
 	/**
@@ -287,6 +391,17 @@ public class ICCRunner extends VideoSource {
 	private static void initUploader(String s3loggerFilename){
 		_uploader = new S3Uploader(_videoStream);
 		_uploader.setSignal(_signalQueue);
+		_uploader.setUploadWindow(_setup.getUploadWindow());
+		//a segment more than two segments late is no longer worth sending
+		_uploader.setUploadTimeout((long)(_setup.getSegmentLength() * 2000));
+		if(_setup.getStore() != null){
+			try{
+				_uploader.setStore(ObjectStores.open(_setup.getStore()));
+			} catch(IOException e){
+				System.err.println("Cannot open store: " + e.getMessage());
+				System.exit(-1);
+			}
+		}
 		
 		_uploader.start();
 		
@@ -313,8 +428,7 @@ public class ICCRunner extends VideoSource {
 	 */
 	private static void sendSetupFile(long time){
 		int frames = (int)(_setup.getFPS() * _setup.getSegmentLength());
-//		int headerSize = (frames * Integer.BYTES) + Long.BYTES;
-		int headerSize = (frames * 4) + 8;
+		int headerSize = VideoSegmentHeader.size(frames);
 		FileWriter fw = null;
 		String filename = FileData.SETUP_FILE;
 		try{
@@ -327,6 +441,8 @@ public class ICCRunner extends VideoSource {
 			sb.append(_setup.getCompressionRatio() + " ");
 			sb.append(_setup.getFPS() + " ");
 			sb.append(_setup.getSegmentLength() + "\n");
+			sb.append(Rendition.toString(_setup.getRenditions()) + "\n");
+			sb.append((getParts() > 1 ? _setup.getPartFrames() : 0) + "\n");
 			fw.write(sb.toString());
 			fw.close();
 		} catch(IOException e){
@@ -379,14 +495,18 @@ public class ICCRunner extends VideoSource {
 	/**
 	 * Closes all closeable objects used by the ICCRunner.
 	 * 
-	 * @param grabber			The VideoCapture used to open camera device.
-	 * @param segmentWriter		The ICCFrameWriter used to write video.
+	 * @param source			Where the frames came from.
+	 * @param segmentWriters	The ICCFrameWriters used to write video.
 	 */
-	private void closeEverything(VideoCapture grabber, ICCFrameWriter segmentWriter){
+	private void closeEverything(FrameSource source, ICCFrameWriter[] segmentWriters){
 		try{
-			_cleaner.end();
-			grabber.release();
-			segmentWriter.close();
+			source.release();
+			for(ICCFrameWriter segmentWriter : segmentWriters){
+				segmentWriter.close();
+			}
+			if(_motion != null){
+				_motion.release();
+			}
 			
 			if(FileData.ISLOGGING){	//upload log files to S3
 				_logger.close();
@@ -402,7 +522,27 @@ public class ICCRunner extends VideoSource {
 	}
 	
 	/**
-	 * Deletes oldest segment based on currentSegment.
+	 * Updates the CongestionController with the upload backlog, upload time
+	 * and how late this segment was assembled. New settings are handed to
+	 * the pipeline and apply from the next segment on.
+	 * 
+	 * @param recordMillis	Time from the first frame of the segment until
+	 * 						it was queued for upload.
+	 */
+	private void adjustEncoding(long recordMillis){
+		long segmentMillis = (long)(_setup.getSegmentLength() * 1000);
+		int level = _congestion.getLevel();
+		EncodeSettings settings = _congestion.update(_videoStream.size(),
+				_uploader.getUploadMillis(), recordMillis - segmentMillis);
+		if(_congestion.getLevel() != level){
+			System.out.println("ICCR: " + (_congestion.getLevel() > level ? "Uploads falling behind"
+					: "Uploads recovering") + ", encoding at " + settings);
+			_pipeline.setSettings(settings);
+		}
+	}
+
+	/**
+	 * Deletes oldest segment, in every rendition, based on currentSegment.
 	 * 
 	 * @param currentSegment	The most current video segment recorded.
 	 * @see ICCSetup.setMaxSegmentsSaved
@@ -412,28 +552,193 @@ public class ICCRunner extends VideoSource {
 		if(deleteSegment < 0){//when current video segment id starts back at 0
 			deleteSegment += MAX_VIDEO_INDEX;
 		}
-		_cleaner.add(VideoSegment.toString(deleteSegment));
+		for(int level = 0; level < _segmentWriters.length; level++){
+			if(getParts() == 1){
+				_cleaner.add(Rendition.getKey(level, deleteSegment));
+				continue;
+			}
+			for(int part = 0; part < getParts(); part++){
+				_cleaner.add(Rendition.getPartKey(level, deleteSegment, part));
+			}
+		}
 	}
 	
+	/**
+	 * Sends the completed video segment to S3, deletes old segments and
+	 * starts a new recording. Runs on the assembler thread.
+	 * 
+	 * @throws IOException
+	 */
+	private void finishSegment() throws IOException {
+		double timeStarted = _header.getTimeStamp();
+
+		//published in parts, every frame has been sent already
+		if(getParts() == 1 && !sendRenditions()){
+			return;
+		}
+		
+		if(FileData.ISLOGGING){
+			logSegment(timeStarted);
+		}
+
+		nextSegment();
+
+		if(_congestion != null){
+			adjustEncoding((long)(System.currentTimeMillis() - timeStarted));
+		}
+		else if((System.currentTimeMillis() - timeStarted)/1000.0
+				> (_setup.getSegmentLength() + PERF_TOLERRANCE)){
+			System.err.println("VISUAL QUALITY IS AFFECTING PERFORMANCE!");
+			System.err.println("Please lower compression, FPS, color, etc.");
+		}
+		if(_pipeline.getDroppedFrames() > 0){
+			System.err.println("ICCR: Encoders dropped " + _pipeline.getDroppedFrames()
+					+ " frame(s) so far");
+		}
+
+		if(++_totalPlayed == TOTAL_SEGS_TO_PLAY && !PREVIEW) end();
+	}
+
+	/**
+	 * Deletes old segments and starts recording the next one.
+	 * 
+	 * @throws IOException
+	 */
+	private void nextSegment() throws IOException {
+		if(_preloaded){
+			_oldestSegment = (short)(++_oldestSegment % MAX_VIDEO_INDEX);
+			deleteOldSegments(_currentSegment);
+		}
+		else if(_currentSegment == MAX_SEGMENTS-1){
+			_preloaded = true;
+		}
+
+		//start new recording
+		_currentSegment = incrementVideoSegment(_currentSegment);
+		resetWriters();
+	}
+
+	/**
+	 * Throws away the frames assembled for the current segment after one of
+	 * them could not be written, so that no rendition is left a frame ahead
+	 * of the others. Frames are skipped until the next segment starts. If
+	 * parts of the segment were sent already, its index is not reused.
+	 * 
+	 * @throws IOException
+	 */
+	private void dropSegment() throws IOException {
+		if(getParts() > 1 && _framesAssembled >= _setup.getPartFrames()){
+			nextSegment();
+		} else {
+			resetWriters();
+		}
+	}
+
+	private void resetWriters() throws IOException {
+		for(ICCFrameWriter segmentWriter : _segmentWriters){
+			segmentWriter.reset();
+		}
+		_framesAssembled = 0;
+	}
+
+	/**
+	 * Sends the current segment in every rendition. The smallest renditions
+	 * are queued first, so the best one, which moves the manifest, is
+	 * normally the last to finish uploading.
+	 * @return	False if interrupted while waiting for a pooled segment.
+	 */
+	private boolean sendRenditions(){
+		for(int level = _segmentWriters.length - 1; level >= 0; level--){
+			setEncoding(_header, level);
+			_header.setFrameOrder(_segmentWriters[level].getFrames());
+			_header.setFrameTypes(_segmentWriters[level].getFrameTypes());
+			//header and frames are copied once, into a pooled segment's buffer
+			VideoSegment segment;
+			try{
+				segment = _segmentPool.take();
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			segment.fill(_currentSegment, _header, _outputs[level].getBuffer(),
+					_outputs[level].size());
+			segment.setRendition(level);
+			sendSegmentToS3(segment);
+		}
+		return true;
+	}
+
+	/**
+	 * Sends the frames assembled since the last part, in every rendition,
+	 * as one part of the current segment. Runs on the assembler thread.
+	 */
+	private void finishPart(){
+		int part = (_framesAssembled - 1) / _setup.getPartFrames();
+		int first = part * _setup.getPartFrames();
+		int frames = _framesAssembled - first;
+		if(_partHeader.getFrameOrder() == null || _partHeader.getFrameOrder().length != frames){
+			_partHeader.setFrameOrder(new int[frames]);
+			_partHeader.setFrameTypes(new byte[frames]);
+		}
+		_partHeader.setCodec(_setup.getCodec());
+		_partHeader.setTimeStamp(_partTimeStamp);
+		_partHeader.setFirstFrame(first);
+
+		for(int level = _segmentWriters.length - 1; level >= 0; level--){
+			int[] ends = _segmentWriters[level].getFrames();
+			byte[] types = _segmentWriters[level].getFrameTypes();
+			int start = first == 0 ? 0 : ends[first - 1];
+			//frame positions are kept relative to the start of the part
+			for(int i = 0; i < frames; i++){
+				_partHeader.getFrameOrder()[i] = ends[first + i] - start;
+				_partHeader.getFrameTypes()[i] = types[first + i];
+			}
+			setEncoding(_partHeader, level);
+			VideoSegment segment;
+			try{
+				segment = _segmentPool.take();
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				return;
+			}
+			segment.fill(_currentSegment, _partHeader, _outputs[level].getBuffer(), start,
+					ends[first + frames - 1] - start);
+			segment.setRendition(level);
+			segment.setPart(part, getParts());
+			sendSegmentToS3(segment);
+		}
+	}
+
+	/**
+	 * Writes how a rendition of the current segment is encoded to a header.
+	 */
+	private void setEncoding(VideoSegmentHeader header, int level){
+		Rendition rendition = _setup.getRenditions().get(level);
+		header.setQuality(_setup.getQuality(rendition, _segmentSettings));
+		header.setScale((int)Math.round(rendition.getScale() * _segmentSettings.getScale()));
+		header.setDecimation(_segmentSettings.getDecimation());
+	}
+
 	/**
 	 * Grabs the image from the most current frame recorded.
 	 * 
+	 * @param mat	The most current frame recorded.
 	 * @return the image used by DisplayFrame
 	 * @throws NullPointerException
 	 * 
 	 * @see DisplayFrame
 	 */
-	private Image getCurrentFrame() throws NullPointerException {
-		int w = _mat.cols(),
-			h = _mat.rows();
-		byte[] dat = new byte[w * h * _mat.channels()];
+	private Image getCurrentFrame(Mat mat) throws NullPointerException {
+		int w = mat.cols(),
+			h = mat.rows();
+		byte[] dat = new byte[w * h * mat.channels()];
 
 		BufferedImage img = new BufferedImage(w, h, 
 				BufferedImage.TYPE_BYTE_GRAY);
 
-		_mat.get(0, 0, dat);
+		mat.get(0, 0, dat);
 		img.getRaster().setDataElements(0, 0, 
-				_mat.cols(), _mat.rows(), dat);
+				mat.cols(), mat.rows(), dat);
 		return img;
 	}
 	
@@ -449,6 +754,25 @@ public class ICCRunner extends VideoSource {
 		return formatter.format((double)(System.currentTimeMillis() - _startTime)/1000);
 	}
 
+	/**
+	 * Decides whether the current frame is encoded or recorded as a repeat of
+	 * the previous frame. The first frame of every segment and one frame per
+	 * keep alive interval are always encoded.
+	 * 
+	 * @param mat					The frame, before the time stamp is drawn.
+	 * @param frameCount			The position of the frame in the segment.
+	 * @param keepAliveInterval		Frames between encodes of a static scene.
+	 * @return True if the frame should be encoded.
+	 * @see MotionDetector
+	 */
+	private boolean isSceneChanged(Mat mat, short frameCount, int keepAliveInterval){
+		if(_motion == null){
+			return true;
+		}
+		boolean motion = _motion.detect(mat);
+		return motion || (frameCount % keepAliveInterval == 0);
+	}
+
 	/**
 	 * Increments the current video segment based on setup parameters.
 	 * 
@@ -1,7 +1,15 @@
 package videoSender;
 
+import videoUtility.BlockDeltaFrameEncoder;
 import videoUtility.FileData;
 import videoUtility.FourCC;
+import videoUtility.FrameCodec;
+import videoUtility.FrameEncoder;
+import videoUtility.Rendition;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 //
 //import org.opencv.core.Size;
 import org.opencv.videoio.VideoCapture;
@@ -19,15 +27,31 @@ public class ICCSetup {
 	//-------------------------------------------------------------------------
 	//Private variables
 	//-------------------------------------------------------------------------
+	private BackpressurePolicy _backpressure = BackpressurePolicy.DROP_OLDEST;
+	private int _blockSize = BlockDeltaFrameEncoder.DEFAULT_BLOCK_SIZE;
+	private int _captureDepth = 4;
+	private byte _codec = FrameCodec.JPEG;
+	private boolean _congestionControl = true;
 	private int _device;
+	private int _encoderThreads = Runtime.getRuntime().availableProcessors();
 	private int _height = 480;
 	private int _width = 640;
 	private int _maxSegmentsSaved = 5; // delete x frames behind
+	private int _outputDepth = 8;
+	private int _partFrames = 0; //whole segments
+	private int _quality = -1; //codec default
+	private int _uploadWindow = 3;
 	private static int _maxSegments = 10; //in reference to naming
 	private double _compressionRatio = 1.0;
 	private double _fps = 15;
+	private double _keepAliveFPS = 0.5;
+	private double _motionThreshold = 0; //disabled
 	private double _segmentVideoLength = 5; //seconds
+	private double _sourceFPS = -1; //the recording rate
 	private FourCC _fourCC = new FourCC("MJPG");
+	private List<Rendition> _renditions = Collections.singletonList(Rendition.FULL);
+	private String _source; //camera when null
+	private String _store; //S3 bucket when null
 	private VideoCapture _videoCap;
 
 	//-------------------------------------------------------------------------
@@ -40,18 +64,78 @@ public class ICCSetup {
 	//-------------------------------------------------------------------------
 	//Get Methods
 	//-------------------------------------------------------------------------
+	public BackpressurePolicy getBackpressurePolicy(){
+		return _backpressure;
+	}
+	public int getBlockSize(){
+		return _blockSize;
+	}
+	public int getCaptureDepth(){
+		return _captureDepth;
+	}
+	public byte getCodec(){
+		return _codec;
+	}
 	public double getCompressionRatio(){
 		return _compressionRatio;
 	}
+	public int getEncoderThreads(){
+		return _encoderThreads;
+	}
 	public FourCC getFourCC(){
 		return _fourCC;
 	}
+	/**
+	 * @return A new encoder for the selected codec and quality.
+	 * @see FrameCodec
+	 */
+	public FrameEncoder getFrameEncoder(){
+		return getFrameEncoder(getQuality());
+	}
+	/**
+	 * @return A new encoder for the selected codec at the quality of the
+	 * rendition, if it has one.
+	 */
+	public FrameEncoder getFrameEncoder(Rendition rendition){
+		return getFrameEncoder(getQuality(rendition, EncodeSettings.DEFAULT));
+	}
+	/**
+	 * @return A new encoder for the rendition, turned down by settings.
+	 * @see CongestionController
+	 */
+	public FrameEncoder getFrameEncoder(Rendition rendition, EncodeSettings settings){
+		return getFrameEncoder(getQuality(rendition, settings));
+	}
+	/**
+	 * @return	A new source of the frames to record.
+	 * @throws IOException if the source cannot be opened.
+	 * @see FrameSources
+	 */
+	public FrameSource getFrameSource() throws IOException {
+		return FrameSources.open(_source, this);
+	}
 	public String getFileName(int segmentNumber){
 		return FileData.VIDEO_PREFIX + segmentNumber + FileData.VIDEO_SUFFIX;
 	}
 	public double getFPS(){
 		return _fps;
 	}
+	/**
+	 * @return The number of frames recorded for each frame encoded while
+	 * the scene is static.
+	 */
+	public int getKeepAliveInterval(){
+		if(_keepAliveFPS <= 0){
+			return Integer.MAX_VALUE;
+		}
+		return Math.max(1, (int)Math.round(_fps / _keepAliveFPS));
+	}
+	public double getKeepAliveFPS(){
+		return _keepAliveFPS;
+	}
+	public double getMotionThreshold(){
+		return _motionThreshold;
+	}
 	public int getHeight(){
 		return (int)(_height*_compressionRatio);
 	}
@@ -61,9 +145,65 @@ public class ICCSetup {
 	public int getMaxSegmentsSaved(){
 		return _maxSegmentsSaved;
 	}
+	public int getOutputDepth(){
+		return _outputDepth;
+	}
+	/**
+	 * @return	Frames in each part of a segment, or 0 if segments are
+	 * 			published whole.
+	 */
+	public int getPartFrames(){
+		return _partFrames;
+	}
+	public int getUploadWindow(){
+		return _uploadWindow;
+	}
+	/**
+	 * @return	Every rendition that is encoded, best first.
+	 */
+	public List<Rendition> getRenditions(){
+		return _renditions;
+	}
+	public int getQuality(){
+		return _quality < 0 ? FrameCodec.getDefaultQuality(_codec) : _quality;
+	}
+	/**
+	 * @return	The quality a rendition is encoded at under settings.
+	 */
+	public int getQuality(Rendition rendition, EncodeSettings settings){
+		int quality = rendition.getQuality() < 0 ? getQuality() : rendition.getQuality();
+		return settings.getQuality(quality, FrameCodec.isLossy(_codec));
+	}
+	/**
+	 * @return	True if the CongestionController may turn encoding down.
+	 */
+	public boolean isCongestionControl(){
+		return _congestionControl;
+	}
 	public double getSegmentLength(){
 		return _segmentVideoLength;
 	}
+	/**
+	 * @return	Where frames come from, as understood by FrameSources.open,
+	 * 			or null for the camera.
+	 */
+	public String getSource(){
+		return _source;
+	}
+	/**
+	 * @return	Frames per second delivered by sources other than the
+	 * 			camera, or 0 for as fast as they are read.
+	 */
+	public double getSourceFPS(){
+		return _sourceFPS < 0 ? _fps : _sourceFPS;
+	}
+	/**
+	 * @return	Where segments are uploaded, as understood by ObjectStores.open,
+	 * 			or null for the S3 bucket.
+	 */
+	public String getStore(){
+		return _store;
+	}
 	public VideoCapture getVideoCapture() throws Exception{
 		initVideoCapture();
 		return _videoCap;
@@ -75,6 +215,45 @@ public class ICCSetup {
 	//-------------------------------------------------------------------------
 	//Set Methods: Uses chaining techniques
 	//-------------------------------------------------------------------------
+	/**
+	 * @param policy	What capture does when the encoders fall behind.
+	 * @see EncodingPipeline
+	 */
+	public ICCSetup setBackpressurePolicy(BackpressurePolicy policy){
+		_backpressure = policy;
+		return this;
+	}
+	/**
+	 * @param blockSize	The block size used by the "block" codec (8 or 16).
+	 */
+	public ICCSetup setBlockSize(int blockSize){
+		_blockSize = blockSize;
+		return this;
+	}
+	/**
+	 * @param depth	Frames that may wait between capture and the encoders.
+	 */
+	public ICCSetup setCaptureDepth(int depth){
+		_captureDepth = depth;
+		return this;
+	}
+	/**
+	 * @param codec	The codec name, ie. "jpeg", "png", "raw", "delta" or "block".
+	 * @see FrameCodec
+	 */
+	public ICCSetup setCodec(String codec){
+		_codec = FrameCodec.parse(codec);
+		return this;
+	}
+	/**
+	 * @param enabled	False to always encode as configured, however far
+	 * 					uploads fall behind.
+	 * @see CongestionController
+	 */
+	public ICCSetup setCongestionControl(boolean enabled){
+		_congestionControl = enabled;
+		return this;
+	}
 	public ICCSetup setCompressionRatio(double compressionRatio){
 		_compressionRatio = compressionRatio;
 		return this;
@@ -83,6 +262,14 @@ public class ICCSetup {
 		_device = device;
 		return this;
 	}
+	/**
+	 * @param threads	Encoder workers. Codecs that depend on the previous
+	 * 					frame always use one.
+	 */
+	public ICCSetup setEncoderThreads(int threads){
+		_encoderThreads = Math.max(1, threads);
+		return this;
+	}
 	public ICCSetup setFourCC(String characterCode){
 		_fourCC = new FourCC(characterCode);
 		return this;
@@ -91,6 +278,23 @@ public class ICCSetup {
 		_fps = fps;
 		return this;
 	}
+	/**
+	 * @param fps	The rate frames are encoded while nothing moves. Zero
+	 * 				encodes only the first frame of a static segment.
+	 */
+	public ICCSetup setKeepAliveFPS(double fps){
+		_keepAliveFPS = fps;
+		return this;
+	}
+	/**
+	 * @param threshold	The fraction (0-1) of pixels that must change for a
+	 * 					frame to be encoded. Zero disables motion gating.
+	 * @see MotionDetector
+	 */
+	public ICCSetup setMotionThreshold(double threshold){
+		_motionThreshold = threshold;
+		return this;
+	}
 	public ICCSetup setHeight(int height){
 		_height = height;
 		return this;
@@ -103,6 +307,71 @@ public class ICCSetup {
 		_maxSegmentsSaved = maxSegmentsInFolder;
 		return this;
 	}
+	/**
+	 * @param depth	Encoded frames that may wait to be assembled.
+	 */
+	public ICCSetup setOutputDepth(int depth){
+		_outputDepth = depth;
+		return this;
+	}
+	/**
+	 * Publishes each segment in parts of this many frames, each uploaded as
+	 * soon as its frames are encoded, instead of once the whole segment is.
+	 * The first frame of each part is encoded on its own, so a part can be
+	 * played without the ones before it.
+	 * @param frames	Frames per part, or 0 to publish whole segments.
+	 */
+	public ICCSetup setPartFrames(int frames){
+		_partFrames = Math.max(0, frames);
+		return this;
+	}
+	/**
+	 * @param quality	JPEG quality (0-100) or PNG compression level (0-9).
+	 * 					A negative value uses the default of the codec.
+	 */
+	public ICCSetup setQuality(int quality){
+		_quality = quality;
+		return this;
+	}
+	/**
+	 * @param segments	Segment uploads that may be in flight at once.
+	 * @see S3Uploader
+	 */
+	public ICCSetup setUploadWindow(int segments){
+		_uploadWindow = Math.max(1, segments);
+		return this;
+	}
+	/**
+	 * @param ladder	The renditions to encode, best first, ie.
+	 * 					"full,half,quarter".
+	 * @see Rendition
+	 */
+	public ICCSetup setRenditions(String ladder){
+		_renditions = Rendition.parseLadder(ladder);
+		return this;
+	}
+	/**
+	 * @param source	Where frames come from, ie. "camera", "dir:path",
+	 * 					"file:path" or "synthetic:motion,noise".
+	 * @see FrameSources
+	 */
+	public ICCSetup setSource(String source){
+		_source = source;
+		return this;
+	}
+	/**
+	 * @param fps	The rate of sources other than the camera. Zero reads
+	 * 				them as fast as the pipeline takes frames; a negative
+	 * 				value uses the recording rate.
+	 */
+	public ICCSetup setSourceFPS(double fps){
+		_sourceFPS = fps;
+		return this;
+	}
+	public ICCSetup setStore(String store){
+		_store = store;
+		return this;
+	}
 	public ICCSetup setSegmentLength(double seconds){
 		_segmentVideoLength = seconds;
 		return this;
@@ -115,6 +384,14 @@ public class ICCSetup {
 	//-------------------------------------------------------------------------
 	//Private methods
 	//-------------------------------------------------------------------------
+	private FrameEncoder getFrameEncoder(int quality){
+		if(_codec == FrameCodec.BLOCK){
+			return new BlockDeltaFrameEncoder(quality, _blockSize,
+					BlockDeltaFrameEncoder.DEFAULT_THRESHOLD);
+		}
+		return FrameCodec.getEncoder(_codec, quality);
+	}
+
 	/**
 	 * Initializes the VideoCapture object.
 	 * @throws Exception
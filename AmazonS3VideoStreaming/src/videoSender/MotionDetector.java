@@ -0,0 +1,104 @@
+package videoSender;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Decides whether a frame differs enough from the last recorded frame to be
+ * worth encoding. Frames are compared on a downscaled copy, so the check is
+ * cheap compared to encoding. A pixel counts as changed when its intensity
+ * moved by more than the pixel threshold; the frame counts as changed when
+ * the fraction of changed pixels exceeds the motion threshold.
+ * <p>
+ * After motion is seen, frames keep being reported as changed for a short
+ * hold time so recordings are not chopped between movements.
+ * 
+ * @see ICCRunner, ICCSetup
+ */
+public class MotionDetector {
+
+	public static final int DEFAULT_PIXEL_THRESHOLD = 25;
+	public static final double DEFAULT_SCALE = 0.25;
+
+	private Mat 	_diff;
+	private int 	_hold = 0;
+	private int 	_holdFrames;
+	private int 	_pixelThreshold;
+	private Mat 	_reference;
+	private double 	_scale;
+	private Mat 	_small;
+	private double 	_threshold;
+
+	//-------------------------------------------------------------------------
+	//Constructors
+	//-------------------------------------------------------------------------
+	/**
+	 * @param threshold		Fraction (0-1) of pixels that must change.
+	 * @param holdFrames	Frames to keep recording after motion stops.
+	 */
+	public MotionDetector(double threshold, int holdFrames){
+		this(threshold, holdFrames, DEFAULT_PIXEL_THRESHOLD, DEFAULT_SCALE);
+	}
+
+	/**
+	 * @param threshold			Fraction (0-1) of pixels that must change.
+	 * @param holdFrames		Frames to keep recording after motion stops.
+	 * @param pixelThreshold	Intensity difference (0-255) of a changed pixel.
+	 * @param scale				Downscale factor used for the comparison.
+	 */
+	public MotionDetector(double threshold, int holdFrames, int pixelThreshold,
+			double scale){
+		_threshold = threshold;
+		_holdFrames = holdFrames;
+		_pixelThreshold = pixelThreshold;
+		_scale = scale;
+		_diff = new Mat();
+		_reference = new Mat();
+		_small = new Mat();
+	}
+
+	//-------------------------------------------------------------------------
+	//Public methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Compares the frame with the last frame that was reported as changed.
+	 * 
+	 * @param frame		An 8-bit grayscale frame.
+	 * @return			True if the frame should be recorded.
+	 */
+	public boolean detect(Mat frame){
+		Imgproc.resize(frame, _small, new Size(), _scale, _scale, Imgproc.INTER_AREA);
+
+		if(_reference.empty() || _reference.size().width != _small.size().width
+				|| _reference.size().height != _small.size().height){
+			_small.copyTo(_reference);
+			_hold = _holdFrames;
+			return true;
+		}
+
+		Core.absdiff(_small, _reference, _diff);
+		Imgproc.threshold(_diff, _diff, _pixelThreshold, 255, Imgproc.THRESH_BINARY);
+		double changed = Core.countNonZero(_diff) / (double)_diff.total();
+
+		if(changed > _threshold){
+			_small.copyTo(_reference);
+			_hold = _holdFrames;
+			return true;
+		}
+		if(_hold > 0){
+			_hold--;
+			return true;
+		}
+		return false;
+	}
+
+	public void release(){
+		_diff.release();
+		_reference.release();
+		_small.release();
+	}
+}
@@ -0,0 +1,68 @@
+package videoSender;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.opencv.core.Mat;
+
+/**
+ * @author Ryan Babcock
+ *
+ * A FrameSource that could deliver frames as fast as they are asked for,
+ * held to the rate a camera would deliver them. Frame k is due at
+ * start + k / fps on System.nanoTime. A reader that falls more than a frame
+ * behind starts the timeline over instead of being sent a burst of frames.
+ * A rate of 0 delivers frames as fast as they are read, to measure how many
+ * the pipeline can take.
+ */
+public abstract class PacedFrameSource implements FrameSource {
+
+	private long 	_frame = 0;
+	private double 	_frameNanos;
+	private long 	_start;
+
+	/**
+	 * @param fps	Frames per second, or 0 for no pacing.
+	 */
+	protected PacedFrameSource(double fps){
+		_frameNanos = fps > 0 ? 1e9 / fps : 0;
+	}
+
+	//-------------------------------------------------------------------------
+	//Public methods
+	//-------------------------------------------------------------------------
+	public final boolean read(Mat mat){
+		if(_frameNanos > 0){
+			awaitFrame();
+		}
+		return readFrame(mat);
+	}
+
+	//-------------------------------------------------------------------------
+	//Protected methods
+	//-------------------------------------------------------------------------
+	/**
+	 * Reads the next frame without waiting.
+	 */
+	protected abstract boolean readFrame(Mat mat);
+
+	//-------------------------------------------------------------------------
+	//Private methods
+	//-------------------------------------------------------------------------
+	private void awaitFrame(){
+		long now = System.nanoTime();
+		if(_frame == 0 || now - getDeadline(_frame) > _frameNanos){
+			_start = now;
+			_frame = 0;
+		}
+		long wait;
+		while((wait = getDeadline(_frame) - System.nanoTime()) > 0){
+			LockSupport.parkNanos(wait);
+			if(Thread.currentThread().isInterrupted()) break;
+		}
+		_frame++;
+	}
+
+	private long getDeadline(long frame){
+		return _start + Math.round(frame * _frameNanos);
+	}
+}
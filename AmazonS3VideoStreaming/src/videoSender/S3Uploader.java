@@ -1,32 +1,33 @@
 package videoSender;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-
-import com.amazonaws.AmazonClientException;
-import com.amazonaws.AmazonServiceException;
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.profile.ProfileCredentialsProvider;
-import com.amazonaws.regions.Region;
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.DeleteObjectRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.model.S3ObjectSummary;
-import com.amazonaws.services.s3.transfer.TransferManager;
-import com.amazonaws.services.s3.transfer.Upload;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import videoUtility.FileData;
 import performance.PerformanceLogger;
+import videoUtility.ObjectStore;
+import videoUtility.RetryPolicy;
+import videoUtility.S3ObjectStore;
 import videoUtility.S3UserStream;
+import videoUtility.SegmentManifest;
 import videoUtility.SharedQueue;
 import videoUtility.Utility;
 import videoUtility.VideoSegment;
@@ -36,18 +37,56 @@ import videoUtility.VideoSegment;
  * @author Ryan Babcock
  * 
  * Used to upload video segments, playlist, and setup file to Amazon S3.
- * @see ICCRunner
+ * <p>
+ * Up to uploadWindow segments upload at once. The run loop only starts
+ * uploads; each one reports back through its PutListener, which frees
+ * its slot in the window and hands the segment back to its pool. Segments
+ * may finish out of order, but their keys keep the recording order, so the
+ * downloader still finds the newest one by index. getNewestUploaded gives
+ * the newest segment whose predecessors have all finished. Each time it
+ * moves, a SegmentManifest of the newest segments is written over
+ * FileData.MANIFEST_FILE, so the downloader can find new segments with one
+ * conditional GET instead of listing the bucket. Only the best rendition
+ * of a segment is listed; the others share its index and timestamp. When
+ * segments are published in parts, each part of the best rendition is
+ * listed, by its stream index (see VideoSegment.getStreamIndex).
+ * <p>
+ * Nothing waits by polling. Every upload ends through an UploadCompletion,
+ * is aborted if it runs past its timeout, and is retried with backoff under
+ * a bounded RetryPolicy. A segment that still fails is dropped; a live
+ * stream is better off moving on to the next one.
+ * <p>
+ * Objects go to an ObjectStore, the S3 bucket unless setStore picks another.
+ * @see ICCRunner, UploadCompletion, RetryPolicy, ObjectStore
  */
 
 public class S3Uploader extends S3UserStream {
 
+	private static final long FILE_TIMEOUT = 60000;//ms
+	private static final RetryPolicy FILE_RETRY = RetryPolicy.DEFAULT;
+	private static final RetryPolicy SEGMENT_RETRY = new RetryPolicy(3, 200, 1000);
+	private static final int MANIFEST_ENTRIES = 8;
+	private static final double UPLOAD_GAIN = 0.5;
+
 	private LinkedList<Double> 			_bitRateList;
+	private long 						_bytesSent = 0;
+	private ICCCleaner 					_cleaner;
+	private TreeMap<Long, SegmentManifest.Entry> _finished;
+	private Semaphore 					_inFlight;
 	private PerformanceLogger 			_logger;
-	private AmazonS3 					_s3;
+	private SegmentManifest 			_manifest = new SegmentManifest(MANIFEST_ENTRIES);
+	private long 						_nextSequence = 0;
+	private int 						_newestUploaded = -1;
+	private long 						_oldestPending = 0;
 	private SharedQueue<String> 		_signalQueue;
 	private long 						_startTime;
+	private short 						_segmentsPlayed = 0;
+	private ObjectStore 				_store;
+	private ScheduledExecutorService 	_timer;
 	private SharedQueue<VideoSegment> 	_videoStream;
-	private TransferManager 			_transferMGMT;
+	private double 						_uploadMillis = 0;
+	private long 						_uploadTimeout = 30000;//ms
+	private int 						_uploadWindow = 1;
 	
 	//-------------------------------------------------------------------------
 	//Constructor
@@ -55,6 +94,8 @@ public class S3Uploader extends S3UserStream {
 	public S3Uploader(SharedQueue<VideoSegment> theque){
 		_videoStream = theque;
 		_bitRateList = new LinkedList<>();
+		_finished = new TreeMap<>();
+		_cleaner = new ICCCleaner(this);
 	}
 
 	//-------------------------------------------------------------------------
@@ -62,40 +103,37 @@ public class S3Uploader extends S3UserStream {
 	//-------------------------------------------------------------------------
 	public void run() {
 		//bit rate parameters
-		long bytesSent = 0;
-		short segmentsPlayed = 0;
 		short segmentsToPlay = 5;
 		long timeStart;
 		
 		/*
-		 * The ProfileCredentialsProvider will return your [default]
-		 * credential profile by reading from the credentials file located at
-		 * (/Users/username/.aws/credentials).
-		 *
 		 * AWS IP occasionally changes. This will allow the application to receive
 		 * and use new IP without querying DNS again with TTL being 60 
 		 */
 		java.security.Security.setProperty("networkaddress.cache.ttl", "60");
 
-		AWSCredentials credentials = null;
-
 		Runtime.getRuntime().addShutdownHook(new S3UploaderShutdownHook(this));
 
-		try {
-			credentials = new ProfileCredentialsProvider("default").getCredentials();
-		} catch (Exception e) {
-			throw new AmazonClientException(
-				"Cannot load the credentials from the credential profiles file. " +
-				"Please make sure that your credentials file is at the correct " +
-				"location (/users/username/.aws/credentials), and is in valid format.", e);
+		if(_store == null){
+			try{
+				_store = new S3ObjectStore(_bucketName);
+			} catch(IOException e){
+				System.err.println(e.getMessage());
+				System.exit(-1);
+			}
 		}
+		_inFlight = new Semaphore(_uploadWindow);
+		_timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "S3 Upload Timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 
-		_s3 = new AmazonS3Client(credentials);
-		Region usWest2 = Region.getRegion(Regions.US_WEST_2);
-		_s3.setRegion(usWest2);
-		_transferMGMT = new TransferManager(_s3);
+		_cleaner.start();
 
-		System.out.println("Amazon S3: Preparation complete!");
+		System.out.println("Object store (" + _store + "): Preparation complete!");
 
 		synchronized(_signalQueue){
 			_signalQueue.enqueue("S3: Waiting for setup file...");
@@ -115,54 +153,40 @@ public class S3Uploader extends S3UserStream {
 		//Continue to send video segments until end is called
 		while(!_isDone){
 			if(FileData.ISLOGGING){
-				if(segmentsPlayed >= segmentsToPlay){
-					recordBitRate(bytesSent,timeStart,10);
-					timeStart = System.currentTimeMillis();//bitrate
-					bytesSent = 0;
-					segmentsPlayed = 0;
-//				System.out.println("BitRate recorded");					
+				synchronized(this){
+					if(_segmentsPlayed >= segmentsToPlay){
+						recordBitRate(_bytesSent,timeStart,10);
+						timeStart = System.currentTimeMillis();//bitrate
+						_bytesSent = 0;
+						_segmentsPlayed = 0;
+//					System.out.println("BitRate recorded");					
+					}
 				}
 			}
-			ObjectMetadata info = new ObjectMetadata();
-			VideoSegment segment;
+			VideoSegment segment = null;
 			
 			try { //start uploading video stream
-				segment = _videoStream.dequeue();
+				segment = _videoStream.take();
 				_key = segment.toString();
 				
 				System.out.println("S3: Uploading file '" + _key + "'...");
 				
-				info.setContentLength(segment.size());
-				ByteArrayInputStream bin = new ByteArrayInputStream(segment.data());
-				uploadSegment(bin, segment.size());
+				//waits for a free slot in the window, then returns at once
+				uploadSegment(segment);
+				segment = null;//released by the listener
 				
 				_key = null;
-				
-				if(FileData.ISLOGGING){
-					bytesSent += segment.size();//total bytes sent
-					logUpload((System.currentTimeMillis() - _startTime)/1000.0);
-					segmentsPlayed++;
-				}
 
-			} catch (AmazonServiceException ase) {
-				System.out.println("Caught an AmazonServiceException, which means your request made it "
-						+ "to Amazon S3, but was rejected with an error response for some reason.");
-				System.out.println("Error Message:    " + ase.getMessage());
-				System.out.println("HTTP Status Code: " + ase.getStatusCode());
-				System.out.println("AWS Error Code:   " + ase.getErrorCode());
-				System.out.println("Error Type:       " + ase.getErrorType());
-				System.out.println("Request ID:       " + ase.getRequestId());
-			} catch (AmazonClientException ace) {
-				System.out.println("Caught an AmazonClientException, which means the client encountered "
-						+ "a serious internal problem while trying to communicate with S3, "
-						+ "such as not being able to access the network.");
-				System.out.println("Error Message: " + ace.getMessage());
-				System.out.println("Current file to upload: " + _key);
-			} catch (NoSuchElementException ie){
+			} catch (InterruptedException ie){
+				//end() was called; the loop checks _isDone
+			} catch (NoSuchElementException e){
 				System.err.println("No such element in video stream");
 			} catch (Exception e){
 				e.printStackTrace();
 				System.err.println(e);
+			} finally {
+				//the upload is finished, so the buffer can be recorded into again
+				if(segment != null) segment.release();
 			}
 		}//end while
 
@@ -180,48 +204,116 @@ public class S3Uploader extends S3UserStream {
 	public void setSignal(SharedQueue<String> signal){
 		_signalQueue = signal;
 	}
+	/**
+	 * @param store		Where segments are uploaded; the S3 bucket if not set.
+	 */
+	public void setStore(ObjectStore store){
+		_store = store;
+	}
+	/**
+	 * @param millis	How long one attempt at uploading a segment may take
+	 * 					before it is aborted.
+	 */
+	public void setUploadTimeout(long millis){
+		_uploadTimeout = millis;
+	}
+	/**
+	 * @param segments	Segment uploads that may be in flight at once.
+	 */
+	public void setUploadWindow(int segments){
+		_uploadWindow = Math.max(1, segments);
+	}
 	
 	//-------------------------------------------------------------------------
 	//Public methods
 	//-------------------------------------------------------------------------
 	/**
-	 * Deletes the specified key within the S3 bucket.
+	 * Deletes the specified key within the store. Deletes are final once the
+	 * request succeeds, so the key is not checked afterwards.
+	 * Failed requests are retried under the default RetryPolicy.
 	 * @param file		The file to be deleted from S3.
+	 * @return			False if every attempt failed.
 	 */
-	public void delete(String file){
-		while(!isDeleted(file)){
+	public boolean delete(String file){
+		for(int attempt = 1; ; attempt++){
 			try{
-				_s3.deleteObject(new DeleteObjectRequest(_bucketName, file));
-//				break;
-			} catch(Exception e){
-				e.printStackTrace();
-				System.err.println("Deletion failed: " + file);
-				Utility.pause(50);
-				continue;
-			}			
+				_store.delete(file);
+				System.out.println("S3: Successfully deleted '"+file+"' from '" + _store + "'");
+				return true;
+			} catch(IOException e){
+				System.err.println("Deletion failed: " + file + " (" + e.getMessage() + ")");
+				if(!FILE_RETRY.canRetry(attempt)){
+					return false;
+				}
+			}
+			Utility.pause(FILE_RETRY.getDelay(attempt));
 		}
-		System.out.println("S3: Successfully deleted '"+file+"' from '" + _bucketName + "'");
 	}
 	
+	/**
+	 * Deletes keys with as few requests as the store allows. Used by the
+	 * ICCCleaner, which retries the keys that fail.
+	 * @return	The keys that were not deleted.
+	 */
+	public List<String> deleteObjects(List<String> keys){
+		try{
+			List<String> failed = _store.deleteAll(keys);
+			if(!failed.isEmpty()){
+				System.err.println("Deletion failed: " + failed.size() + " of "
+						+ keys.size() + " keys");
+			}
+			return failed;
+		} catch(IOException e){
+			System.err.println("Deletion failed: " + keys.size() + " keys ("
+					+ e.getMessage() + ")");
+			return new ArrayList<>(keys);
+		}
+	}
+
 	/**
 	 * Used to end the run method.
 	 */
 	public void end(){
 		if(_isDone) return;
 		System.out.println("Attempting to close S3 Uploader...");
-		while(!_videoStream.isEmpty()){
-			_videoStream.dequeue();
+		VideoSegment segment;
+		while((segment = _videoStream.poll()) != null){
+			segment.release();
 		}
 		_isDone = true;
 		this.interrupt();
 	}
 
+	/**
+	 * @return	The cleaner that deletes expired segments from the store.
+	 */
+	public ICCCleaner getCleaner(){
+		return _cleaner;
+	}
+
+	/**
+	 * @return	The stream index of the newest segment, or part, that
+	 * 			uploaded after every one before it finished, or -1 if none
+	 * 			have.
+	 */
+	public synchronized int getNewestUploaded(){
+		return _newestUploaded;
+	}
+
+	/**
+	 * @return	Recent time from starting a segment's upload until it
+	 * 			finished, retries included, or 0 before any has.
+	 */
+	public synchronized long getUploadMillis(){
+		return (long)_uploadMillis;
+	}
+
 	public boolean isDeleted(String file){
 		try{
-			if(!_s3.doesObjectExist(_bucketName, file)){
+			if(!_store.exists(file)){
 				return true;
 			}
-		}catch(AmazonClientException ace){}
+		}catch(IOException e){}
 		return false;
 	}
 	
@@ -229,33 +321,45 @@ public class S3Uploader extends S3UserStream {
 	//Private methods
 	//-------------------------------------------------------------------------	
 	private void closeEverything(){
-		deleteAllSegments();
-		if(!FileData.ISLOGGING) return;
-		
 		try{
-			_logger.close();
-			uploadLogFiles();
-			_transferMGMT.shutdownNow(true);//true shutsdown s3 client too
-		
-		} catch(IOException e){
-			System.err.println("Error writing logs");
-			e.printStackTrace();
+			//let uploads in flight finish before the bucket is cleared
+			if(_inFlight.tryAcquire(_uploadWindow, 10, TimeUnit.SECONDS)){
+				_inFlight.release(_uploadWindow);
+			}
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		_cleaner.end();
+		deleteAllSegments();
+		_timer.shutdownNow();
+		if(FileData.ISLOGGING){
+			try{
+				_logger.close();
+				uploadLogFiles();
+			} catch(IOException e){
+				System.err.println("Error writing logs");
+				e.printStackTrace();
+			}
 		}
+		_store.close();
 	}
 	
+	/**
+	 * Deletes the manifest, so no receiver asks for the segments, then every
+	 * segment left in the store, in batches.
+	 */
 	private void deleteAllSegments(){
-		String prefix = FileData.VIDEO_PREFIX;
-		ObjectListing listing = _s3.listObjects(_bucketName, prefix);
-		List<S3ObjectSummary> summaries = listing.getObjectSummaries();
-
-		while (listing.isTruncated()) {
-			   listing = _s3.listNextBatchOfObjects(listing);
-			   summaries.addAll(listing.getObjectSummaries());
-		}
-		for(int i = 0; i < summaries.size(); i++){
-			S3ObjectSummary s = summaries.get(i);
-			String objKey = s.getKey();
-			delete(objKey);
+		_cleaner.deleteNow(Collections.singletonList(FileData.MANIFEST_FILE));
+		try{
+			List<String> keys = _store.list(FileData.VIDEO_PREFIX);
+			List<String> left = _cleaner.deleteNow(keys);
+			System.out.println("S3: Deleted " + (keys.size() - left.size())
+					+ " old segments from '" + _store + "'");
+			if(!left.isEmpty()){
+				System.err.println("S3: Could not delete " + left.size() + " old segments");
+			}
+		} catch(IOException e){
+			System.err.println("S3: Could not list old segments: " + e.getMessage());
 		}
 	}
 		
@@ -295,12 +399,11 @@ public class S3Uploader extends S3UserStream {
 
 		bitRateStream = Double.toString(average).getBytes();
 //		System.out.println("Bit rate: " + bitRate);
-		ObjectMetadata info = new ObjectMetadata();
-		ByteArrayInputStream input = new ByteArrayInputStream(bitRateStream);
-
-		info.setContentLength(bitRateStream.length);
-		PutObjectRequest request = new PutObjectRequest(_bucketName, FileData.BITRATE_FILE, input, info);
-		_s3.putObject(request);
+		try{
+			_store.put(FileData.BITRATE_FILE, bitRateStream);
+		} catch(IOException e){
+			System.err.println("S3: Failed to record bit rate: " + e.getMessage());
+		}
 	}
 	
 	/**
@@ -312,50 +415,210 @@ public class S3Uploader extends S3UserStream {
 		String runnerLogPath = _signalQueue.dequeue();
 		String s3Log = _logger.getFileName();
 		String s3LogPath = _logger.getFilePath();
-		_s3.putObject(new PutObjectRequest(_bucketName, runnerLog, new File(runnerLogPath)));
-		_s3.putObject(new PutObjectRequest(_bucketName, s3Log, new File(s3LogPath)));
+		_store.put(runnerLog, Files.readAllBytes(Paths.get(runnerLogPath)));
+		_store.put(s3Log, Files.readAllBytes(Paths.get(s3LogPath)));
 	}
 	
 	/**
+	 * Uploads a file and waits for it to finish. Each attempt may take up to
+	 * FILE_TIMEOUT; failed attempts are retried under FILE_RETRY. The
+	 * application exits if the file cannot be uploaded.
 	 * 
-	 * @param transferMGMT
-	 * @param file
-	 * 
-	 * WARNING: If unable to upload, will spin forever!
+	 * @param file	The path of the file, also used as its key.
 	 */
 	private void uploadFile(String file){
+		byte[] data = null;
 		try{
-			PutObjectRequest request = new PutObjectRequest(_bucketName, file, new File(file));
-			Upload upload = _transferMGMT.upload(request);
-			while(!upload.isDone()){
-				Utility.pause(10);
+			data = Files.readAllBytes(Paths.get(file));
+		} catch(IOException e){
+			System.err.println("S3: Cannot read '" + file + "': " + e.getMessage());
+		}
+		for(int attempt = 1; data != null; attempt++){
+			UploadCompletion completion = new UploadCompletion();
+			ObjectStore.Transfer upload = null;
+			try{
+				upload = _store.putAsync(file, new ByteArrayInputStream(data), data.length,
+						null, completion);
+				if(completion.await(FILE_TIMEOUT, TimeUnit.MILLISECONDS)){
+					return;
+				}
+				System.err.println("S3: Upload of '" + file + "' failed");
+			} catch(TimeoutException e){
+				System.err.println("S3: Upload of '" + file + "' timed out");
+				upload.abort();
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				break;
+			} catch(IOException e){
+				System.err.println("S3: Upload of '" + file + "' failed: " + e.getMessage());
 			}
-		} catch(Exception e){
-			System.err.println("S3: Failed to upload file: " + file);
-			e.printStackTrace();
-			System.exit(-1);
+			if(!FILE_RETRY.canRetry(attempt)){
+				break;
+			}
+			Utility.pause(FILE_RETRY.getDelay(attempt));
 		}
+		System.err.println("S3: Failed to upload file: " + file);
+		System.exit(-1);
 	}
 	
 	/**
+	 * Overwrites the manifest on the timer thread, which runs one task at a
+	 * time, so a newer manifest is never replaced by an older one.
+	 */
+	private void publishManifest(final byte[] manifest){
+		try{
+			_timer.execute(new Runnable() {
+				public void run(){
+					try{
+						_store.put(FileData.MANIFEST_FILE, manifest);
+					} catch(IOException e){
+						//the next segment writes a newer one
+						System.err.println("S3: Failed to update manifest: " + e.getMessage());
+					}
+				}
+			});
+		} catch(RejectedExecutionException e){
+			//closing
+		}
+	}
+
+	/**
+	 * Called once per segment when its upload succeeds or fails.
+	 */
+	private void segmentUploaded(VideoSegment segment, long sequence, long started,
+			boolean success){
+		String key = segment.toString();
+		long size = segment.size();
+
+		synchronized(this){
+			//a failed upload counts with the time it spent trying
+			long millis = System.currentTimeMillis() - started;
+			_uploadMillis = _uploadMillis == 0 ? millis
+					: _uploadMillis + UPLOAD_GAIN * (millis - _uploadMillis);
+			//a failed segment is gone; it must not hold back the ones after it
+			_finished.put(sequence, success && segment.getRendition() == 0
+					? new SegmentManifest.Entry(segment.getStreamIndex(), segment.getTimeStamp(), size)
+					: null);
+			boolean advanced = false;
+			while(!_finished.isEmpty() && _finished.firstKey() == _oldestPending){
+				SegmentManifest.Entry entry = _finished.remove(_oldestPending++);
+				if(entry != null){
+					_newestUploaded = entry.getIndex();
+					_manifest.add(entry);
+					advanced = true;
+				}
+			}
+			if(advanced){
+				//queued while locked, so manifests are written in order
+				publishManifest(_manifest.toBytes());
+			}
+			if(success){
+				_bytesSent += size;//total bytes sent
+				_segmentsPlayed++;
+			}
+		}
+		segment.release();
+		_inFlight.release();
+
+		if(!success){
+			System.err.println("S3: Failed to upload '" + key + "'");
+			return;
+		}
+		System.out.println("S3: Uploaded: '" + key + "'");
+		if(FileData.ISLOGGING){
+			logUpload((System.currentTimeMillis() - _startTime)/1000.0);
+		}
+	}
+
+	/**
+	 * Starts uploading a segment once a slot in the upload window is free.
 	 * 
-	 * @param transferMGMT
-	 * @param input
-	 * @param key
-	 * @param size
-	 * 
-	 * WARNING: If unable to upload, will spin forever!
+	 * @param segment	Released when the upload ends.
+	 * @throws InterruptedException while waiting for a slot.
 	 */
-	private void uploadSegment(InputStream input, long size){
-		ObjectMetadata info = new ObjectMetadata();
-		info.setContentLength(size);
-		PutObjectRequest request = new PutObjectRequest(_bucketName, _key, input, info);
-		Upload upload = _transferMGMT.upload(request);
-		
-		while(!upload.isDone()){
-			Utility.pause(10);
+	private void uploadSegment(VideoSegment segment) throws InterruptedException {
+		long sequence;
+		_inFlight.acquire();
+		synchronized(this){
+			sequence = _nextSequence++;
+		}
+		new SegmentUpload(segment, sequence, System.currentTimeMillis(), 1).start();
+	}
+
+	//-------------------------------------------------------------------------
+	//Segment uploads
+	//-------------------------------------------------------------------------
+	/**
+	 * One attempt at uploading a segment, streamed straight from its buffer.
+	 * The index and recording time are stored as object metadata. When the
+	 * attempt fails or times out, the next attempt is scheduled on the timer
+	 * after a backoff, as long as SEGMENT_RETRY allows.
+	 */
+	private class SegmentUpload extends UploadCompletion implements Runnable {
+
+		private int 					_attempt;
+		private VideoSegment 			_segment;
+		private long 					_sequence;
+		private long 					_started;
+		private volatile ScheduledFuture<?> _timeout;
+		private volatile ObjectStore.Transfer _upload;
+
+		/**
+		 * @param started	When the first attempt started.
+		 */
+		SegmentUpload(VideoSegment segment, long sequence, long started, int attempt){
+			_segment = segment;
+			_sequence = sequence;
+			_started = started;
+			_attempt = attempt;
+		}
+
+		void start(){
+			Map<String, String> metadata = new HashMap<>();
+			metadata.put(FileData.SEGMENT_INDEX_META, Integer.toString(_segment.getIndex()));
+			metadata.put(FileData.SEGMENT_TIMESTAMP_META, Long.toString(_segment.getTimeStamp()));
+			try{
+				_upload = _store.putAsync(_segment.toString(), _segment.newInputStream(),
+						_segment.size(), metadata, this);
+				_timeout = _timer.schedule(this, _uploadTimeout, TimeUnit.MILLISECONDS);
+			} catch(IOException | RejectedExecutionException e){
+				System.err.println("S3: Could not start upload: " + e.getMessage());
+				fail();
+			}
+		}
+
+		/**
+		 * Aborts the attempt when it runs past the upload timeout. The store
+		 * reports the failure once it has stopped reading the segment, and
+		 * only then may the segment be retried or released to the pool.
+		 */
+		public void run(){
+			if(isDone()) return;
+			System.err.println("S3: Upload of '" + _segment + "' timed out");
+			_upload.abort();
+		}
+
+		@Override
+		protected void finished(boolean success){
+			ScheduledFuture<?> timeout = _timeout;
+			if(timeout != null) timeout.cancel(false);
+			if(success || _isDone || !SEGMENT_RETRY.canRetry(_attempt)){
+				segmentUploaded(_segment, _sequence, _started, success);
+				return;
+			}
+			final SegmentUpload retry = new SegmentUpload(_segment, _sequence, _started,
+					_attempt + 1);
+			System.err.println("S3: Retrying upload of '" + _segment + "'");
+			try{
+				_timer.schedule(new Runnable() {
+					public void run(){
+						retry.start();
+					}
+				}, SEGMENT_RETRY.getDelay(_attempt), TimeUnit.MILLISECONDS);
+			} catch(RejectedExecutionException e){
+				segmentUploaded(_segment, _sequence, _started, false);
+			}
 		}
-		System.out.println("S3: Uploaded: '" + _key + "'");
 	}
 }
 
@@ -0,0 +1,150 @@
+package videoSender;
+
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Generates frames, so the whole pipeline can run without a camera at a
+ * load that is the same from run to run. Each frame is a fixed background
+ * of a gradient under a checkerboard, with a box that moves a set number of
+ * pixels per frame, bouncing off the edges, and sensor noise on top:
+ * <ul>
+ * <li>motion 0 makes a static scene, which motion gating skips,</li>
+ * <li>more motion changes more blocks per frame for the delta codecs,</li>
+ * <li>more noise makes every frame harder to compress.</li>
+ * </ul>
+ * The noise is drawn from a seeded Random into NOISE_FRAMES planes up front
+ * and cycled, so the same seed gives the same frames and generating them
+ * costs little next to encoding.
+ *
+ * @see FrameSources
+ */
+public class SyntheticFrameSource extends PacedFrameSource {
+
+	private static final int NOISE_FRAMES = 8;
+	private static final int CHECKER = 32;//pixels per square
+	public static final long DEFAULT_SEED = 42;
+
+	/*
+	 * @param _motion		Pixels the box moves per frame.
+	 * @param _noiseUp		Noise added to each pixel, by frame.
+	 * @param _noiseDown	Noise subtracted from each pixel, by frame.
+	 */
+	private Mat 	_background;
+	private int 	_boxSize;
+	private long 	_frame = 0;
+	private Mat 	_gray;
+	private int 	_height;
+	private double 	_motion;
+	private Mat[] 	_noiseDown;
+	private Mat[] 	_noiseUp;
+	private int 	_width;
+
+	/**
+	 * @param fps		Frames per second, or 0 for no pacing.
+	 * @param motion	Pixels the box moves per frame.
+	 * @param noise		Standard deviation of the noise in gray levels, or 0
+	 * 					for none.
+	 * @param seed		Seed of the noise.
+	 */
+	public SyntheticFrameSource(int width, int height, double fps,
+			double motion, double noise, long seed){
+		super(fps);
+		_width = width;
+		_height = height;
+		_motion = Math.max(0, motion);
+		_boxSize = Math.max(1, Math.min(width, height) / 4);
+		_gray = new Mat(height, width, CvType.CV_8UC1);
+		_background = createBackground();
+		if(noise > 0){
+			createNoise(noise, new Random(seed));
+		}
+	}
+
+	public void release(){
+		_background.release();
+		_gray.release();
+		if(_noiseUp != null){
+			for(int i = 0; i < NOISE_FRAMES; i++){
+				_noiseUp[i].release();
+				_noiseDown[i].release();
+			}
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//Protected methods
+	//-------------------------------------------------------------------------
+	protected boolean readFrame(Mat mat){
+		_background.copyTo(_gray);
+		long travel = Math.round(_frame * _motion);
+		int x = bounce(travel, _width - _boxSize);
+		int y = bounce(travel, _height - _boxSize);
+		Imgproc.rectangle(_gray, new Point(x, y),
+				new Point(x + _boxSize - 1, y + _boxSize - 1), new Scalar(255), -1);
+		Imgproc.rectangle(_gray, new Point(x + _boxSize / 4, y + _boxSize / 4),
+				new Point(x + _boxSize * 3 / 4, y + _boxSize * 3 / 4), new Scalar(0), -1);
+		if(_noiseUp != null){
+			int k = (int)(_frame % NOISE_FRAMES);
+			Core.add(_gray, _noiseUp[k], _gray);
+			Core.subtract(_gray, _noiseDown[k], _gray);
+		}
+		Imgproc.cvtColor(_gray, mat, Imgproc.COLOR_GRAY2BGR);
+		_frame++;
+		return true;
+	}
+
+	//-------------------------------------------------------------------------
+	//Private methods
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Where a point that has moved distance lies when it goes back
+	 * 			and forth between 0 and range.
+	 */
+	private static int bounce(long distance, int range){
+		if(range <= 0) return 0;
+		int position = (int)(distance % (2L * range));
+		return position <= range ? position : 2 * range - position;
+	}
+
+	private Mat createBackground(){
+		byte[] pixels = new byte[_width * _height];
+		for(int y = 0; y < _height; y++){
+			for(int x = 0; x < _width; x++){
+				int gradient = 32 + 160 * (x + y) / Math.max(1, _width + _height - 2);
+				boolean dark = ((x / CHECKER) + (y / CHECKER)) % 2 == 0;
+				pixels[y * _width + x] = (byte)(dark ? gradient - 24 : gradient + 24);
+			}
+		}
+		Mat background = new Mat(_height, _width, CvType.CV_8UC1);
+		background.put(0, 0, pixels);
+		return background;
+	}
+
+	private void createNoise(double noise, Random random){
+		_noiseUp = new Mat[NOISE_FRAMES];
+		_noiseDown = new Mat[NOISE_FRAMES];
+		byte[] up = new byte[_width * _height];
+		byte[] down = new byte[_width * _height];
+		for(int i = 0; i < NOISE_FRAMES; i++){
+			for(int p = 0; p < up.length; p++){
+				int value = (int)Math.round(random.nextGaussian() * noise);
+				value = Math.max(-255, Math.min(255, value));
+				up[p] = (byte)Math.max(0, value);
+				down[p] = (byte)Math.max(0, -value);
+			}
+			_noiseUp[i] = new Mat(_height, _width, CvType.CV_8UC1);
+			_noiseUp[i].put(0, 0, up);
+			_noiseDown[i] = new Mat(_height, _width, CvType.CV_8UC1);
+			_noiseDown[i].put(0, 0, down);
+		}
+	}
+}
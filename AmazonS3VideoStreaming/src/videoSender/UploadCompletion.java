@@ -0,0 +1,78 @@
+package videoSender;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import videoUtility.ObjectStore;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Listens to an ObjectStore put and records how it ended, so no one has to
+ * poll isDone(). Pass it to ObjectStore.putAsync. Callers either wait
+ * with await, or override finished to be called back on the transfer
+ * thread. Only the first outcome counts; fail can be called by a timeout.
+ *
+ * @see S3Uploader
+ */
+public class UploadCompletion implements ObjectStore.PutListener {
+
+	private CountDownLatch 		_done = new CountDownLatch(1);
+	private volatile boolean 	_success = false;
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Waits for the upload to end.
+	 * @return	True if it completed, false if it failed or was canceled.
+	 * @throws TimeoutException if it did not end in time.
+	 */
+	public boolean await(long timeout, TimeUnit unit)
+			throws InterruptedException, TimeoutException {
+		if(!_done.await(timeout, unit)){
+			throw new TimeoutException();
+		}
+		return _success;
+	}
+
+	/**
+	 * Ends the upload as failed, ie. when it timed out.
+	 */
+	public void fail(){
+		finish(false);
+	}
+
+	public boolean isDone(){
+		return _done.getCount() == 0;
+	}
+
+	@Override
+	public void putFinished(boolean success){
+		finish(success);
+	}
+
+	//-------------------------------------------------------------------------
+	//PROTECTED METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Called once, on the thread that ended the upload.
+	 * @param success	True if the upload completed.
+	 */
+	protected void finished(boolean success){
+		//override to be notified
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	private void finish(boolean success){
+		synchronized(this){
+			if(isDone()) return;
+			_success = success;
+			_done.countDown();
+		}
+		finished(success);
+	}
+}
@@ -0,0 +1,134 @@
+package videoUtility;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Decodes frames written by BlockDeltaFrameEncoder. Key frames are read with
+ * ImageIO, and delta frames overwrite the changed blocks of the previous
+ * frame.
+ * 
+ * @see BlockDeltaFrameEncoder, FrameCodec
+ */
+public class BlockDeltaFrameDecoder implements FrameDecoder {
+
+	private byte[] _blocks = new byte[0];
+	private int _height;
+	private Inflater _inflater = new Inflater();
+	private byte[] _pixels;
+	private int _width;
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	public BufferedImage decode(byte[] data, int offset, int length, byte frameType)
+			throws IOException {
+		if(frameType == VideoSegmentHeader.KEY_FRAME){
+			readKeyFrame(data, offset, length);
+		} else {
+			if(_pixels == null){
+				throw new IOException("Delta frame without a key frame");
+			}
+			readDeltaFrame(data, offset, length);
+		}
+		BufferedImage img = new BufferedImage(_width, _height,
+				BufferedImage.TYPE_BYTE_GRAY);
+		img.getRaster().setDataElements(0, 0, _width, _height, _pixels);
+
+		return img;
+	}
+
+	public void reset(){
+		_pixels = null;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	private void readKeyFrame(byte[] data, int offset, int length) throws IOException {
+		BufferedImage img = ImageIO.read(new ByteArrayInputStream(data, offset, length));
+		if(img == null){
+			throw new IOException("Unreadable key frame");
+		}
+		if(img.getType() != BufferedImage.TYPE_BYTE_GRAY){
+			BufferedImage gray = new BufferedImage(img.getWidth(), img.getHeight(),
+					BufferedImage.TYPE_BYTE_GRAY);
+			Graphics g = gray.getGraphics();
+			g.drawImage(img, 0, 0, null);
+			g.dispose();
+			img = gray;
+		}
+		_width = img.getWidth();
+		_height = img.getHeight();
+		if(_pixels == null || _pixels.length != _width * _height){
+			_pixels = new byte[_width * _height];
+		}
+		img.getRaster().getDataElements(0, 0, _width, _height, _pixels);
+	}
+
+	private void readDeltaFrame(byte[] data, int offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+		int width = buffer.getShort() & 0xFFFF,
+			height = buffer.getShort() & 0xFFFF,
+			blockSize = buffer.get() & 0xFF;
+		if(width != _width || height != _height || blockSize == 0){
+			throw new IOException("Delta frame does not match key frame");
+		}
+		int cols = (width + blockSize - 1) / blockSize,
+			blockCount = cols * ((height + blockSize - 1) / blockSize),
+			bitmapOffset = buffer.position();
+		int blockData = bitmapOffset + (blockCount + 7) / 8;
+
+		inflate(data, blockData, offset + length - blockData, blockCount * blockSize * blockSize);
+
+		int read = 0;
+		for(int block = 0; block < blockCount; block++){
+			if((data[bitmapOffset + (block >> 3)] & (1 << (block & 7))) == 0){
+				continue;
+			}
+			int y0 = (block / cols) * blockSize,
+				y1 = Math.min(y0 + blockSize, height),
+				x0 = (block % cols) * blockSize,
+				x1 = Math.min(x0 + blockSize, width);
+			for(int y = y0; y < y1; y++){
+				System.arraycopy(_blocks, read, _pixels, y * width + x0, x1 - x0);
+				read += x1 - x0;
+			}
+		}
+	}
+
+	/**
+	 * Inflates the changed blocks into _blocks.
+	 * 
+	 * @param maxLength	The size of the blocks if every block changed.
+	 */
+	private void inflate(byte[] data, int offset, int length, int maxLength)
+			throws IOException {
+		if(_blocks.length < maxLength){
+			_blocks = new byte[maxLength];
+		}
+		_inflater.reset();
+		_inflater.setInput(data, offset, length);
+		try{
+			int read = 0;
+			while(!_inflater.finished()){
+				int n = _inflater.inflate(_blocks, read, _blocks.length - read);
+				if(n == 0 && (_inflater.needsInput() || read == _blocks.length)){
+					break;
+				}
+				read += n;
+			}
+		} catch(DataFormatException e){
+			throw new IOException("Delta frame is corrupt: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package videoUtility;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Encodes the first frame of every segment as a JPEG key frame. Every later
+ * frame is split into square blocks (8x8 or 16x16) and only the blocks that
+ * changed since they were last sent are stored; unchanged blocks cost one bit.
+ * This suits cameras watching mostly static scenes.
+ * <p>
+ * A delta frame is laid out as:
+ * width (2 bytes), height (2 bytes), block size (1 byte),
+ * changed-block bitmap (1 bit per block, row major),
+ * deflated pixels of the changed blocks (row major within each block).
+ * <p>
+ * A block is considered changed when the mean absolute difference of its
+ * pixels exceeds the threshold, which keeps sensor noise from being sent.
+ * When most of the frame changed, a key frame is sent instead since it is
+ * smaller than the blocks.
+ * 
+ * @see BlockDeltaFrameDecoder, FrameCodec
+ */
+public class BlockDeltaFrameEncoder implements FrameEncoder {
+
+	public static final int DEFAULT_BLOCK_SIZE = 16;
+	public static final int DEFAULT_THRESHOLD = 4;
+	private static final double KEY_FRAME_RATIO = 0.5;//of blocks changed
+
+	private byte[] _bitmap = new byte[0];
+	private byte[] _blocks = new byte[0];
+	private int _blockSize;
+	private byte[] _deflated = new byte[0];
+	private Deflater _deflater;
+	private JPEGFrameEncoder _keyEncoder;
+	private boolean _keyFrame = true;
+	private byte[] _pixels = new byte[0];
+	private byte[] _reference = new byte[0];
+	private int _threshold;
+
+	//-------------------------------------------------------------------------
+	//CONSTRUCTORS
+	//-------------------------------------------------------------------------
+	/**
+	 * @param quality	JPEG quality of the key frames (0-100).
+	 */
+	public BlockDeltaFrameEncoder(int quality){
+		this(quality, DEFAULT_BLOCK_SIZE, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param quality	JPEG quality of the key frames (0-100).
+	 * @param blockSize	The width and height of a block, ie. 8 or 16.
+	 * @param threshold	Mean absolute pixel difference above which a block
+	 * 					is sent.
+	 */
+	public BlockDeltaFrameEncoder(int quality, int blockSize, int threshold){
+		if(blockSize < 1 || blockSize > 255){
+			throw new IllegalArgumentException("Block size must be 1-255");
+		}
+		_blockSize = blockSize;
+		_threshold = threshold;
+		_keyEncoder = new JPEGFrameEncoder(quality);
+		_deflater = new Deflater(Deflater.BEST_SPEED);
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	public void close(){
+		_keyEncoder.close();
+		if(_deflater != null){
+			_deflater.end();
+			_deflater = null;
+		}
+	}
+
+	public byte encode(Mat mat, OutputStream output) throws IOException {
+		if(mat.type() != CvType.CV_8UC1){
+			throw new IOException("Block delta codec requires an 8-bit grayscale mat");
+		}
+		int width = mat.cols(),
+			height = mat.rows(),
+			size = width * height;
+
+		if(_reference.length != size){
+			_pixels = new byte[size];
+			_reference = new byte[size];
+			_keyFrame = true;
+		}
+		mat.get(0, 0, _pixels);
+
+		if(!_keyFrame){
+			int changed = findChangedBlocks(width, height);
+			if(changed < getBlockCount(width, height) * KEY_FRAME_RATIO){
+				writeDeltaFrame(width, height, changed, output);
+				return VideoSegmentHeader.DELTA_FRAME;
+			}
+		}
+		_keyFrame = false;
+		_keyEncoder.encode(mat, output);
+		System.arraycopy(_pixels, 0, _reference, 0, size);
+		return VideoSegmentHeader.KEY_FRAME;
+	}
+
+	public int getBlockSize(){
+		return _blockSize;
+	}
+
+	public byte getCodecId(){
+		return FrameCodec.BLOCK;
+	}
+
+	public void reset(){
+		_keyFrame = true;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Marks every block whose mean absolute difference to the reference is
+	 * above the threshold in _bitmap.
+	 * 
+	 * @return	The number of changed blocks.
+	 */
+	private int findChangedBlocks(int width, int height){
+		int cols = (width + _blockSize - 1) / _blockSize,
+			rows = (height + _blockSize - 1) / _blockSize,
+			bitmapSize = (cols * rows + 7) / 8,
+			changed = 0;
+
+		if(_bitmap.length != bitmapSize){
+			_bitmap = new byte[bitmapSize];
+		}
+		for(int i = 0; i < bitmapSize; i++){
+			_bitmap[i] = 0;
+		}
+
+		for(int by = 0; by < rows; by++){
+			int y0 = by * _blockSize,
+				y1 = Math.min(y0 + _blockSize, height);
+			for(int bx = 0; bx < cols; bx++){
+				int x0 = bx * _blockSize,
+					x1 = Math.min(x0 + _blockSize, width);
+				long sum = 0;
+				for(int y = y0; y < y1; y++){
+					int row = y * width;
+					for(int x = row + x0; x < row + x1; x++){
+						sum += Math.abs((_pixels[x] & 0xFF) - (_reference[x] & 0xFF));
+					}
+				}
+				if(sum > (long)_threshold * (y1 - y0) * (x1 - x0)){
+					int block = by * cols + bx;
+					_bitmap[block >> 3] |= (byte)(1 << (block & 7));
+					changed++;
+				}
+			}
+		}
+		return changed;
+	}
+
+	private int getBlockCount(int width, int height){
+		return ((width + _blockSize - 1) / _blockSize)
+				* ((height + _blockSize - 1) / _blockSize);
+	}
+
+	/**
+	 * Writes the changed blocks and copies them into the reference frame.
+	 */
+	private void writeDeltaFrame(int width, int height, int changed,
+			OutputStream output) throws IOException {
+		int cols = (width + _blockSize - 1) / _blockSize,
+			blockCount = getBlockCount(width, height),
+			length = 0;
+		DataOutputStream out = new DataOutputStream(output);
+
+		if(_blocks.length < changed * _blockSize * _blockSize){
+			_blocks = new byte[changed * _blockSize * _blockSize];
+		}
+		for(int block = 0; block < blockCount; block++){
+			if((_bitmap[block >> 3] & (1 << (block & 7))) == 0){
+				continue;
+			}
+			int y0 = (block / cols) * _blockSize,
+				y1 = Math.min(y0 + _blockSize, height),
+				x0 = (block % cols) * _blockSize,
+				x1 = Math.min(x0 + _blockSize, width);
+			for(int y = y0; y < y1; y++){
+				int start = y * width + x0;
+				System.arraycopy(_pixels, start, _blocks, length, x1 - x0);
+				System.arraycopy(_pixels, start, _reference, start, x1 - x0);
+				length += x1 - x0;
+			}
+		}
+
+		out.writeShort(width);
+		out.writeShort(height);
+		out.writeByte(_blockSize);
+		out.write(_bitmap, 0, _bitmap.length);
+		out.write(_deflated, 0, deflate(length));
+	}
+
+	/**
+	 * Deflates the first length bytes of _blocks into _deflated.
+	 * 
+	 * @return	The number of deflated bytes.
+	 */
+	private int deflate(int length){
+		if(_deflated.length < length + 64){
+			_deflated = new byte[length + 64];
+		}
+		_deflater.reset();
+		_deflater.setInput(_blocks, 0, length);
+		_deflater.finish();
+		int deflated = 0;
+		while(!_deflater.finished()){
+			if(deflated == _deflated.length){
+				byte[] bigger = new byte[_deflated.length * 2];
+				System.arraycopy(_deflated, 0, bigger, 0, deflated);
+				_deflated = bigger;
+			}
+			deflated += _deflater.deflate(_deflated, deflated, _deflated.length - deflated);
+		}
+		return deflated;
+	}
+}
@@ -0,0 +1,75 @@
+package videoUtility;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Ryan Babcock
+ *
+ * A first-in, first-out queue with a fixed capacity, used to hand video
+ * segments and signals between threads.
+ * <p>
+ * enqueue and dequeue are the original blocking calls. When the waiting
+ * thread is interrupted they throw NoSuchElementException and leave the
+ * thread's interrupt flag set. put and take block the same way but throw
+ * InterruptedException instead. offer and poll never block, or wait at most
+ * the given time.
+ *
+ * @param <E>	The type of element held.
+ * @see SharedQueue, SpscQueue
+ */
+public interface BoundedQueue<E> {
+
+	/**
+	 * Waits for space, then adds job to the tail.
+	 * @throws NoSuchElementException if interrupted while waiting.
+	 */
+	public void enqueue(E job) throws NoSuchElementException;
+
+	/**
+	 * Waits for an element, then removes it from the head.
+	 * @throws NoSuchElementException if interrupted while waiting.
+	 */
+	public E dequeue() throws NoSuchElementException;
+
+	public void put(E job) throws InterruptedException;
+
+	public E take() throws InterruptedException;
+
+	/**
+	 * @return	False if the queue is full.
+	 */
+	public boolean offer(E job);
+
+	/**
+	 * @return	False if the queue was still full after the timeout.
+	 */
+	public boolean offer(E job, long timeout, TimeUnit unit) throws InterruptedException;
+
+	/**
+	 * @return	The head, or null if the queue is empty.
+	 */
+	public E poll();
+
+	/**
+	 * @return	The head, or null if the queue was still empty after the
+	 * 			timeout.
+	 */
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+	/**
+	 * Removes up to maxElements from the head without blocking and adds them
+	 * to collection in order.
+	 * @return	The number of elements moved.
+	 */
+	public int drainTo(Collection<? super E> collection, int maxElements);
+
+	public int capacity();
+
+	public boolean isEmpty();
+
+	public boolean isFull();
+
+	public int size();
+}
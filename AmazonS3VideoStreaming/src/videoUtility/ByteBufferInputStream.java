@@ -0,0 +1,73 @@
+package videoUtility;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Reads a ByteBuffer (heap or direct) as an InputStream without copying it.
+ * The stream reads from its own view, so the position of the original buffer
+ * never changes. Supports mark and reset, which lets an upload be retried
+ * from the start.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	private ByteBuffer _buffer;
+
+	/**
+	 * @param buffer	Read from its position to its limit.
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer){
+		_buffer = buffer.duplicate();
+		_buffer.mark();
+	}
+
+	@Override
+	public int available(){
+		return _buffer.remaining();
+	}
+
+	@Override
+	public synchronized void mark(int readlimit){
+		_buffer.mark();
+	}
+
+	@Override
+	public boolean markSupported(){
+		return true;
+	}
+
+	@Override
+	public int read(){
+		if(!_buffer.hasRemaining()){
+			return -1;
+		}
+		return _buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len){
+		if(len == 0){
+			return 0;
+		}
+		if(!_buffer.hasRemaining()){
+			return -1;
+		}
+		len = Math.min(len, _buffer.remaining());
+		_buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public synchronized void reset(){
+		_buffer.reset();
+	}
+
+	@Override
+	public long skip(long n){
+		int skipped = (int)Math.max(0, Math.min(n, _buffer.remaining()));
+		_buffer.position(_buffer.position() + skipped);
+		return skipped;
+	}
+}
@@ -16,11 +16,16 @@ public class FileData {
 	public static final String INDEXFILE = "playlist.txt";
 	public static final boolean ISLOGGING = false;
 	public static final String LOG_DIRECTORY = "log/";
+	public static final String MANIFEST_FILE = "manifest.txt";
 	public static final String METRICS_FILE = "videoStreamMetrics.csv";
+	public static final String PART_SEPARATOR = ".";
+	public static final String RENDITION_SEPARATOR = "_";
 	public static final String PLAYER_LOG = "VideoPlayerLog.txt";
 	public static final String S3UPLOADER_LOG = "S3UploaderLog.txt";
 	public static final String S3DOWNLOADER_LOG = "S3DownloaderLog.txt";
 	public static final String SENDER_LOG = "VideoSenderLog.txt";
+	public static final String SEGMENT_INDEX_META = "segment-index";
+	public static final String SEGMENT_TIMESTAMP_META = "segment-timestamp";
 	public static final String SETUP_FILE = "setup.txt";
 	public static final String VIDEO_FOLDER = "./videos/";
 	public static final String VIDEO_PREFIX = "myvideo";
@@ -0,0 +1,144 @@
+package videoUtility;
+
+import java.util.NoSuchElementException;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Lists the codecs that can be used for video segments. The id of the codec
+ * is stored in the VideoSegmentHeader so that the receiver can choose the
+ * right FrameDecoder on its own.
+ * <p>
+ * JPEG	Lossy, quality 0-100. Smallest segments.
+ * PNG	Lossless, compression level 0-9.
+ * RAW	Uncompressed 8-bit grayscale. Least CPU, largest segments.
+ * DELTA	8-bit grayscale, each frame stored as the deflated difference to the
+ * 		previous frame of the segment.
+ * BLOCK	JPEG key frame followed by frames holding only the 8x8/16x16 blocks
+ * 		that changed. Best for static scenes.
+ * 
+ * @see FrameEncoder, FrameDecoder, VideoSegmentHeader
+ */
+public class FrameCodec {
+
+	public static final byte JPEG = 0;
+	public static final byte PNG = 1;
+	public static final byte RAW = 2;
+	public static final byte DELTA = 3;
+	public static final byte BLOCK = 4;
+
+	public static final int DEFAULT_JPEG_QUALITY = 95;
+	public static final int DEFAULT_PNG_COMPRESSION = 3;
+
+	private FrameCodec(){}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Creates the decoder for the codec id found in a video segment header.
+	 * 
+	 * @param codecId	The id stored in the header.
+	 * @return			A new decoder.
+	 * @throws NoSuchElementException if the codec is unknown.
+	 */
+	public static FrameDecoder getDecoder(byte codecId) throws NoSuchElementException {
+		switch(codecId){
+		case JPEG:
+		case PNG:
+			return new ImageIOFrameDecoder();
+		case RAW:
+			return new GrayFrameDecoder(false);
+		case DELTA:
+			return new GrayFrameDecoder(true);
+		case BLOCK:
+			return new BlockDeltaFrameDecoder();
+		default:
+			throw new NoSuchElementException("Unknown codec: " + codecId);
+		}
+	}
+
+	/**
+	 * Creates an encoder.
+	 * 
+	 * @param codecId	One of JPEG, PNG, RAW, DELTA or BLOCK.
+	 * @param quality	JPEG quality (0-100) or PNG compression level (0-9).
+	 * 					Ignored by RAW and DELTA.
+	 * @return			A new encoder.
+	 * @throws NoSuchElementException if the codec is unknown.
+	 */
+	public static FrameEncoder getEncoder(byte codecId, int quality)
+			throws NoSuchElementException {
+		switch(codecId){
+		case JPEG:
+			return new JPEGFrameEncoder(quality);
+		case PNG:
+			return new PNGFrameEncoder(quality);
+		case RAW:
+			return new GrayFrameEncoder(false);
+		case DELTA:
+			return new GrayFrameEncoder(true);
+		case BLOCK:
+			return new BlockDeltaFrameEncoder(quality);
+		default:
+			throw new NoSuchElementException("Unknown codec: " + codecId);
+		}
+	}
+
+	/**
+	 * Creates an encoder using the default quality of the codec.
+	 */
+	public static FrameEncoder getEncoder(byte codecId) throws NoSuchElementException {
+		return getEncoder(codecId, getDefaultQuality(codecId));
+	}
+
+	/**
+	 * @return	True if every frame of the codec can be encoded on its own,
+	 * 			so frames may be encoded in parallel.
+	 */
+	public static boolean isIntraFrame(byte codecId){
+		return codecId == JPEG || codecId == PNG || codecId == RAW;
+	}
+
+	/**
+	 * @return	True if a lower quality gives smaller, less detailed frames.
+	 */
+	public static boolean isLossy(byte codecId){
+		return codecId == JPEG || codecId == BLOCK;
+	}
+
+	public static int getDefaultQuality(byte codecId){
+		return codecId == PNG ? DEFAULT_PNG_COMPRESSION : DEFAULT_JPEG_QUALITY;
+	}
+
+	/**
+	 * Finds the codec id by name or file extension, ie. "jpeg", ".jpg", "png".
+	 * 
+	 * @param name	The name of the codec.
+	 * @return		The codec id.
+	 * @throws NoSuchElementException if the name is unknown.
+	 */
+	public static byte parse(String name) throws NoSuchElementException {
+		String codec = name.toLowerCase();
+		if(codec.startsWith(".")){
+			codec = codec.substring(1);
+		}
+		if(codec.equals("jpg") || codec.equals("jpeg")) return JPEG;
+		if(codec.equals("png")) return PNG;
+		if(codec.equals("raw")) return RAW;
+		if(codec.equals("delta")) return DELTA;
+		if(codec.equals("block")) return BLOCK;
+		throw new NoSuchElementException("Unknown codec: " + name);
+	}
+
+	public static String toString(byte codecId){
+		switch(codecId){
+		case JPEG:	return "jpeg";
+		case PNG:	return "png";
+		case RAW:	return "raw";
+		case DELTA:	return "delta";
+		case BLOCK:	return "block";
+		default:	return "unknown";
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package videoUtility;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Walks through the frames of a video segment, decoding each frame only when
+ * it is about to be shown. Up to prefetch frames ahead of the current one are
+ * decoded on the executor while the current frame plays. Frames that have
+ * been returned are forgotten, so only the compressed segment and the
+ * prefetch window stay in memory.
+ * <p>
+ * Intra-frame codecs (JPEG, PNG, RAW) decode every frame in its own task.
+ * Other codecs share one decoder, and a task decodes every frame up to its
+ * own in order. Repeated frames return the previous image again.
+ * <p>
+ * A cursor over a segment that is still downloading waits for the bytes of
+ * each frame before decoding it, so playback can start with the first frame.
+ *
+ * @see VideoSegment, ICCFrameReader
+ */
+public class FrameCursor implements Iterator<BufferedImage> {
+
+	//-------------------------------------------------------------------------
+	//PARAMETERS
+	//-------------------------------------------------------------------------
+	/*
+	 * @param _decoded		Frames decoded by the shared decoder, waiting to be
+	 * 						returned (stateful codecs only).
+	 * @param _decoder		The shared decoder (stateful codecs only).
+	 * @param _nextDecode	The next frame the shared decoder will decode.
+	 * @param _pending		Frames being decoded ahead of the cursor.
+	 * @param _source		The segment still being downloaded, or null.
+	 */
+	private byte[] 						_data;
+	private int 						_dataOffset;
+	private BufferedImage[] 			_decoded;
+	private FrameDecoder 				_decoder;
+	private ExecutorService 			_executor;
+	private VideoSegmentHeader 			_header;
+	private boolean 					_intraFrame;
+	private BufferedImage 				_last;
+	private int 						_nextDecode = 0;
+	private Future<BufferedImage>[] 	_pending;
+	private int 						_position = 0;
+	private int 						_prefetch;
+	private VideoSegment 				_source;
+
+	//-------------------------------------------------------------------------
+	//CONSTRUCTORS
+	//-------------------------------------------------------------------------
+	/**
+	 * @param header	The header of the video segment.
+	 * @param data		The video data (without the header).
+	 * @param executor	Decodes frames ahead of the cursor, or null to decode
+	 * 					each frame when next is called.
+	 * @param prefetch	How many frames to decode ahead.
+	 */
+	public FrameCursor(VideoSegmentHeader header, byte[] data,
+			ExecutorService executor, int prefetch){
+		this(header, data, 0, executor, prefetch);
+	}
+	/**
+	 * @param header	The header of the video segment.
+	 * @param data		Holds the video data, ie. the array behind the
+	 * 					segment's buffer.
+	 * @param offset	Where the video data starts within data.
+	 * @param executor	Decodes frames ahead of the cursor, or null to decode
+	 * 					each frame when next is called.
+	 * @param prefetch	How many frames to decode ahead.
+	 */
+	public FrameCursor(VideoSegmentHeader header, byte[] data, int offset,
+			ExecutorService executor, int prefetch){
+		this(header, data, offset, executor, prefetch, null);
+	}
+	/**
+	 * @param source	A segment whose data is still arriving, or null.
+	 * @see VideoSegment#received(int)
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	FrameCursor(VideoSegmentHeader header, byte[] data, int offset,
+			ExecutorService executor, int prefetch, VideoSegment source){
+		int frames = header.getFrameOrder().length;
+		_header = header;
+		_data = data;
+		_dataOffset = offset;
+		_executor = executor;
+		_prefetch = (executor == null) ? 0 : Math.max(0, prefetch);
+		_intraFrame = FrameCodec.isIntraFrame(header.getCodec());
+		_source = source;
+		_pending = new Future[frames];
+		if(!_intraFrame){
+			_decoder = FrameCodec.getDecoder(header.getCodec());
+			_decoded = new BufferedImage[frames];
+		}
+		schedule();
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Stops decoding frames that were prefetched but will not be shown, ie.
+	 * when the segment is skipped.
+	 */
+	public void close(){
+		for(int i = _position; i < _pending.length; i++){
+			if(_pending[i] != null){
+				_pending[i].cancel(true);
+				_pending[i] = null;
+			}
+		}
+		_position = _pending.length;
+	}
+
+	@Override
+	public boolean hasNext(){
+		return _position < _pending.length;
+	}
+
+	/**
+	 * @return	The next frame, decoded now if it was not prefetched.
+	 * @throws NoSuchElementException if the segment cannot be decoded.
+	 */
+	@Override
+	public BufferedImage next(){
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		try{
+			_last = frameAt(_position);
+		} catch(IOException e){
+			close();
+			throw new NoSuchElementException(e.getMessage());
+		}
+		_pending[_position++] = null;
+		schedule();
+		return _last;
+	}
+
+	/**
+	 * @return	The position of the next frame within the segment.
+	 */
+	public int position(){
+		return _position;
+	}
+
+	@Override
+	public void remove(){
+		throw new UnsupportedOperationException();
+	}
+
+	public int size(){
+		return _pending.length;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Waits for the last byte of a frame when the segment is downloading.
+	 */
+	private void awaitFrame(int frame) throws IOException {
+		if(_source != null){
+			_source.awaitPayload(_header.getFrameOrder()[frame]);
+		}
+	}
+
+	private BufferedImage decode(int frame) throws IOException {
+		if(_intraFrame){
+			awaitFrame(frame);
+			return FrameCodec.getDecoder(_header.getCodec()).decode(_data,
+					offset(frame), length(frame), _header.getFrameType(frame));
+		}
+		synchronized(_decoder){
+			while(_nextDecode <= frame){
+				int i = _nextDecode++;
+				byte frameType = _header.getFrameType(i);
+				if(frameType != VideoSegmentHeader.REPEAT_FRAME){
+					awaitFrame(i);
+					_decoded[i] = _decoder.decode(_data, offset(i), length(i), frameType);
+				}
+			}
+			BufferedImage img = _decoded[frame];
+			_decoded[frame] = null;
+			return img;
+		}
+	}
+
+	private BufferedImage frameAt(int frame) throws IOException {
+		if(_header.getFrameType(frame) == VideoSegmentHeader.REPEAT_FRAME){
+			if(_last == null){
+				throw new IOException("Segment starts with a repeated frame");
+			}
+			return _last;
+		}
+		if(_pending[frame] == null){
+			return decode(frame);
+		}
+		try{
+			return _pending[frame].get();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding frame " + frame);
+		} catch(ExecutionException e){
+			if(e.getCause() instanceof IOException){
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private int length(int frame){
+		return _dataOffset + _header.getFrameOrder()[frame] - offset(frame);
+	}
+
+	private int offset(int frame){
+		return _dataOffset + ((frame == 0) ? 0 : _header.getFrameOrder()[frame - 1]);
+	}
+
+	/**
+	 * Starts decoding the frames inside the prefetch window.
+	 */
+	private void schedule(){
+		if(_executor == null){
+			return;
+		}
+		int end = Math.min(_pending.length, _position + _prefetch + 1);
+		for(int i = _position; i < end; i++){
+			if(_pending[i] != null
+					|| _header.getFrameType(i) == VideoSegmentHeader.REPEAT_FRAME){
+				continue;
+			}
+			final int frame = i;
+			_pending[i] = _executor.submit(new Callable<BufferedImage>() {
+				public BufferedImage call() throws IOException {
+					return decode(frame);
+				}
+			});
+		}
+	}
+}
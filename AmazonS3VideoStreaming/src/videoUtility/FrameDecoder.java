@@ -0,0 +1,34 @@
+package videoUtility;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Turns one encoded frame back into an image. Used by ICCFrameReader, which
+ * picks the decoder from the codec id in the VideoSegmentHeader.
+ * 
+ * @see FrameCodec, FrameEncoder, ICCFrameReader
+ */
+public interface FrameDecoder {
+
+	/**
+	 * Decodes the frame stored in data[offset] to data[offset + length].
+	 * 
+	 * @param data		The video data of the segment.
+	 * @param offset	Where the frame starts.
+	 * @param length	The number of bytes in the frame.
+	 * @param frameType	The frame type stored in the header.
+	 * @return			The decoded frame.
+	 * @throws IOException
+	 */
+	public BufferedImage decode(byte[] data, int offset, int length, byte frameType)
+			throws IOException;
+
+	/**
+	 * Called at the start of every video segment. Decoders that keep state
+	 * between frames must forget it here.
+	 */
+	public void reset();
+}
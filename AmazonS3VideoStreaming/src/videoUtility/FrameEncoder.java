@@ -0,0 +1,46 @@
+package videoUtility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.opencv.core.Mat;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Compresses a single mat and writes the result to an output. Implementations
+ * are used by ICCFrameWriter, and every encoder has a matching FrameDecoder
+ * selected by the codec id stored in the VideoSegmentHeader.
+ * 
+ * @see FrameCodec, FrameDecoder, ICCFrameWriter
+ */
+public interface FrameEncoder {
+
+	/**
+	 * @return	The id written to the video segment header.
+	 * @see FrameCodec
+	 */
+	public byte getCodecId();
+
+	/**
+	 * Encodes the mat and appends the encoded frame to output.
+	 * 
+	 * @param mat		The frame to encode.
+	 * @param output	Where the encoded frame is written.
+	 * @return			The frame type stored in the header, ie.
+	 * 					VideoSegmentHeader.KEY_FRAME.
+	 * @throws IOException
+	 */
+	public byte encode(Mat mat, OutputStream output) throws IOException;
+
+	/**
+	 * Called at the start of every video segment. Encoders that keep state
+	 * between frames must forget it here.
+	 */
+	public void reset();
+
+	/**
+	 * Releases any native memory held by the encoder.
+	 */
+	public void close();
+}
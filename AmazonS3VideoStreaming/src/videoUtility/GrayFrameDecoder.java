@@ -0,0 +1,98 @@
+package videoUtility;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Decodes frames written by GrayFrameEncoder.
+ * 
+ * @see GrayFrameEncoder, FrameCodec
+ */
+public class GrayFrameDecoder implements FrameDecoder {
+
+	private boolean _delta;
+	private Inflater _inflater;
+	private byte[] _previous = new byte[0];
+
+	//-------------------------------------------------------------------------
+	//CONSTRUCTORS
+	//-------------------------------------------------------------------------
+	/**
+	 * @param delta	True if frames hold the deflated difference to the
+	 * 				previous frame.
+	 */
+	public GrayFrameDecoder(boolean delta){
+		_delta = delta;
+		if(_delta){
+			_inflater = new Inflater();
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	public BufferedImage decode(byte[] data, int offset, int length, byte frameType)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+		int width = buffer.getShort() & 0xFFFF,
+			height = buffer.getShort() & 0xFFFF,
+			size = width * height;
+		byte[] pixels = new byte[size];
+		BufferedImage img = new BufferedImage(width, height,
+				BufferedImage.TYPE_BYTE_GRAY);
+
+		if(!_delta){
+			if(buffer.remaining() < size){
+				throw new IOException("Raw frame is truncated");
+			}
+			buffer.get(pixels);
+		} else {
+			inflate(data, buffer.position(), buffer.remaining(), pixels);
+			if(_previous.length != size){
+				_previous = new byte[size];
+			}
+			for(int i = 0; i < size; i++){
+				pixels[i] = (byte)(pixels[i] + _previous[i]);
+			}
+			System.arraycopy(pixels, 0, _previous, 0, size);
+		}
+		img.getRaster().setDataElements(0, 0, width, height, pixels);
+
+		return img;
+	}
+
+	public void reset(){
+		for(int i = 0; i < _previous.length; i++){
+			_previous[i] = 0;
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	private void inflate(byte[] data, int offset, int length, byte[] pixels)
+			throws IOException {
+		_inflater.reset();
+		_inflater.setInput(data, offset, length);
+		try{
+			int read = 0;
+			while(read < pixels.length && !_inflater.finished()){
+				int n = _inflater.inflate(pixels, read, pixels.length - read);
+				if(n == 0 && _inflater.needsInput()){
+					break;
+				}
+				read += n;
+			}
+			if(read != pixels.length){
+				throw new IOException("Delta frame is truncated");
+			}
+		} catch(DataFormatException e){
+			throw new IOException("Delta frame is corrupt: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package videoUtility;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Stores 8-bit grayscale frames without any image compression. Each frame
+ * starts with its width and height (2 bytes each) followed by the pixels.
+ * <p>
+ * In delta mode, the pixels are replaced by the difference to the previous
+ * frame of the segment and then deflated. Static scenes produce long runs of
+ * zeros, which deflate to almost nothing. The first frame of a segment is
+ * compared against a black frame, so every segment can be decoded on its own.
+ * 
+ * @see GrayFrameDecoder, FrameCodec
+ */
+public class GrayFrameEncoder implements FrameEncoder {
+
+	private boolean _delta;
+	private byte[] _deflated = new byte[0];
+	private Deflater _deflater;
+	private byte[] _diff = new byte[0];
+	private boolean _keyFrame = true;
+	private byte[] _pixels = new byte[0];
+	private byte[] _previous = new byte[0];
+
+	//-------------------------------------------------------------------------
+	//CONSTRUCTORS
+	//-------------------------------------------------------------------------
+	/**
+	 * @param delta	True to store the deflated difference between frames.
+	 */
+	public GrayFrameEncoder(boolean delta){
+		_delta = delta;
+		if(_delta){
+			_deflater = new Deflater(Deflater.BEST_SPEED);
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	public void close(){
+		if(_deflater != null){
+			_deflater.end();
+			_deflater = null;
+		}
+	}
+
+	public byte encode(Mat mat, OutputStream output) throws IOException {
+		if(mat.type() != CvType.CV_8UC1){
+			throw new IOException("Raw codec requires an 8-bit grayscale mat");
+		}
+		int width = mat.cols(),
+			height = mat.rows(),
+			size = width * height;
+		DataOutputStream out = new DataOutputStream(output);
+
+		if(_pixels.length != size){
+			_pixels = new byte[size];
+			_previous = new byte[size];
+			_diff = new byte[size];
+		}
+		mat.get(0, 0, _pixels);
+
+		out.writeShort(width);
+		out.writeShort(height);
+		if(!_delta){
+			out.write(_pixels, 0, size);
+			return VideoSegmentHeader.KEY_FRAME;
+		}
+
+		for(int i = 0; i < size; i++){
+			_diff[i] = (byte)(_pixels[i] - _previous[i]);
+		}
+		byte[] swap = _previous;
+		_previous = _pixels;
+		_pixels = swap;
+
+		out.write(_deflated, 0, deflate(size));
+		if(_keyFrame){
+			_keyFrame = false;
+			return VideoSegmentHeader.KEY_FRAME;
+		}
+		return VideoSegmentHeader.DELTA_FRAME;
+	}
+
+	public byte getCodecId(){
+		return _delta ? FrameCodec.DELTA : FrameCodec.RAW;
+	}
+
+	public boolean isDelta(){
+		return _delta;
+	}
+
+	public void reset(){
+		_keyFrame = true;
+		for(int i = 0; i < _previous.length; i++){
+			_previous[i] = 0;
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Deflates the first size bytes of _diff into _deflated.
+	 * 
+	 * @return	The number of deflated bytes.
+	 */
+	private int deflate(int size){
+		if(_deflated.length < size + 64){
+			_deflated = new byte[size + 64];
+		}
+		_deflater.reset();
+		_deflater.setInput(_diff, 0, size);
+		_deflater.finish();
+		int length = 0;
+		while(!_deflater.finished()){
+			if(length == _deflated.length){
+				byte[] bigger = new byte[_deflated.length * 2];
+				System.arraycopy(_deflated, 0, bigger, 0, length);
+				_deflated = bigger;
+			}
+			length += _deflater.deflate(_deflated, length, _deflated.length - length);
+		}
+		return length;
+	}
+}
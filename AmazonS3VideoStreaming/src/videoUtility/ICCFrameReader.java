@@ -10,7 +10,13 @@ package videoUtility;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 
@@ -32,6 +38,141 @@ public class ICCFrameReader {
 		return null;
 	}
 
+	/**
+	 * Decodes every frame of a video segment using the codec named in the
+	 * header.
+	 * 
+	 * @param header	The header of the video segment.
+	 * @param data		The video data (without the header).
+	 * @return			The frames in order.
+	 * @throws IOException
+	 * @see FrameCodec
+	 */
+	public static LinkedList<BufferedImage> readAll(VideoSegmentHeader header,
+			byte[] data) throws IOException{
+		return readAll(header, data, 0);
+	}
+
+	/**
+	 * Decodes every frame of a video segment whose video data starts at
+	 * offset, ie. within the array behind the segment's buffer.
+	 * 
+	 * @param header	The header of the video segment.
+	 * @param data		Holds the video data.
+	 * @param offset	Where the video data starts within data.
+	 * @return			The frames in order.
+	 * @throws IOException
+	 */
+	public static LinkedList<BufferedImage> readAll(VideoSegmentHeader header,
+			byte[] data, int offset) throws IOException{
+		int prev = offset;
+		int[] frameOrder = header.getFrameOrder();
+		FrameDecoder decoder = FrameCodec.getDecoder(header.getCodec());
+		LinkedList<BufferedImage> imageList = new LinkedList<>();
+
+		for(int i = 0; i < frameOrder.length; i++){
+			int next = offset + frameOrder[i];
+			byte frameType = header.getFrameType(i);
+			if(frameType == VideoSegmentHeader.REPEAT_FRAME){
+				if(imageList.isEmpty()){
+					throw new IOException("Segment starts with a repeated frame");
+				}
+				imageList.add(imageList.getLast());
+			} else {
+				imageList.add(decoder.decode(data, prev, next - prev, frameType));
+			}
+			prev = next;
+		}
+
+		return imageList;
+	}
+
+	/**
+	 * Decodes every frame of a video segment, spreading the work over the
+	 * executor. The frame order gives each frame its own slice of data, so
+	 * frames of intra-frame codecs (JPEG, PNG, RAW) are decoded in parallel.
+	 * Other codecs depend on the previous frame and are decoded in order on
+	 * the calling thread. The result is always in frame order.
+	 * 
+	 * @param header	The header of the video segment.
+	 * @param data		The video data (without the header).
+	 * @param executor	Used to decode frames, ie. a ForkJoinPool. When null,
+	 * 					frames are decoded on the calling thread.
+	 * @return			The frames in order.
+	 * @throws IOException
+	 * @see FrameCodec
+	 */
+	public static LinkedList<BufferedImage> readAll(VideoSegmentHeader header,
+			byte[] data, ExecutorService executor) throws IOException{
+		return readAll(header, data, 0, executor);
+	}
+
+	/**
+	 * Decodes every frame of a video segment whose video data starts at
+	 * offset, spreading the work over the executor.
+	 * 
+	 * @see #readAll(VideoSegmentHeader, byte[], ExecutorService)
+	 */
+	public static LinkedList<BufferedImage> readAll(final VideoSegmentHeader header,
+			final byte[] data, int offset, ExecutorService executor) throws IOException{
+		if(executor == null || !FrameCodec.isIntraFrame(header.getCodec())){
+			return readAll(header, data, offset);
+		}
+		int prev = offset;
+		int[] frameOrder = header.getFrameOrder();
+		List<Future<BufferedImage>> frames = new ArrayList<>(frameOrder.length);
+		LinkedList<BufferedImage> imageList = new LinkedList<>();
+		boolean done = false;
+
+		try{
+			for(int i = 0; i < frameOrder.length; i++){
+				final int start = prev,
+						  length = offset + frameOrder[i] - prev;
+				final byte frameType = header.getFrameType(i);
+				if(frameType == VideoSegmentHeader.REPEAT_FRAME){
+					frames.add(null);
+				} else {
+					frames.add(executor.submit(new Callable<BufferedImage>() {
+						public BufferedImage call() throws IOException {
+							//intra-frame decoders keep no state, one per frame is cheap
+							return FrameCodec.getDecoder(header.getCodec())
+									.decode(data, start, length, frameType);
+						}
+					}));
+				}
+				prev = offset + frameOrder[i];
+			}
+
+			for(Future<BufferedImage> frame : frames){
+				if(frame != null){
+					imageList.add(frame.get());
+				} else if(!imageList.isEmpty()){
+					imageList.add(imageList.getLast());
+				} else {
+					throw new IOException("Segment starts with a repeated frame");
+				}
+			}
+			done = true;
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding segment");
+		} catch(ExecutionException e){
+			if(e.getCause() instanceof IOException){
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			//on any failure, the decodes still queued are no longer needed
+			if(!done){
+				for(Future<BufferedImage> frame : frames){
+					if(frame != null) frame.cancel(true);
+				}
+			}
+		}
+
+		return imageList;
+	}
+
 	public static LinkedList<BufferedImage> readAll(int[] frameOrder, byte[] data) throws IOException{
 		int prev = 0;
 		int totalFrames = frameOrder.length;
@@ -37,7 +37,13 @@ import org.opencv.imgcodecs.Imgcodecs;
  * used, the ICCFrameReader class is necessary to read in the subsequent images.
  * <p>
  * By default, the compression type used is JPG. However, this can be modified
- * by using the setCompressionType method.
+ * by using the setCompressionType or setEncoder methods.
+ * <p>
+ * Frames are encoded directly by a FrameEncoder, which appends each encoded
+ * frame to the segment buffer as-is. The older path, which decoded the
+ * imencode output into a BufferedImage and encoded it again with an
+ * ImageWriter, can still be selected with setDirectEncoding(false) for
+ * comparison. That path ignores the encoder and uses the compression type.
  * 
  */
 public class ICCFrameWriter {
@@ -48,7 +54,10 @@ public class ICCFrameWriter {
 	//-------------------------------------------------------------------------
 	
 	private int _currentFrame = 0;
+	private boolean _directEncoding = true;
+	private FrameEncoder _encoder = FrameCodec.getEncoder(FrameCodec.JPEG);
 	private int[] _frames;
+	private byte[] _frameTypes;
 	private ImageWriter _IW;
 	private Mat _mat;
 	private ByteArrayOutputStream _output;
@@ -99,6 +108,7 @@ public class ICCFrameWriter {
 			_mat.release();
 			_mat = null;
 		}
+		_encoder.close();
 	}
 
 	/**
@@ -115,7 +125,8 @@ public class ICCFrameWriter {
 	 * @throws IOException 
 	 */
 	public void reset() throws IOException{
-		setFrames(_frames.length);
+		_currentFrame = 0;//frame arrays are overwritten, not reallocated
+		_encoder.reset();
 //			_IW.dispose();
 		_output.reset();
 //			_IW = getImageWriter();
@@ -142,8 +153,13 @@ public class ICCFrameWriter {
 		assert(_frames != null);
 		
 		//write image to output
-		BufferedImage img = convertToBufferedImage();
-		_IW.write(img);
+		byte frameType = VideoSegmentHeader.KEY_FRAME;
+		if(_directEncoding){
+			frameType = _encoder.encode(_mat, _output);
+		} else {
+			BufferedImage img = convertToBufferedImage();
+			_IW.write(img);
+		}
 		
 //			System.out.println("CURRENT FRAME: " + _currentFrame + "\nFRAMELENGTH: " + _frames.length
 //					+ "\nOUTPUT SIZE: " + _output.size());
@@ -153,6 +169,48 @@ public class ICCFrameWriter {
 			System.out.println("Auto reset..");
 			this.reset();
 		}
+		_frameTypes[_currentFrame] = frameType;
+		_frames[_currentFrame++] = _output.size();
+	}
+	
+	/**
+	 * Appends a frame that was already encoded, ie. by an EncodingPipeline
+	 * worker. Repeated frames have no data.
+	 * 
+	 * @param data		The encoded frame.
+	 * @param length	The number of valid bytes in data.
+	 * @param frameType	The type stored in the header.
+	 * @throws IOException if the first frame of a segment is a repeat.
+	 */
+	public void writeFrame(byte[] data, int length, byte frameType) throws IOException{
+		if(_currentFrame >= _frames.length){
+			System.out.println("Auto reset..");
+			this.reset();
+		}
+		if(frameType == VideoSegmentHeader.REPEAT_FRAME && _currentFrame == 0){
+			throw new IOException("First frame of a segment cannot be repeated");
+		}
+		if(length > 0){
+			_output.write(data, 0, length);
+		}
+		_frameTypes[_currentFrame] = frameType;
+		_frames[_currentFrame++] = _output.size();
+	}
+	
+	/**
+	 * Records a frame that repeats the previous one. Nothing is encoded or
+	 * written to the output; the frame only takes up its slot in the header.
+	 * The first frame of a segment cannot be repeated.
+	 * 
+	 * @throws IOException
+	 * @see VideoSegmentHeader
+	 */
+	public void writeRepeat() throws IOException{
+		if(_currentFrame == 0 || _currentFrame >= _frames.length){
+			write();
+			return;
+		}
+		_frameTypes[_currentFrame] = VideoSegmentHeader.REPEAT_FRAME;
 		_frames[_currentFrame++] = _output.size();
 	}
 	
@@ -160,6 +218,25 @@ public class ICCFrameWriter {
 	//GET METHODS
 	//-------------------------------------------------------------------------
 	
+	/**
+	 * @return	The id of the codec used for every frame.
+	 * @see FrameCodec
+	 */
+	public byte getCodecId(){
+		return _encoder.getCodecId();
+	}
+	
+	public FrameEncoder getEncoder(){
+		return _encoder;
+	}
+	
+	/**
+	 * @return	True if frames are appended straight from the encoder.
+	 */
+	public boolean isDirectEncoding(){
+		return _directEncoding;
+	}
+
 	/**
 	 * @return	Returns the index positions of each frame.
 	 */
@@ -167,14 +244,23 @@ public class ICCFrameWriter {
 		return _frames;
 	}
 	
+	/**
+	 * @return	Returns the type of each frame (key or delta).
+	 * @see VideoSegmentHeader
+	 */
+	public byte[] getFrameTypes(){
+		return _frameTypes;
+	}
+	
 	//-------------------------------------------------------------------------
 	//SET METHODS
 	//-------------------------------------------------------------------------
 	
 	/**
 	 * Sets the compression to be used by ImageWriter. The format expects
-	 * lowercase characters preceded by a dot, ie. ".jpeg", ".png", ".gif".
-	 * By default, this class uses ".jpg".
+	 * lowercase characters preceded by a dot, ie. ".jpeg", ".png".
+	 * By default, this class uses ".jpg". The matching FrameEncoder is
+	 * selected using its default quality.
 	 * 
 	 * @param extension	The extension type used for compression.
 	 * @throws IOException 
@@ -183,6 +269,9 @@ public class ICCFrameWriter {
 	 */
 	public void setCompressionType(String extension) throws NoSuchElementException,
 			IOException{
+		FrameEncoder encoder = FrameCodec.getEncoder(FrameCodec.parse(extension));
+		_encoder.close();
+		_encoder = encoder;
 		_extension = extension;
 		if(_IW != null){
 			try{
@@ -193,6 +282,32 @@ public class ICCFrameWriter {
 		}
 	}
 	
+	/**
+	 * Sets the encoder used for every frame. The previous encoder is closed.
+	 * The codec can be changed between segments, but not within one.
+	 * 
+	 * @param encoder	The encoder used by write.
+	 * @see FrameCodec
+	 */
+	public void setEncoder(FrameEncoder encoder){
+		if(_encoder != encoder){
+			_encoder.close();
+		}
+		_encoder = encoder;
+	}
+	
+	/**
+	 * Chooses how each frame is encoded. When true (default), the bytes
+	 * produced by the FrameEncoder are appended directly to the output.
+	 * When false, the imencode output is decoded and encoded again through
+	 * ImageWriter (two encodes and a decode per frame).
+	 * 
+	 * @param direct	True to append imencode output directly.
+	 */
+	public void setDirectEncoding(boolean direct){
+		_directEncoding = direct;
+	}
+	
 	/**
 	 * Sets the output used for writing the compressed image.
 	 * 
@@ -236,6 +351,7 @@ public class ICCFrameWriter {
 	 */
 	public void setFrames(int totalFrames){
 		_frames = new int[totalFrames];
+		_frameTypes = new byte[totalFrames];
 		_currentFrame = 0;
 	}
 	
@@ -251,7 +367,6 @@ public class ICCFrameWriter {
 	 */
 	private BufferedImage convertToBufferedImage() throws IOException {
 		MatOfByte matBuffer = new MatOfByte();
-		System.out.println("Old: "+(_mat.total() * _mat.elemSize()));
 		Imgcodecs.imencode(_extension, _mat, matBuffer);
 		InputStream inStream = new ByteArrayInputStream(matBuffer.toArray());
 		BufferedImage img = ImageIO.read(inStream);
@@ -0,0 +1,26 @@
+package videoUtility;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Decodes frames stored in any format ImageIO can read (JPEG and PNG).
+ * 
+ * @see FrameCodec
+ */
+public class ImageIOFrameDecoder implements FrameDecoder {
+
+	public BufferedImage decode(byte[] data, int offset, int length, byte frameType)
+			throws IOException {
+		return ImageIO.read(new ByteArrayInputStream(data, offset, length));
+	}
+
+	public void reset(){
+		//every frame is independent
+	}
+}
@@ -0,0 +1,74 @@
+package videoUtility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Base class for encoders backed by Imgcodecs.imencode. The encoded bytes are
+ * appended straight to the output; the MatOfByte and byte array are reused
+ * between frames.
+ * 
+ * @see JPEGFrameEncoder, PNGFrameEncoder
+ */
+public abstract class ImencodeFrameEncoder implements FrameEncoder {
+
+	private byte[] _encoded = new byte[0];
+	private String _extension;
+	private MatOfByte _matBuffer;
+	private MatOfInt _params;
+
+	//-------------------------------------------------------------------------
+	//CONSTRUCTORS
+	//-------------------------------------------------------------------------
+	/**
+	 * @param extension	The extension understood by imencode, ie. ".jpg".
+	 * @param params	Pairs of Imgcodecs.IMWRITE_* flags and values.
+	 */
+	protected ImencodeFrameEncoder(String extension, int... params){
+		_extension = extension;
+		_matBuffer = new MatOfByte();
+		_params = new MatOfInt(params);
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	public void close(){
+		if(_matBuffer != null){
+			_matBuffer.release();
+			_matBuffer = null;
+		}
+		if(_params != null){
+			_params.release();
+			_params = null;
+		}
+	}
+
+	public byte encode(Mat mat, OutputStream output) throws IOException {
+		if(!Imgcodecs.imencode(_extension, mat, _matBuffer, _params)){
+			throw new IOException("Unable to encode frame as " + _extension);
+		}
+		int length = (int)(_matBuffer.total() * _matBuffer.elemSize());
+		if(_encoded.length < length){
+			_encoded = new byte[length];
+		}
+		_matBuffer.get(0, 0, _encoded);
+		output.write(_encoded, 0, length);
+		return VideoSegmentHeader.KEY_FRAME;
+	}
+
+	public String getExtension(){
+		return _extension;
+	}
+
+	public void reset(){
+		//every frame is independent
+	}
+}
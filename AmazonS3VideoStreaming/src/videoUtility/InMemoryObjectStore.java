@@ -0,0 +1,300 @@
+package videoUtility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Ryan Babcock
+ *
+ * An ObjectStore kept in memory, for running the sender and the receiver in
+ * one JVM. Every request waits for the latency plus the time its bytes take
+ * at the given bandwidth, and then fails at the given error rate, so uploads
+ * and downloads can be measured against a network of known shape. Bandwidth
+ * applies to each request on its own, like one connection per request.
+ * <p>
+ * shared() returns one store for the whole JVM, so an ICCRunner and a
+ * VideoPlayer started in the same process see the same objects.
+ */
+public class InMemoryObjectStore implements ObjectStore {
+
+	private static final InMemoryObjectStore SHARED = new InMemoryObjectStore();
+
+	/*
+	 * @param _bandwidth	Bytes per second for each request, 0 is unlimited.
+	 * @param _errorRate	Chance from 0 to 1 that a request fails.
+	 * @param _latency		Milliseconds added to every request.
+	 */
+	private volatile long 		_bandwidth = 0;
+	private volatile double 	_errorRate = 0;
+	private volatile long 		_latency = 0;
+	private ConcurrentSkipListMap<String, StoredObject> _objects = new ConcurrentSkipListMap<>();
+	private Random 				_random = new Random();
+	private AtomicLong 			_versions = new AtomicLong();
+
+	//-------------------------------------------------------------------------
+	//PUBLIC STATIC METHODS
+	//-------------------------------------------------------------------------
+	public static InMemoryObjectStore shared(){
+		return SHARED;
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	public Transfer putAsync(final String key, final InputStream data, final long length,
+			final Map<String, String> metadata, PutListener listener) throws IOException {
+		return new PooledPut(listener) {
+			private byte[] _object;
+
+			protected void transfer() throws IOException {
+				simulate(length);
+				_object = readAll(data, length);
+			}
+
+			protected void publish(){
+				store(key, _object, metadata);
+			}
+		}.start();
+	}
+
+	public void put(String key, byte[] data) throws IOException {
+		simulate(data.length);
+		store(key, data.clone(), null);
+	}
+
+	public byte[] get(String key) throws IOException {
+		StoredObject object = _objects.get(key);
+		simulate(object == null ? 0 : object.data.length);
+		if(object == null){
+			throw new FileNotFoundException(key);
+		}
+		return object.data.clone();
+	}
+
+	public long getRange(String key, long offset, byte[] buffer, int start, int length)
+			throws IOException {
+		StoredObject object = _objects.get(key);
+		int count = object == null ? 0
+				: (int)Math.max(0, Math.min(length, object.data.length - offset));
+		simulate(count);
+		if(object == null){
+			throw new FileNotFoundException(key);
+		}
+		System.arraycopy(object.data, (int)offset, buffer, start, count);
+		return object.data.length;
+	}
+
+	/**
+	 * The latency is paid when the range is opened; its bytes then arrive
+	 * at the bandwidth while they are read.
+	 */
+	public RangeInput openRange(String key, long offset, int length) throws IOException {
+		StoredObject object = _objects.get(key);
+		simulate(0);
+		if(object == null){
+			throw new FileNotFoundException(key);
+		}
+		int start = (int)Math.min(offset, object.data.length);
+		int count = Math.min(length, object.data.length - start);
+		return new RangeInput(new ThrottledInputStream(
+				new ByteArrayInputStream(object.data, start, count)), object.data.length);
+	}
+
+	/**
+	 * An unchanged object costs only the latency.
+	 */
+	public TaggedObject getIfChanged(String key, String etag) throws IOException {
+		StoredObject object = _objects.get(key);
+		boolean changed = object != null && !object.etag.equals(etag);
+		simulate(changed ? object.data.length : 0);
+		if(object == null){
+			throw new FileNotFoundException(key);
+		}
+		return changed ? new TaggedObject(object.data.clone(), object.etag) : null;
+	}
+
+	/**
+	 * @return	The user metadata stored with key, or null if there is none.
+	 */
+	public Map<String, String> getMetadata(String key){
+		StoredObject object = _objects.get(key);
+		return object == null ? null : object.metadata;
+	}
+
+	public List<String> list(String prefix) throws IOException {
+		simulate(0);
+		List<String> keys = new ArrayList<>();
+		for(String key : _objects.tailMap(prefix).keySet()){
+			if(!key.startsWith(prefix)) break;
+			keys.add(key);
+		}
+		return keys;
+	}
+
+	public void delete(String key) throws IOException {
+		simulate(0);
+		_objects.remove(key);
+	}
+
+	/**
+	 * Costs one request, like a DeleteObjects request to S3.
+	 */
+	public List<String> deleteAll(List<String> keys) throws IOException {
+		simulate(0);
+		for(String key : keys){
+			_objects.remove(key);
+		}
+		return new ArrayList<>();
+	}
+
+	public boolean exists(String key) throws IOException {
+		simulate(0);
+		return _objects.containsKey(key);
+	}
+
+	/**
+	 * Objects are kept, so the other side of a shared store can still read
+	 * them.
+	 */
+	public void close(){
+		//nothing to free
+	}
+
+	/**
+	 * Removes every object.
+	 */
+	public void clear(){
+		_objects.clear();
+	}
+
+	public String toString(){
+		return "memory";
+	}
+
+	//-------------------------------------------------------------------------
+	//SET METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @param bytesPerSecond	Throughput of each request, 0 for unlimited.
+	 */
+	public InMemoryObjectStore setBandwidth(long bytesPerSecond){
+		_bandwidth = Math.max(0, bytesPerSecond);
+		return this;
+	}
+	/**
+	 * @param rate	Chance from 0 to 1 that a request fails.
+	 */
+	public InMemoryObjectStore setErrorRate(double rate){
+		_errorRate = Math.min(1, Math.max(0, rate));
+		return this;
+	}
+	/**
+	 * @param millis	Time added to every request.
+	 */
+	public InMemoryObjectStore setLatency(long millis){
+		_latency = Math.max(0, millis);
+		return this;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	private static byte[] readAll(InputStream in, long length) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int)Math.max(0, length));
+		byte[] buffer = new byte[8192];
+		int read;
+		while((read = in.read(buffer)) > 0){
+			out.write(buffer, 0, read);
+		}
+		if(out.size() != length){
+			throw new IOException("Expected " + length + " bytes but read " + out.size());
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Waits as long as the request would take, then fails it at the error
+	 * rate.
+	 * @param bytes		Bytes the request carries.
+	 */
+	private void simulate(long bytes) throws IOException {
+		long bandwidth = _bandwidth;
+		long millis = _latency + (bandwidth > 0 ? bytes*1000/bandwidth : 0);
+		if(millis > 0){
+			try{
+				Thread.sleep(millis);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Request interrupted");
+			}
+		}
+		double errorRate = _errorRate;
+		if(errorRate > 0){
+			synchronized(_random){
+				if(_random.nextDouble() < errorRate){
+					throw new IOException("Injected failure");
+				}
+			}
+		}
+	}
+
+	private void store(String key, byte[] data, Map<String, String> metadata){
+		StoredObject object = new StoredObject();
+		object.data = data;
+		object.etag = Long.toHexString(_versions.incrementAndGet());
+		object.metadata = metadata == null
+				? new HashMap<String, String>() : new HashMap<>(metadata);
+		_objects.put(key, object);
+	}
+
+	/**
+	 * Hands out bytes no faster than the bandwidth allows.
+	 */
+	private class ThrottledInputStream extends FilterInputStream {
+		private static final int CHUNK = 16 * 1024;
+
+		ThrottledInputStream(InputStream in){
+			super(in);
+		}
+
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			long bandwidth = _bandwidth;
+			int count = super.read(buffer, offset, bandwidth > 0 ? Math.min(length, CHUNK) : length);
+			if(count > 0 && bandwidth > 0){
+				try{
+					Thread.sleep(count*1000L/bandwidth);
+				} catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Read interrupted");
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * One stored object; never changed after it is stored.
+	 */
+	private static class StoredObject {
+		byte[] 				data;
+		String 				etag;
+		Map<String, String> metadata;
+	}
+}
@@ -0,0 +1,31 @@
+package videoUtility;
+
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Encodes each frame as a JPEG image with an explicit quality.
+ * 
+ * @see FrameCodec
+ */
+public class JPEGFrameEncoder extends ImencodeFrameEncoder {
+
+	private int _quality;
+
+	/**
+	 * @param quality	JPEG quality, 0 (smallest) to 100 (best).
+	 */
+	public JPEGFrameEncoder(int quality){
+		super(".jpg", Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+		_quality = quality;
+	}
+
+	public byte getCodecId(){
+		return FrameCodec.JPEG;
+	}
+
+	public int getQuality(){
+		return _quality;
+	}
+}
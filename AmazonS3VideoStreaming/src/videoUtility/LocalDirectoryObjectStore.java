@@ -0,0 +1,247 @@
+package videoUtility;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Ryan Babcock
+ *
+ * An ObjectStore that keeps each object as a file under one directory, so
+ * a sender and a receiver on the same machine can stream through the disk.
+ * A '/' in a key becomes a sub directory. Objects are written to a temporary
+ * file and then moved into place, so a reader never sees half an object.
+ * User metadata is not kept.
+ */
+public class LocalDirectoryObjectStore implements ObjectStore {
+
+	private static final String TEMP_SUFFIX = ".part";
+
+	private Path _root;
+
+	/**
+	 * @param directory		Created if it does not exist.
+	 */
+	public LocalDirectoryObjectStore(String directory) throws IOException {
+		_root = Paths.get(directory).toAbsolutePath();
+		Files.createDirectories(_root);
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	public Transfer putAsync(final String key, final InputStream data, final long length,
+			Map<String, String> metadata, PutListener listener) throws IOException {
+		final Path file = resolve(key);
+		return new PooledPut(listener) {
+			private Path _temp;
+
+			protected void transfer() throws IOException {
+				_temp = tempFile(file);
+				write(_temp, data, length);
+			}
+
+			protected void publish() throws IOException {
+				Files.move(_temp, file, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+
+			protected void cleanUp(){
+				try{
+					if(_temp != null) Files.deleteIfExists(_temp);
+				} catch(IOException e){
+					//left for clean()
+				}
+			}
+		}.start();
+	}
+
+	public void put(String key, byte[] data) throws IOException {
+		Path file = resolve(key);
+		Path temp = tempFile(file);
+		Files.write(temp, data);
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public byte[] get(String key) throws IOException {
+		try{
+			return Files.readAllBytes(resolve(key));
+		} catch(NoSuchFileException e){
+			throw new FileNotFoundException(key);
+		}
+	}
+
+	public long getRange(String key, long offset, byte[] buffer, int start, int length)
+			throws IOException {
+		try(FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)){
+			long size = channel.size();
+			ByteBuffer target = ByteBuffer.wrap(buffer, start,
+					(int)Math.max(0, Math.min(length, size - offset)));
+			while(target.hasRemaining()){
+				if(channel.read(target, offset + target.position() - start) < 0) break;
+			}
+			return size;
+		} catch(NoSuchFileException e){
+			throw new FileNotFoundException(key);
+		}
+	}
+
+	/**
+	 * The disk is fast enough that the range is read at once.
+	 */
+	public RangeInput openRange(String key, long offset, int length) throws IOException {
+		byte[] data = new byte[length];
+		long size = getRange(key, offset, data, 0, length);
+		int read = (int)Math.max(0, Math.min(length, size - offset));
+		return new RangeInput(new ByteArrayInputStream(data, 0, read), size);
+	}
+
+	/**
+	 * The tag is made from the modification time and size of the file, which
+	 * change whenever a put moves a new file into place.
+	 */
+	public TaggedObject getIfChanged(String key, String etag) throws IOException {
+		Path file = resolve(key);
+		try{
+			String current = tag(file);
+			if(current.equals(etag)){
+				return null;
+			}
+			byte[] data = Files.readAllBytes(file);
+			//the file may have been replaced between the two reads
+			return new TaggedObject(data, current.equals(tag(file)) ? current : null);
+		} catch(NoSuchFileException e){
+			throw new FileNotFoundException(key);
+		}
+	}
+
+	public List<String> list(String prefix) throws IOException {
+		final List<String> keys = new ArrayList<>();
+		//only walk the directory the prefix points into
+		int slash = prefix.lastIndexOf('/');
+		Path start = slash < 0 ? _root : resolve(prefix.substring(0, slash));
+		if(!Files.isDirectory(start)){
+			return keys;
+		}
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs){
+				String key = toKey(file);
+				if(!key.endsWith(TEMP_SUFFIX)){
+					keys.add(key);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		List<String> matches = new ArrayList<>();
+		for(String key : keys){
+			if(key.startsWith(prefix)) matches.add(key);
+		}
+		return matches;
+	}
+
+	public void delete(String key) throws IOException {
+		Files.deleteIfExists(resolve(key));
+	}
+
+	public List<String> deleteAll(List<String> keys) throws IOException {
+		List<String> failed = new ArrayList<>();
+		for(String key : keys){
+			try{
+				delete(key);
+			} catch(IOException e){
+				failed.add(key);
+			}
+		}
+		return failed;
+	}
+
+	public boolean exists(String key) throws IOException {
+		return Files.isRegularFile(resolve(key));
+	}
+
+	public void close(){
+		//every call opens and closes its own files
+	}
+
+	/**
+	 * Removes files left behind by puts that never finished.
+	 */
+	public void clean() throws IOException {
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(_root, "*" + TEMP_SUFFIX)){
+			for(Path file : files){
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	public String toString(){
+		return "local:" + _root;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	private Path resolve(String key) throws IOException {
+		Path file = _root.resolve(key).normalize();
+		if(!file.startsWith(_root)){
+			throw new IOException("Key is outside the store: " + key);
+		}
+		return file;
+	}
+
+	private static String tag(Path file) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		return Long.toHexString(attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS))
+				+ "-" + Long.toHexString(attrs.size())
+				+ "-" + attrs.fileKey();
+	}
+
+	private Path tempFile(Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		return Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_SUFFIX);
+	}
+
+	private String toKey(Path file){
+		return _root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+	}
+
+	/**
+	 * Copies length bytes from data into a temporary file.
+	 */
+	private static void write(Path temp, InputStream data, long length) throws IOException {
+		long written = 0;
+		try(OutputStream out = Files.newOutputStream(temp)){
+			byte[] buffer = new byte[8192];
+			int read;
+			while((read = data.read(buffer)) > 0){
+				out.write(buffer, 0, read);
+				written += read;
+				if(Thread.currentThread().isInterrupted()){
+					throw new IOException("Put aborted");
+				}
+			}
+		}
+		if(written != length){
+			throw new IOException("Expected " + length + " bytes but read " + written);
+		}
+	}
+}
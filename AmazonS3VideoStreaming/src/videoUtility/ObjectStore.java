@@ -0,0 +1,161 @@
+package videoUtility;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Ryan Babcock
+ *
+ * The few bucket operations S3Uploader and S3Downloader need. S3ObjectStore
+ * talks to Amazon S3; LocalDirectoryObjectStore and InMemoryObjectStore let
+ * the sender and receiver run on one machine, ie. for benchmarks, with no
+ * AWS account. A missing key is reported with FileNotFoundException; any
+ * other failure with IOException.
+ *
+ * @see S3ObjectStore, LocalDirectoryObjectStore, InMemoryObjectStore
+ */
+public interface ObjectStore {
+
+	/**
+	 * Told once how an asynchronous put ended.
+	 */
+	public interface PutListener {
+		/**
+		 * Called on the thread that ended the put.
+		 * @param success	True if the object was stored.
+		 */
+		void putFinished(boolean success);
+	}
+
+	/**
+	 * An object together with the tag of its current version.
+	 */
+	public static class TaggedObject {
+		private byte[] _data;
+		private String _etag;
+
+		public TaggedObject(byte[] data, String etag){
+			_data = data;
+			_etag = etag;
+		}
+
+		public byte[] getData(){
+			return _data;
+		}
+		/**
+		 * @return	Changes whenever the object is overwritten.
+		 */
+		public String getETag(){
+			return _etag;
+		}
+	}
+
+	/**
+	 * A stream over part of an object that also knows the length of the
+	 * whole object.
+	 */
+	public static class RangeInput extends FilterInputStream {
+		private long _length;
+
+		public RangeInput(InputStream in, long length){
+			super(in);
+			_length = length;
+		}
+
+		/**
+		 * @return	The length of the whole object, not just the range.
+		 */
+		public long getLength(){
+			return _length;
+		}
+	}
+
+	/**
+	 * A put that is in progress.
+	 */
+	public interface Transfer {
+		/**
+		 * Stops the put. Its listener is told it failed once the stream is
+		 * no longer read, so the caller may then reuse what backs it, and
+		 * an object not stored by then never is.
+		 */
+		void abort();
+	}
+
+	/**
+	 * Starts storing an object and returns at once. The stream is read on
+	 * another thread and must stay open until the listener is called.
+	 * @param metadata	User metadata stored with the object, may be null.
+	 * @throws IOException if the put could not be started.
+	 */
+	Transfer putAsync(String key, InputStream data, long length,
+			Map<String, String> metadata, PutListener listener) throws IOException;
+
+	/**
+	 * Stores a small object and waits for it.
+	 */
+	void put(String key, byte[] data) throws IOException;
+
+	/**
+	 * @return	The whole object.
+	 * @throws FileNotFoundException if there is no such key.
+	 */
+	byte[] get(String key) throws IOException;
+
+	/**
+	 * Reads part of an object, ie. to download a large one in pieces.
+	 * @param offset	The first byte of the object to read.
+	 * @param buffer	Receives up to length bytes, starting at start.
+	 * @return			The length of the whole object.
+	 * @throws FileNotFoundException if there is no such key.
+	 */
+	long getRange(String key, long offset, byte[] buffer, int start, int length)
+			throws IOException;
+
+	/**
+	 * Opens part of an object to be read as it arrives, ie. to use the
+	 * start of an object before the rest has been downloaded.
+	 * @param offset	The first byte of the object to read.
+	 * @param length	The most bytes to read.
+	 * @throws FileNotFoundException if there is no such key.
+	 */
+	RangeInput openRange(String key, long offset, int length) throws IOException;
+
+	/**
+	 * Gets an object only if it changed, so polling a small object that is
+	 * overwritten in place costs one cheap request.
+	 * @param etag	The tag of the version the caller already has, or null.
+	 * @return		The object, or null if its tag still equals etag.
+	 * @throws FileNotFoundException if there is no such key.
+	 */
+	TaggedObject getIfChanged(String key, String etag) throws IOException;
+
+	/**
+	 * @return	Every key starting with prefix, in no particular order.
+	 */
+	List<String> list(String prefix) throws IOException;
+
+	/**
+	 * Deleting a key that does not exist is not an error.
+	 */
+	void delete(String key) throws IOException;
+
+	/**
+	 * Deletes several keys with as few requests as the store allows.
+	 * Missing keys are not an error.
+	 * @return	The keys that could not be deleted.
+	 * @throws IOException if the request failed as a whole.
+	 */
+	List<String> deleteAll(List<String> keys) throws IOException;
+
+	boolean exists(String key) throws IOException;
+
+	/**
+	 * Stops transfers in progress and frees any connections.
+	 */
+	void close();
+}
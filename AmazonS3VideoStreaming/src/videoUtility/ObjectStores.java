@@ -0,0 +1,76 @@
+package videoUtility;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Opens an ObjectStore from a short description, ie. the value of -Dstore:
+ * <ul>
+ * <li>s3 or s3:bucket - Amazon S3, FileData.BUCKET by default</li>
+ * <li>local:directory - files under a directory</li>
+ * <li>memory or memory:latency,bandwidth,errorRate - the shared
+ * InMemoryObjectStore, in milliseconds, bytes per second, and 0 to 1</li>
+ * </ul>
+ */
+public class ObjectStores {
+
+	private static ExecutorService _putPool;
+
+	private ObjectStores(){}
+
+	/**
+	 * @param spec	Which store to open; null opens the default S3 bucket.
+	 * @throws IOException if the store cannot be opened.
+	 */
+	public static ObjectStore open(String spec) throws IOException {
+		if(spec == null || spec.equals("s3")){
+			return new S3ObjectStore(FileData.BUCKET);
+		}
+		int colon = spec.indexOf(':');
+		String type = colon < 0 ? spec : spec.substring(0, colon);
+		String arg = colon < 0 ? "" : spec.substring(colon + 1);
+
+		switch(type){
+		case "s3":
+			return new S3ObjectStore(arg.isEmpty() ? FileData.BUCKET : arg);
+		case "local":
+			return new LocalDirectoryObjectStore(arg.isEmpty() ? FileData.VIDEO_FOLDER : arg);
+		case "memory":
+			InMemoryObjectStore store = InMemoryObjectStore.shared();
+			if(!arg.isEmpty()){
+				String[] shape = arg.split(",");
+				try{
+					store.setLatency(Long.parseLong(shape[0].trim()));
+					if(shape.length > 1) store.setBandwidth(Long.parseLong(shape[1].trim()));
+					if(shape.length > 2) store.setErrorRate(Double.parseDouble(shape[2].trim()));
+				} catch(NumberFormatException e){
+					throw new IOException("Bad memory store: " + spec, e);
+				}
+			}
+			return store;
+		default:
+			throw new IOException("Unknown store: " + spec);
+		}
+	}
+
+	/**
+	 * Runs the puts of the local stores. Its threads are daemons, so
+	 * unfinished puts never keep the application open.
+	 */
+	static synchronized ExecutorService getPutPool(){
+		if(_putPool == null){
+			_putPool = Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable r){
+					Thread thread = new Thread(r, "Object Store Put");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _putPool;
+	}
+}
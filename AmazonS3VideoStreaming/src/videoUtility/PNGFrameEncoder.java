@@ -0,0 +1,31 @@
+package videoUtility;
+
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * Encodes each frame as a lossless PNG image.
+ * 
+ * @see FrameCodec
+ */
+public class PNGFrameEncoder extends ImencodeFrameEncoder {
+
+	private int _compression;
+
+	/**
+	 * @param compression	PNG compression level, 0 (fastest) to 9 (smallest).
+	 */
+	public PNGFrameEncoder(int compression){
+		super(".png", Imgcodecs.IMWRITE_PNG_COMPRESSION, compression);
+		_compression = compression;
+	}
+
+	public byte getCodecId(){
+		return FrameCodec.PNG;
+	}
+
+	public int getCompression(){
+		return _compression;
+	}
+}
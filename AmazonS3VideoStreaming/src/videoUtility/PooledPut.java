@@ -0,0 +1,99 @@
+package videoUtility;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * @author Ryan Babcock
+ *
+ * A put run on the put pool of ObjectStores, for the stores that do the
+ * work themselves. The listener is only told how the put ended once its
+ * worker has stopped reading the stream, so the caller may then reuse the
+ * buffer behind it. The object is published while holding the same lock
+ * abort takes, so an aborted put never publishes.
+ *
+ * @see InMemoryObjectStore, LocalDirectoryObjectStore
+ */
+abstract class PooledPut implements ObjectStore.Transfer, Runnable {
+
+	private boolean 				_aborted = false;
+	private volatile Future<?> 		_future;
+	private ObjectStore.PutListener _listener;
+	private boolean 				_started = false;
+
+	PooledPut(ObjectStore.PutListener listener){
+		_listener = listener;
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Submits the put to the pool.
+	 */
+	ObjectStore.Transfer start(){
+		_future = ObjectStores.getPutPool().submit(this);
+		return this;
+	}
+
+	/**
+	 * Stops the put. A put that has not started is reported failed here;
+	 * one that has is interrupted, and its worker reports it when it stops.
+	 */
+	public void abort(){
+		boolean started;
+		synchronized(this){
+			if(_aborted) return;
+			_aborted = true;
+			started = _started;
+		}
+		if(started){
+			_future.cancel(true);
+		} else{
+			_future.cancel(false);
+			_listener.putFinished(false);
+		}
+	}
+
+	public void run(){
+		synchronized(this){
+			if(_aborted) return;//reported by abort
+			_started = true;
+		}
+		boolean success = false;
+		try{
+			transfer();
+			synchronized(this){
+				if(_aborted){
+					throw new IOException("Put aborted");
+				}
+				publish();
+			}
+			success = true;
+		} catch(IOException e){
+			//reported as a failed put
+		} finally{
+			cleanUp();
+			_listener.putFinished(success);
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//PROTECTED METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Reads the whole stream somewhere readers cannot see it yet.
+	 */
+	protected abstract void transfer() throws IOException;
+
+	/**
+	 * Makes the object visible to readers. Not called once aborted.
+	 */
+	protected abstract void publish() throws IOException;
+
+	/**
+	 * Frees whatever transfer left behind, however the put ended.
+	 */
+	protected void cleanUp(){
+	}
+}
@@ -0,0 +1,227 @@
+package videoUtility;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Downloads an object as several byte ranges at once, all written into one
+ * buffer. On a link with high latency a single request is limited by how
+ * much data is in flight, so large segments download faster in parallel.
+ * <p>
+ * The first range is always requested alone. Its answer gives the length of
+ * the whole object, so an object no bigger than one part costs exactly one
+ * request, the same as ObjectStore.get. The rest of a larger object is split
+ * into parts that run on the executor, while the calling thread streams in
+ * the first part.
+ * <p>
+ * A Progress listener is told how many bytes at the start of the object
+ * have arrived, so the start can be used before the rest is downloaded.
+ *
+ * @see ObjectStore
+ */
+public class RangedDownload {
+
+	public static final int DEFAULT_PART_SIZE = 1024 * 1024;
+	private static final int STREAM_CHUNK = 64 * 1024;
+
+	/**
+	 * Follows a download as it arrives. Calls may come from any thread, but
+	 * never at the same time.
+	 */
+	public interface Progress {
+		/**
+		 * Called once the length is known, before any bytes arrive.
+		 * @param data	The buffer the object is being written into.
+		 */
+		void started(byte[] data);
+		/**
+		 * @param bytes	Every byte of data below this has arrived.
+		 */
+		void received(int bytes);
+	}
+
+	private ExecutorService _executor;
+	private int 			_partSize;
+	private ObjectStore 	_store;
+
+	/**
+	 * @param executor	Runs the parts after the first; null downloads every
+	 * 					part on the calling thread.
+	 * @param partSize	Bytes in each range.
+	 */
+	public RangedDownload(ObjectStore store, ExecutorService executor, int partSize){
+		if(partSize < 1){
+			throw new IllegalArgumentException("Part size must be positive");
+		}
+		_store = store;
+		_executor = executor;
+		_partSize = partSize;
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	The whole object.
+	 * @throws FileNotFoundException if there is no such key.
+	 * @throws IOException if any part fails; the others are canceled.
+	 */
+	public byte[] get(String key) throws IOException {
+		return get(key, null);
+	}
+
+	/**
+	 * @param progress	Told as the object arrives, or null.
+	 * @return			The whole object.
+	 * @throws FileNotFoundException if there is no such key.
+	 * @throws IOException if any part fails; the others are canceled.
+	 */
+	public byte[] get(String key, Progress progress) throws IOException {
+		ObjectStore.RangeInput in = _store.openRange(key, 0, _partSize);
+		List<Future<Void>> futures = new ArrayList<>();
+		try{
+			long length = in.getLength();
+			if(length > Integer.MAX_VALUE){
+				throw new IOException("Object too large: " + key);
+			}
+			byte[] data = new byte[(int)length];
+			int first = (int)Math.min(_partSize, length);
+			Tracker tracker = new Tracker(data.length, first, progress);
+			if(progress != null){
+				progress.started(data);
+			}
+
+			List<Part> parts = new ArrayList<>();
+			for(int offset = first; offset < length; offset += _partSize){
+				parts.add(new Part(key, data, offset,
+						(int)Math.min(_partSize, length - offset), tracker));
+			}
+			if(_executor != null){
+				for(Part part : parts){
+					futures.add(_executor.submit(part));
+				}
+			}
+
+			//the first part arrives in order, so it is reported as it is read
+			int read, total = 0;
+			while(total < first){
+				if((read = in.read(data, total, Math.min(STREAM_CHUNK, first - total))) < 0){
+					throw new EOFException("'" + key + "' ended after " + total + " bytes");
+				}
+				total += read;
+				tracker.firstReceived(total);
+			}
+
+			if(_executor == null){
+				for(Part part : parts){
+					part.call();
+				}
+			}
+			for(Future<Void> future : futures){
+				future.get();
+			}
+			return data;
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Download of '" + key + "' interrupted");
+		} catch(ExecutionException e){
+			Throwable cause = e.getCause();
+			throw cause instanceof IOException ? (IOException)cause
+					: new IOException("Download of '" + key + "' failed", cause);
+		} finally {
+			for(Future<Void> future : futures){
+				future.cancel(true);
+			}
+			in.close();
+		}
+	}
+
+	public int getPartSize(){
+		return _partSize;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * One range, written straight into its place in the buffer.
+	 */
+	private class Part implements Callable<Void> {
+		private byte[] 	_data;
+		private String 	_key;
+		private int 	_length;
+		private int 	_offset;
+		private Tracker _tracker;
+
+		Part(String key, byte[] data, int offset, int length, Tracker tracker){
+			_key = key;
+			_data = data;
+			_offset = offset;
+			_length = length;
+			_tracker = tracker;
+		}
+
+		public Void call() throws IOException {
+			long length = _store.getRange(_key, _offset, _data, _offset, _length);
+			if(length != _data.length){
+				//overwritten while it was downloading
+				throw new IOException("'" + _key + "' changed during download");
+			}
+			_tracker.partReceived(_offset);
+			return null;
+		}
+	}
+
+	/**
+	 * Works out how far the object has arrived without a gap. The first part
+	 * grows as it is streamed; the others arrive whole and in any order.
+	 */
+	private class Tracker {
+		private int 		_contiguous = 0;
+		private boolean[] 	_done;
+		private int 		_first;
+		private int 		_firstReceived = 0;
+		private int 		_length;
+		private Progress 	_progress;
+
+		Tracker(int length, int first, Progress progress){
+			_length = length;
+			_first = first;
+			_progress = progress;
+			_done = new boolean[(length - first + _partSize - 1) / _partSize];
+		}
+
+		synchronized void firstReceived(int bytes){
+			_firstReceived = bytes;
+			update();
+		}
+
+		synchronized void partReceived(int offset){
+			_done[(offset - _first) / _partSize] = true;
+			update();
+		}
+
+		private void update(){
+			int contiguous = _firstReceived;
+			if(_firstReceived == _first){
+				for(int i = 0; i < _done.length && _done[i]; i++){
+					contiguous = (int)Math.min(_length, _first + (long)(i + 1) * _partSize);
+				}
+			}
+			if(contiguous > _contiguous){
+				_contiguous = contiguous;
+				if(_progress != null) _progress.received(contiguous);
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package videoUtility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Ryan Babcock
+ *
+ * One version of the video stream, recorded at a fraction of the camera's
+ * resolution and, optionally, its own codec quality. The sender encodes
+ * every segment once per rendition of its ladder and uploads each under its
+ * own key, so the receiver can pick the one its link can carry.
+ * <p>
+ * A ladder is written best first, ie. "full,half,quarter:60". A rendition
+ * is full, half, quarter or a scale (0-1), followed by an optional quality.
+ * The first rendition of the ladder keeps the plain segment keys.
+ *
+ * @see FileData, VideoSegment
+ */
+public class Rendition {
+
+	public static final Rendition FULL = new Rendition("full", 1.0, -1);
+
+	private String 	_name;
+	private int 	_quality;
+	private double 	_scale;
+
+	/**
+	 * @param name		How the rendition is written in a ladder.
+	 * @param scale		Fraction of the camera's width and height.
+	 * @param quality	Codec quality, or -1 for the sender's quality.
+	 */
+	public Rendition(String name, double scale, int quality){
+		if(scale <= 0 || scale > 1){
+			throw new IllegalArgumentException("Scale must be in (0, 1]: " + scale);
+		}
+		_name = name;
+		_scale = scale;
+		_quality = quality;
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	The key of a segment of the rendition at level in a ladder.
+	 */
+	public static String getKey(int level, int index){
+		if(level == 0){
+			return FileData.VIDEO_PREFIX + index + FileData.VIDEO_SUFFIX;
+		}
+		return FileData.VIDEO_PREFIX + FileData.RENDITION_SEPARATOR + level
+				+ FileData.RENDITION_SEPARATOR + index + FileData.VIDEO_SUFFIX;
+	}
+
+	/**
+	 * @return	The key of one part of a segment, when the sender publishes
+	 * 			segments in parts.
+	 * @see VideoSegment#setPart
+	 */
+	public static String getPartKey(int level, int index, int part){
+		String key = getKey(level, index);
+		return key.substring(0, key.length() - FileData.VIDEO_SUFFIX.length())
+				+ FileData.PART_SEPARATOR + part + FileData.VIDEO_SUFFIX;
+	}
+
+	/**
+	 * Reads a ladder written as renditions separated by commas or spaces.
+	 * @return	The renditions, best first.
+	 * @throws IllegalArgumentException if a rendition cannot be read.
+	 */
+	public static List<Rendition> parseLadder(String ladder){
+		List<Rendition> renditions = new ArrayList<>();
+		for(String name : ladder.trim().split("[,\\s]+")){
+			if(!name.isEmpty()){
+				renditions.add(parse(name));
+			}
+		}
+		if(renditions.isEmpty()){
+			renditions.add(FULL);
+		}
+		return Collections.unmodifiableList(renditions);
+	}
+
+	/**
+	 * @param name	ie. "half", "0.75" or "quarter:60".
+	 * @throws IllegalArgumentException if the name cannot be read.
+	 */
+	public static Rendition parse(String name){
+		String[] parts = name.toLowerCase().split(":");
+		int quality = -1;
+		double scale;
+		try{
+			if(parts.length > 2) throw new NumberFormatException();
+			if(parts.length == 2) quality = Integer.parseInt(parts[1]);
+			switch(parts[0]){
+			case "full":	scale = 1.0; break;
+			case "half":	scale = 0.5; break;
+			case "quarter":	scale = 0.25; break;
+			default:		scale = Double.parseDouble(parts[0]);
+			}
+		} catch(NumberFormatException e){
+			throw new IllegalArgumentException("Unknown rendition: " + name);
+		}
+		return new Rendition(name.toLowerCase(), scale, quality);
+	}
+
+	/**
+	 * @return	A ladder that parseLadder reads back.
+	 */
+	public static String toString(List<Rendition> ladder){
+		StringBuilder sb = new StringBuilder();
+		for(Rendition rendition : ladder){
+			if(sb.length() > 0) sb.append(',');
+			sb.append(rendition);
+		}
+		return sb.toString();
+	}
+
+	public String toString(){
+		return _name;
+	}
+
+	//-------------------------------------------------------------------------
+	//GET METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Codec quality, or -1 for the sender's quality.
+	 */
+	public int getQuality(){
+		return _quality;
+	}
+	public double getScale(){
+		return _scale;
+	}
+}
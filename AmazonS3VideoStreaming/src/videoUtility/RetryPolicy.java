@@ -0,0 +1,60 @@
+package videoUtility;
+
+import java.util.Random;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Decides how many times a failed S3 operation is tried and how long to wait
+ * in between. The wait doubles after every attempt, up to a maximum, and a
+ * random part is added so that retries from several threads spread out.
+ */
+public class RetryPolicy {
+
+	public static final RetryPolicy DEFAULT = new RetryPolicy(5, 100, 2000);
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+	private long 	_baseDelay;
+	private int 	_maxAttempts;
+	private long 	_maxDelay;
+	private Random 	_random = new Random();
+
+	/**
+	 * @param maxAttempts	Attempts in total, including the first.
+	 * @param baseDelay		Milliseconds to wait after the first failure.
+	 * @param maxDelay		The longest wait in milliseconds.
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay){
+		_maxAttempts = Math.max(1, maxAttempts);
+		_baseDelay = baseDelay;
+		_maxDelay = maxDelay;
+	}
+
+	/**
+	 * @param attempt	The number of attempts made so far.
+	 * @return			True if another attempt is allowed.
+	 */
+	public boolean canRetry(int attempt){
+		return attempt < _maxAttempts;
+	}
+
+	/**
+	 * @param attempt	The number of attempts made so far.
+	 * @return			Milliseconds to wait before the next attempt, between
+	 * 					half and all of the backoff.
+	 */
+	public long getDelay(int attempt){
+		long delay = _baseDelay << Math.min(30, Math.max(0, attempt - 1));
+		delay = Math.min(delay, _maxDelay);
+		if(delay <= 1){
+			return delay;
+		}
+		synchronized(_random){
+			return delay/2 + (long)(_random.nextDouble() * (delay/2));
+		}
+	}
+
+	public int getMaxAttempts(){
+		return _maxAttempts;
+	}
+}
@@ -0,0 +1,28 @@
+package videoUtility;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * @author Ryan Babcock
+ * 
+ * A ByteArrayOutputStream whose internal array can be read without the copy
+ * made by toByteArray(). Only the first size() bytes of getBuffer() are
+ * valid, and the array may be replaced when the stream grows.
+ */
+public class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+	public ReusableByteArrayOutputStream(){
+		super();
+	}
+
+	public ReusableByteArrayOutputStream(int size){
+		super(size);
+	}
+
+	/**
+	 * @return	The internal array. Valid up to size().
+	 */
+	public synchronized byte[] getBuffer(){
+		return buf;
+	}
+}
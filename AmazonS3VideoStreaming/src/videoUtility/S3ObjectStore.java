@@ -0,0 +1,361 @@
+package videoUtility;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.profile.ProfileCredentialsProvider;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.Upload;
+
+/**
+ * @author Ryan Babcock
+ *
+ * An ObjectStore backed by one Amazon S3 bucket in US_WEST_2. Credentials come
+ * from the [default] profile (/Users/username/.aws/credentials). Asynchronous
+ * puts go through a TransferManager; everything else calls the client
+ * directly. Amazon exceptions are rethrown as IOException.
+ */
+public class S3ObjectStore implements ObjectStore {
+
+	private static final int MAX_DELETE = 1000;//keys per DeleteObjects request
+
+	private String 			_bucketName;
+	private AmazonS3 		_s3;
+	private TransferManager _transferMGMT;
+
+	public S3ObjectStore(String bucketName) throws IOException {
+		this(bucketName, new ClientConfiguration());
+	}
+
+	/**
+	 * @param config	Timeouts and connection settings for the client.
+	 * @throws IOException if the credentials cannot be loaded.
+	 */
+	public S3ObjectStore(String bucketName, ClientConfiguration config) throws IOException {
+		AWSCredentials credentials;
+		try {
+			credentials = new ProfileCredentialsProvider("default").getCredentials();
+		} catch (Exception e) {
+			throw new IOException(
+				"Cannot load the credentials from the credential profiles file. " +
+				"Please make sure that your credentials file is at the correct " +
+				"location (/users/username/.aws/credentials), and is in valid format.", e);
+		}
+		_bucketName = bucketName;
+		_s3 = new AmazonS3Client(credentials, config);
+		_s3.setRegion(Region.getRegion(Regions.US_WEST_2));
+		_transferMGMT = new TransferManager(_s3);
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * The SDK reads the stream on its own threads and may still be inside a
+	 * read when the upload is aborted, so the stream is wrapped in one that
+	 * abort detaches first. Once detached, the stream is never read again
+	 * and the listener can be told at once.
+	 */
+	public Transfer putAsync(String key, InputStream data, long length,
+			Map<String, String> metadata, final PutListener listener) throws IOException {
+		ObjectMetadata info = new ObjectMetadata();
+		info.setContentLength(length);
+		if(metadata != null){
+			info.setUserMetadata(metadata);
+		}
+		final DetachableInputStream in = new DetachableInputStream(data);
+		final AtomicBoolean ended = new AtomicBoolean(false);
+		PutObjectRequest request = new PutObjectRequest(_bucketName, key, in, info);
+		request.setGeneralProgressListener(new ProgressListener() {
+			public void progressChanged(ProgressEvent event){
+				switch(event.getEventType()){
+				case TRANSFER_COMPLETED_EVENT:
+					if(ended.compareAndSet(false, true)) listener.putFinished(true);
+					break;
+				case TRANSFER_FAILED_EVENT:
+				case TRANSFER_CANCELED_EVENT:
+					if(ended.compareAndSet(false, true)) listener.putFinished(false);
+					break;
+				default:
+					break;
+				}
+			}
+		});
+		final Upload upload;
+		try{
+			upload = _transferMGMT.upload(request);
+		} catch(AmazonClientException e){
+			throw failure(key, e);
+		}
+		return new Transfer() {
+			public void abort(){
+				in.detach();
+				upload.abort();
+				if(ended.compareAndSet(false, true)) listener.putFinished(false);
+			}
+		};
+	}
+
+	public void put(String key, byte[] data) throws IOException {
+		ObjectMetadata info = new ObjectMetadata();
+		info.setContentLength(data.length);
+		try{
+			_s3.putObject(new PutObjectRequest(_bucketName, key,
+					new ByteArrayInputStream(data), info));
+		} catch(AmazonClientException e){
+			throw failure(key, e);
+		}
+	}
+
+	public byte[] get(String key) throws IOException {
+		S3ObjectInputStream in = null;
+		try{
+			S3Object object = _s3.getObject(_bucketName, key);
+			in = object.getObjectContent();
+			byte[] data = new byte[(int)object.getObjectMetadata().getContentLength()];
+			readFully(in, data, 0, data.length);
+			in.close();
+			return data;
+		} catch(AmazonClientException e){
+			throw failure(key, e);
+		} catch(IOException e){
+			//drop the connection rather than drain the rest of the object
+			if(in != null) in.abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends a Range header; the length of the whole object comes back in
+	 * Content-Range.
+	 */
+	public long getRange(String key, long offset, byte[] buffer, int start, int length)
+			throws IOException {
+		GetObjectRequest request = new GetObjectRequest(_bucketName, key)
+				.withRange(offset, offset + length - 1);
+		S3ObjectInputStream in = null;
+		try{
+			S3Object object = _s3.getObject(request);
+			in = object.getObjectContent();
+			ObjectMetadata info = object.getObjectMetadata();
+			readFully(in, buffer, start, (int)Math.min(length, info.getContentLength()));
+			in.close();
+			return info.getInstanceLength();
+		} catch(AmazonClientException e){
+			throw failure(key, e);
+		} catch(IOException e){
+			if(in != null) in.abort();
+			throw e;
+		}
+	}
+
+	public RangeInput openRange(String key, long offset, int length) throws IOException {
+		GetObjectRequest request = new GetObjectRequest(_bucketName, key)
+				.withRange(offset, offset + length - 1);
+		try{
+			S3Object object = _s3.getObject(request);
+			return new RangeInput(object.getObjectContent(),
+					object.getObjectMetadata().getInstanceLength());
+		} catch(AmazonClientException e){
+			throw failure(key, e);
+		}
+	}
+
+	/**
+	 * Sends If-None-Match, so S3 answers 304 without a body when the object
+	 * has not changed.
+	 */
+	public TaggedObject getIfChanged(String key, String etag) throws IOException {
+		GetObjectRequest request = new GetObjectRequest(_bucketName, key);
+		if(etag != null){
+			request.withNonmatchingETagConstraint(etag);
+		}
+		S3ObjectInputStream in = null;
+		try{
+			S3Object object = _s3.getObject(request);
+			if(object == null){
+				return null;//not modified
+			}
+			in = object.getObjectContent();
+			byte[] data = new byte[(int)object.getObjectMetadata().getContentLength()];
+			readFully(in, data, 0, data.length);
+			in.close();
+			return new TaggedObject(data, object.getObjectMetadata().getETag());
+		} catch(AmazonClientException e){
+			throw failure(key, e);
+		} catch(IOException e){
+			if(in != null) in.abort();
+			throw e;
+		}
+	}
+
+	public List<String> list(String prefix) throws IOException {
+		List<String> keys = new ArrayList<>();
+		try{
+			ObjectListing listing = _s3.listObjects(_bucketName, prefix);
+			while(true){
+				for(S3ObjectSummary summary : listing.getObjectSummaries()){
+					keys.add(summary.getKey());
+				}
+				if(!listing.isTruncated()) break;
+				listing = _s3.listNextBatchOfObjects(listing);
+			}
+		} catch(AmazonClientException e){
+			throw failure(prefix, e);
+		}
+		return keys;
+	}
+
+	public void delete(String key) throws IOException {
+		try{
+			_s3.deleteObject(_bucketName, key);
+		} catch(AmazonClientException e){
+			throw failure(key, e);
+		}
+	}
+
+	/**
+	 * Sends DeleteObjects requests of up to MAX_DELETE keys in quiet mode,
+	 * so only the keys that failed are listed in the answer.
+	 */
+	public List<String> deleteAll(List<String> keys) throws IOException {
+		List<String> failed = new ArrayList<>();
+		for(int start = 0; start < keys.size(); start += MAX_DELETE){
+			List<String> batch = keys.subList(start, Math.min(keys.size(), start + MAX_DELETE));
+			DeleteObjectsRequest request = new DeleteObjectsRequest(_bucketName)
+					.withKeys(batch.toArray(new String[batch.size()]))
+					.withQuiet(true);
+			try{
+				_s3.deleteObjects(request);
+			} catch(MultiObjectDeleteException e){
+				for(MultiObjectDeleteException.DeleteError error : e.getErrors()){
+					failed.add(error.getKey());
+				}
+			} catch(AmazonClientException e){
+				if(start == 0) throw failure(batch.get(0), e);
+				//earlier batches were deleted, so only the rest failed
+				failed.addAll(keys.subList(start, keys.size()));
+				break;
+			}
+		}
+		return failed;
+	}
+
+	public boolean exists(String key) throws IOException {
+		try{
+			return _s3.doesObjectExist(_bucketName, key);
+		} catch(AmazonClientException e){
+			throw failure(key, e);
+		}
+	}
+
+	public void close(){
+		_transferMGMT.shutdownNow(true);//true shuts down the s3 client too
+	}
+
+	public String toString(){
+		return "s3:" + _bucketName;
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	private static IOException failure(String key, AmazonClientException e){
+		if(e instanceof AmazonServiceException
+				&& ((AmazonServiceException)e).getStatusCode() == 404){
+			return new FileNotFoundException(key);
+		}
+		return new IOException("S3 request for '" + key + "' failed: " + e.getMessage(), e);
+	}
+
+	/**
+	 * A stream that stops reading its source for good once detached. Reads
+	 * and detach share a lock, so no read of the source is under way after
+	 * detach returns.
+	 */
+	private static class DetachableInputStream extends FilterInputStream {
+		private boolean _detached = false;
+
+		DetachableInputStream(InputStream in){
+			super(in);
+		}
+
+		synchronized void detach(){
+			_detached = true;
+		}
+
+		public synchronized int read() throws IOException {
+			check();
+			return super.read();
+		}
+
+		public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+			check();
+			return super.read(buffer, offset, length);
+		}
+
+		public synchronized long skip(long n) throws IOException {
+			check();
+			return super.skip(n);
+		}
+
+		public synchronized int available() throws IOException {
+			check();
+			return super.available();
+		}
+
+		public synchronized void mark(int readlimit){
+			if(!_detached) super.mark(readlimit);
+		}
+
+		public synchronized void reset() throws IOException {
+			check();
+			super.reset();
+		}
+
+		private void check() throws IOException {
+			if(_detached){
+				throw new IOException("Put aborted");
+			}
+		}
+	}
+
+	private static void readFully(InputStream in, byte[] data, int start, int length)
+			throws IOException {
+		int read, total = 0;
+		while(total < length){
+			if((read = in.read(data, start + total, length - total)) < 0){
+				throw new EOFException("Object ended after " + total + " of "
+						+ length + " bytes");
+			}
+			total += read;
+		}
+	}
+}
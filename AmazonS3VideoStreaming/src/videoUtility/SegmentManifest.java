@@ -0,0 +1,140 @@
+package videoUtility;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Lists the newest segments that finished uploading, oldest first. The
+ * S3Uploader overwrites it in the bucket (FileData.MANIFEST_FILE) whenever
+ * a segment finishes, and the S3Downloader polls it with a conditional GET
+ * instead of listing the bucket. Stored as text, one segment per line:
+ * <pre>
+ * count
+ * index timeStamp size
+ * ...
+ * </pre>
+ *
+ * @see S3Uploader, S3Downloader
+ */
+public class SegmentManifest {
+
+	private int 				_capacity;
+	private LinkedList<Entry> 	_entries = new LinkedList<>();
+
+	/**
+	 * @param capacity	Segments kept; older ones are dropped.
+	 */
+	public SegmentManifest(int capacity){
+		_capacity = Math.max(1, capacity);
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	public void add(Entry entry){
+		_entries.addLast(entry);
+		while(_entries.size() > _capacity){
+			_entries.removeFirst();
+		}
+	}
+
+	/**
+	 * @return	Every segment, oldest first.
+	 */
+	public List<Entry> getEntries(){
+		return Collections.unmodifiableList(_entries);
+	}
+
+	/**
+	 * @return	The segment uploaded last, or null if there is none.
+	 */
+	public Entry getNewest(){
+		return _entries.isEmpty() ? null : _entries.getLast();
+	}
+
+	/**
+	 * @return	The index of the segment uploaded last, or -1.
+	 */
+	public int getNewestIndex(){
+		return _entries.isEmpty() ? -1 : _entries.getLast().getIndex();
+	}
+
+	public boolean isEmpty(){
+		return _entries.isEmpty();
+	}
+
+	public byte[] toBytes(){
+		StringBuilder sb = new StringBuilder();
+		sb.append(_entries.size()).append('\n');
+		for(Entry entry : _entries){
+			sb.append(entry.getIndex()).append(' ')
+				.append(entry.getTimeStamp()).append(' ')
+				.append(entry.getSize()).append('\n');
+		}
+		return sb.toString().getBytes();
+	}
+
+	/**
+	 * Reads a manifest written by toBytes.
+	 * @throws IOException if the data is not a manifest.
+	 */
+	public static SegmentManifest parse(byte[] data) throws IOException {
+		Scanner sc = new Scanner(new ByteArrayInputStream(data));
+		try{
+			int count = sc.nextInt();
+			List<Entry> entries = new ArrayList<>(count);
+			for(int i = 0; i < count; i++){
+				entries.add(new Entry(sc.nextInt(), sc.nextLong(), sc.nextLong()));
+			}
+			SegmentManifest manifest = new SegmentManifest(count);
+			for(Entry entry : entries){
+				manifest.add(entry);
+			}
+			return manifest;
+		} catch(NoSuchElementException e){
+			throw new IOException("Malformed segment manifest", e);
+		} finally {
+			sc.close();
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//Entry
+	//-------------------------------------------------------------------------
+	/**
+	 * One uploaded segment.
+	 */
+	public static class Entry {
+		private int 	_index;
+		private long 	_size;
+		private long 	_timeStamp;
+
+		/**
+		 * @param timeStamp		When recording of the segment started.
+		 * @param size			Bytes in the stored object.
+		 */
+		public Entry(int index, long timeStamp, long size){
+			_index = index;
+			_timeStamp = timeStamp;
+			_size = size;
+		}
+
+		public int getIndex(){
+			return _index;
+		}
+		public long getSize(){
+			return _size;
+		}
+		public long getTimeStamp(){
+			return _timeStamp;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package videoUtility;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * @author Ryan Babcock
+ *
+ * A bounded set of VideoSegments, each with its own buffer, that cycles
+ * between the ICCRunner and the S3Uploader. Segments are created the first
+ * time they are needed, up to the size of the pool, and afterwards only
+ * reused. A segment returns here when VideoSegment.release is called after
+ * its upload.
+ * <p>
+ * Buffers start at the given capacity and grow when a segment does not fit,
+ * so once recording settles no buffers are allocated.
+ *
+ * @see VideoSegment, FramePool
+ */
+public class SegmentPool {
+
+	private int 							_capacity;
+	private int 							_created = 0;
+	private boolean 						_direct;
+	private ArrayBlockingQueue<VideoSegment> _segments;
+	private int 							_size;
+
+	/**
+	 * @param size		The most segments that may exist at once.
+	 * @param capacity	Initial buffer size of each segment in bytes.
+	 * @param direct	True to use direct buffers.
+	 */
+	public SegmentPool(int size, int capacity, boolean direct){
+		_size = size;
+		_capacity = capacity;
+		_direct = direct;
+		_segments = new ArrayBlockingQueue<>(size);
+	}
+
+	/**
+	 * Gets a free segment, creating one if the pool has not reached its size.
+	 * Waits for a release when every segment is in use.
+	 */
+	public VideoSegment take() throws InterruptedException {
+		VideoSegment segment = _segments.poll();
+		if(segment == null){
+			segment = create();
+		}
+		if(segment == null){
+			segment = _segments.take();
+		}
+		return segment;
+	}
+
+	/**
+	 * Returns a segment to the pool. Segments from other pools are ignored.
+	 */
+	public void release(VideoSegment segment){
+		if(segment != null && segment.getPool() == this){
+			_segments.offer(segment);
+		}
+	}
+
+	public synchronized int created(){
+		return _created;
+	}
+
+	public int available(){
+		return _segments.size();
+	}
+
+	public int size(){
+		return _size;
+	}
+
+	private synchronized VideoSegment create(){
+		if(_created >= _size){
+			return null;
+		}
+		_created++;
+		return new VideoSegment(this, _capacity, _direct);
+	}
+}
@@ -1,91 +1,210 @@
 package videoUtility;
 
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Ryan Babcock
  * @param <E>
  * @class CSCD 567
  * @work Homework 3
+ *
+ * A bounded queue for any number of producers and consumers, stored in a
+ * circular array. Every method synchronizes on the queue itself and every
+ * change wakes all waiting threads, so threads may also wait on the queue's
+ * monitor for the next enqueue or dequeue (used for the setup file
+ * handshake between ICCRunner and S3Uploader).
+ *
+ * @see BoundedQueue, SpscQueue
  */
-
-public class SharedQueue<E> implements Iterable<E> {
-	final private LinkedList<E> myList;
-	private int maxSize;
-	private boolean stop = false;
+public class SharedQueue<E> implements BoundedQueue<E>, Iterable<E> {
+	private final Object[] _items;
+	private int _count = 0;
+	private int _head = 0;
+	private boolean _stop = false;
 
 	public SharedQueue(int size) {
-		myList = new LinkedList<>();
-		maxSize = size;
+		if(size < 1){
+			throw new IllegalArgumentException("Queue size must be positive");
+		}
+		_items = new Object[size];
 	}
 
+	/**
+	 * @param i	0 is the newest element, size()-1 the oldest.
+	 */
 	public synchronized E get(int i){
-		return myList.get(i);
+		if(i < 0 || i >= _count){
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + _count);
+		}
+		return itemAt(_count - 1 - i);
+	}
+
+	public synchronized void enqueue(E job) throws NoSuchElementException {
+		try {
+			put(job);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NoSuchElementException("Thread Interrupted!");
+		}
+	}
+
+	public synchronized E dequeue() throws NoSuchElementException {
+		try {
+			return take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NoSuchElementException("Thread Interrupted!");
+		}
+	}
+
+	public synchronized void put(E job) throws InterruptedException {
+		while (isFull()) {
+			wait();
+		}
+		insert(job);
+	}
+
+	public synchronized E take() throws InterruptedException {
+		while (isEmpty()) {
+			wait();
+		}
+		return remove();
 	}
-	
-	public synchronized void enqueue(E job) throws IllegalArgumentException {
+
+	public synchronized boolean offer(E job) {
 		if (isFull()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				throw new NoSuchElementException("Thread Interrupted!");
+			return false;
+		}
+		insert(job);
+		return true;
+	}
+
+	public synchronized boolean offer(E job, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + remaining;
+		while (isFull()) {
+			if (remaining <= 0) {
+				return false;
 			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
 		}
-		myList.addFirst(job);
-		notify();
+		insert(job);
+		return true;
 	}
 
-	public synchronized E dequeue() throws NoSuchElementException {
-		if (isEmpty()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				throw new NoSuchElementException("Thread Interrupted!");
+	public synchronized E poll() {
+		return isEmpty() ? null : remove();
+	}
+
+	public synchronized E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + remaining;
+		while (isEmpty()) {
+			if (remaining <= 0) {
+				return null;
 			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
 		}
-		E job = myList.removeLast();
-		notify();
-		return job;
+		return remove();
+	}
+
+	public synchronized int drainTo(Collection<? super E> collection, int maxElements) {
+		int moved = Math.min(maxElements, _count);
+		for (int i = 0; i < moved; i++) {
+			collection.add(remove());
+		}
+		return moved;
+	}
+
+	public int capacity() {
+		return _items.length;
 	}
 
 	public synchronized boolean isEmpty() {
-		return myList.isEmpty();
+		return _count == 0;
 	}
 
 	public synchronized void stop() {
-		stop = true;
-		notify();
+		_stop = true;
+		notifyAll();
 	}
 
 	public synchronized boolean isStopped() {
-		return stop;
+		return _stop;
 	}
 
 	public synchronized int size() {
-		return myList.size();
+		return _count;
 	}
 
 	public synchronized boolean isFull() {
-		return myList.size() == maxSize;
+		return _count == _items.length;
 	}
-	
+
+	/**
+	 * Iterates over a snapshot of the queue, newest element first.
+	 */
 	@Override
 	public Iterator<E> iterator() {
 		return new SharedQueueIterator();
 	}
 
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	private void insert(E job) {
+		_items[(_head + _count) % _items.length] = job;
+		_count++;
+		notifyAll();
+	}
+
+	/**
+	 * @param i	0 is the oldest element.
+	 */
+	@SuppressWarnings("unchecked")
+	private E itemAt(int i) {
+		return (E)_items[(_head + i) % _items.length];
+	}
+
+	private E remove() {
+		E job = itemAt(0);
+		_items[_head] = null;
+		_head = (_head + 1) % _items.length;
+		_count--;
+		notifyAll();
+		return job;
+	}
+
 	class SharedQueueIterator implements Iterator<E> {
 
-		Iterator<E> _it = myList.iterator();
-		
+		private final Object[] _snapshot;
+		private int _next = 0;
+
+		SharedQueueIterator(){
+			synchronized(SharedQueue.this){
+				_snapshot = new Object[_count];
+				for(int i = 0; i < _count; i++){
+					_snapshot[i] = itemAt(_count - 1 - i);
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
 		public E next(){
-			return _it.next();
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			return (E)_snapshot[_next++];
 		}
-		
+
 		public boolean hasNext(){
-			return _it.hasNext();
+			return _next < _snapshot.length;
 		}
 		public void remove(){
 			throw new UnsupportedOperationException("Remove method not supported");
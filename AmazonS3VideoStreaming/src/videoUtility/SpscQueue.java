@@ -0,0 +1,196 @@
+package videoUtility;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Ryan Babcock
+ *
+ * A bounded queue for exactly one producer thread and one consumer thread,
+ * stored in a circular array without locks. The producer only moves the tail
+ * and the consumer only moves the head. A thread that has to wait parks
+ * until the other side makes room or adds an element.
+ * <p>
+ * Used where one thread hands segments to another, ie. S3Downloader to
+ * VideoPlayer. Use SharedQueue when more than one thread adds or removes.
+ *
+ * @see BoundedQueue, SharedQueue
+ */
+public class SpscQueue<E> implements BoundedQueue<E> {
+
+	/*
+	 * @param _head				Count of elements removed (consumer only).
+	 * @param _tail				Count of elements added (producer only).
+	 * @param _waitingConsumer	The consumer, while it is parked.
+	 * @param _waitingProducer	The producer, while it is parked.
+	 */
+	private final AtomicLong 		_head = new AtomicLong();
+	private final Object[] 			_items;
+	private final AtomicLong 		_tail = new AtomicLong();
+	private volatile Thread 		_waitingConsumer;
+	private volatile Thread 		_waitingProducer;
+
+	public SpscQueue(int size){
+		if(size < 1){
+			throw new IllegalArgumentException("Queue size must be positive");
+		}
+		_items = new Object[size];
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	public void enqueue(E job) throws NoSuchElementException {
+		try{
+			put(job);
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new NoSuchElementException("Thread Interrupted!");
+		}
+	}
+
+	public E dequeue() throws NoSuchElementException {
+		try{
+			return take();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new NoSuchElementException("Thread Interrupted!");
+		}
+	}
+
+	public void put(E job) throws InterruptedException {
+		while(!offer(job)){
+			awaitSpace(Long.MAX_VALUE);
+		}
+	}
+
+	public E take() throws InterruptedException {
+		E job;
+		while((job = poll()) == null){
+			awaitElement(Long.MAX_VALUE);
+		}
+		return job;
+	}
+
+	public boolean offer(E job){
+		if(job == null){
+			throw new NullPointerException();
+		}
+		long tail = _tail.get();
+		if(tail - _head.get() >= _items.length){
+			return false;
+		}
+		_items[(int)(tail % _items.length)] = job;
+		_tail.set(tail + 1);
+		LockSupport.unpark(_waitingConsumer);
+		return true;
+	}
+
+	public boolean offer(E job, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(!offer(job)){
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0){
+				return false;
+			}
+			awaitSpace(remaining);
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E poll(){
+		long head = _head.get();
+		if(head == _tail.get()){
+			return null;
+		}
+		int index = (int)(head % _items.length);
+		E job = (E)_items[index];
+		_items[index] = null;
+		_head.set(head + 1);
+		LockSupport.unpark(_waitingProducer);
+		return job;
+	}
+
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		E job;
+		while((job = poll()) == null){
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0){
+				return null;
+			}
+			awaitElement(remaining);
+		}
+		return job;
+	}
+
+	public int drainTo(Collection<? super E> collection, int maxElements){
+		int moved = 0;
+		E job;
+		while(moved < maxElements && (job = poll()) != null){
+			collection.add(job);
+			moved++;
+		}
+		return moved;
+	}
+
+	public int capacity(){
+		return _items.length;
+	}
+
+	public boolean isEmpty(){
+		return size() == 0;
+	}
+
+	public boolean isFull(){
+		return size() >= _items.length;
+	}
+
+	public int size(){
+		long head = _head.get();
+		return (int)Math.max(0, _tail.get() - head);
+	}
+
+	//-------------------------------------------------------------------------
+	//PRIVATE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Parks the consumer until an element may be available. The consumer is
+	 * registered before the queue is checked again, so an offer in between
+	 * always unparks it.
+	 */
+	private void awaitElement(long nanos) throws InterruptedException {
+		_waitingConsumer = Thread.currentThread();
+		try{
+			if(isEmpty()){
+				LockSupport.parkNanos(this, nanos);
+			}
+		} finally {
+			_waitingConsumer = null;
+		}
+		if(Thread.interrupted()){
+			throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * Parks the producer until space may be available.
+	 */
+	private void awaitSpace(long nanos) throws InterruptedException {
+		_waitingProducer = Thread.currentThread();
+		try{
+			if(isFull()){
+				LockSupport.parkNanos(this, nanos);
+			}
+		} finally {
+			_waitingProducer = null;
+		}
+		if(Thread.interrupted()){
+			throw new InterruptedException();
+		}
+	}
+}
@@ -1,9 +1,24 @@
 package videoUtility;
 
+import org.opencv.core.Core;
+
 public class Utility {
 
 	public Utility(){}
 	
+	/**
+	 * Loads the OpenCV native library from -Dopencv.lib if it names a
+	 * file, otherwise from java.library.path.
+	 */
+	public static void loadOpenCV(){
+		String path = System.getProperty("opencv.lib");
+		if(path != null && !path.isEmpty()){
+			System.load(path);
+		} else{
+			System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		}
+	}
+
 	public static void pause(long milliseconds){
 		try{
 			Thread.sleep(milliseconds);
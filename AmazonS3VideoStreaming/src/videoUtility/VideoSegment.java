@@ -2,15 +2,30 @@ package videoUtility;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
 
 /**
- * 
+ *
  * @author Ryan Babcock
- * 
+ *
  * This class represents one video segment that is being used within a video
  * stream.
+ * <p>
+ * The segment is stored exactly as it is uploaded: one ByteBuffer (heap or
+ * direct) holding the header followed by the video data. The header and the
+ * frames are read from slices of that buffer, so building, uploading,
+ * downloading and decoding a segment never copy it.
+ * <p>
+ * Segments from a SegmentPool are refilled with fill() and handed back with
+ * release() once uploaded, so their buffer and header are reused.
+ * <p>
+ * A downloaded segment can be played while it is still arriving. Once its
+ * header is in, the downloader reports each new byte count with received(),
+ * and frames() waits for the bytes of each frame before decoding it.
  *
  */
 public class VideoSegment {
@@ -19,71 +34,209 @@ public class VideoSegment {
 	//PARAMETERS
 	//-------------------------------------------------------------------------
 	/*
-	 * @param _data	The video data containing all images in a sequence.
+	 * @param _buffer	The header followed by the video data containing all
+	 * 					images in a sequence.
 	 * @param _index	The number used to identify this video in the stream.
 	 * @param _imglist	Every image within the video segment, taken from data.
 	 * @param _header	The header, which contains the timestamp of the video
-	 * 					and indeces of every image within _data.
+	 * 					and indeces of every image within the video data.
+	 * @param _payload	A slice of _buffer holding only the video data.
+	 * @param _part		Which part of its segment this is, or -1 for a
+	 * 					whole segment.
+	 * @param _parts	Parts its segment is published in.
+	 * @param _pool		Where the segment returns on release, or null.
+	 * @param _rendition	Level of the segment's rendition in the ladder; 0
+	 * 					is the best.
+	 * @param _received	Bytes of _buffer that have arrived, or -1 once the
+	 * 					whole segment is there.
+	 * @param _failed	True if the rest of the segment will never arrive.
 	 */
-	private byte[] _data;
+	private ByteBuffer _buffer;
 	private int _index;
 	private LinkedList<BufferedImage> _imglist;
 	private VideoSegmentHeader _header;
-	
+	private ByteBuffer _payload;
+	private int _part = -1;
+	private int _parts = 1;
+	private SegmentPool _pool;
+	private int _rendition = 0;
+	private int _received = -1;
+	private boolean _failed = false;
+
 	public VideoSegment(){
 		//DVC
 	}
-	
+
+	/**
+	 * Creates an empty segment owned by a pool. Call fill before use.
+	 * @param pool		Where the segment returns on release.
+	 * @param capacity	Initial size of the buffer in bytes.
+	 * @param direct	True to allocate a direct buffer.
+	 * @see SegmentPool
+	 */
+	VideoSegment(SegmentPool pool, int capacity, boolean direct){
+		_pool = pool;
+		_buffer = allocate(capacity, direct);
+		_header = new VideoSegmentHeader();
+	}
+
 	/**
 	 * Constructor used when header information and video data are separately
 	 * known (used by the ICCRunner).
 	 * @param index		Index of video segment within video stream.
 	 * @param data		The data of every image recorded.
-	 * @param header	The header information (incomplete video segment if
-	 * 					frame order is null).
+	 * @param header	The header information (frame order must be set).
 	 */
 	public VideoSegment(int index, byte[] data, VideoSegmentHeader header) {
-		_data = data;
+		this(index, header, data, data.length);
+	}
+
+	/**
+	 * Lays out the header and the first length bytes of data in a single
+	 * buffer, the only copy made of the video data.
+	 * @param index		Index of video segment within video stream.
+	 * @param header	The header information (frame order must be set).
+	 * @param data		The data of every image recorded.
+	 * @param length	The number of valid bytes in data.
+	 */
+	public VideoSegment(int index, VideoSegmentHeader header, byte[] data, int length) {
+		ByteBuffer buffer = ByteBuffer.allocate(header.size() + length);
+		header.write(buffer);
+		buffer.put(data, 0, length);
+		buffer.flip();
 		_index = index;
 		_header = header;
+		_buffer = buffer;
+		_payload = slice(header.size());
 	}
-	
+
 	/**
 	 * Constructor uses data that contains both header and video segment info.
+	 * The data is wrapped, not copied.
 	 * @param index			Index of video segment within video stream.
 	 * @param data			The data of every image recorded.
 	 * @param headerLength	The length of the header information.
 	 */
 	public VideoSegment(int index, byte[] data, int headerLength){
-		_data = parseVideoData(data, headerLength);
+		this(index, ByteBuffer.wrap(data), headerLength);
+	}
+
+	/**
+	 * Constructor uses a buffer that contains both header and video segment
+	 * info, from its position to its limit. The buffer is not copied.
+	 * @param index			Index of video segment within video stream.
+	 * @param buffer		The header followed by the video data.
+	 * @param headerLength	The length of the header information.
+	 */
+	public VideoSegment(int index, ByteBuffer buffer, int headerLength){
 		_index = index;
-		_header = new VideoSegmentHeader(parseHeaderData(data, headerLength));
+		_buffer = buffer.slice();
+		_header = new VideoSegmentHeader(slice(0, headerLength));
+		_payload = slice(headerLength);
 	}
 
 	//-------------------------------------------------------------------------
 	//GET METHODS
 	//-------------------------------------------------------------------------
+	/**
+	 * @return	A read-only view of the header followed by the video data.
+	 */
+	public ByteBuffer buffer(){
+		return _buffer.asReadOnlyBuffer();
+	}
+	/**
+	 * @return	The header followed by the video data. No copy is made when
+	 * 			the segment owns a heap buffer of exactly this size.
+	 */
 	public byte[] data(){
-		byte[] data = assembleData();
+		if(_buffer.hasArray() && _buffer.arrayOffset() == 0
+				&& _buffer.array().length == _buffer.remaining()){
+			return _buffer.array();
+		}
+		byte[] data = new byte[_buffer.remaining()];
+		_buffer.duplicate().get(data);
 		return data;
 	}
+	/**
+	 * Opens a cursor that decodes each frame as it is reached. Nothing is
+	 * kept by the segment, so every call starts from the first frame.
+	 * @param executor	Decodes frames ahead of the cursor, or null.
+	 * @param prefetch	How many frames to decode ahead.
+	 * @see FrameCursor
+	 */
+	public FrameCursor frames(ExecutorService executor, int prefetch){
+		return new FrameCursor(_header, payloadArray(), payloadOffset(),
+				executor, prefetch, isComplete() ? null : this);
+	}
+	public FrameCursor frames(){
+		return frames(null, 0);
+	}
 	public VideoSegmentHeader getHeader(){
 		return _header;
 	}
+	/**
+	 * Decodes and keeps every frame of the segment. Prefer frames(), which
+	 * only holds the compressed data.
+	 */
 	public LinkedList<BufferedImage> getImageList(){
+		return getImageList(null);
+	}
+	/**
+	 * Decodes every frame of the segment the first time it is called.
+	 * @param executor	Used to decode frames in parallel, or null to decode
+	 * 					on the calling thread.
+	 * @see ICCFrameReader
+	 */
+	public LinkedList<BufferedImage> getImageList(ExecutorService executor){
 		if(_imglist == null){
-			_imglist = convertToImageList();
+			_imglist = convertToImageList(executor);
 		}
 		return _imglist;
 	}
 	public int getIndex(){
 		return _index;
 	}
+	/**
+	 * @return	Which part of its segment this is, or -1 for a whole segment.
+	 */
+	public int getPart(){
+		return _part;
+	}
+	/**
+	 * @see Rendition
+	 */
+	public int getRendition(){
+		return _rendition;
+	}
+	/**
+	 * @return	The place of the segment, or part, in the stream: the index
+	 * 			of a whole segment, or index * parts + part of a part.
+	 */
+	public int getStreamIndex(){
+		return _part < 0 ? _index : _index * _parts + _part;
+	}
 	public long getTimeStamp(){
 		return _header.getTimeStamp();
 	}
+	/**
+	 * @return	False while the segment is still being downloaded.
+	 */
+	public synchronized boolean isComplete(){
+		return _received < 0;
+	}
+	/**
+	 * @return	A stream over the header and video data, read straight from
+	 * 			the segment's buffer. Supports mark and reset.
+	 */
+	public InputStream newInputStream(){
+		return new ByteBufferInputStream(_buffer);
+	}
 	public long size(){
-		return _data.length + _header.size();
+		return _buffer.remaining();
+	}
+
+	SegmentPool getPool(){
+		return _pool;
 	}
 
 	//-------------------------------------------------------------------------
@@ -92,54 +245,174 @@ public class VideoSegment {
 	public void setIndex(int index){
 		_index = index;
 	}
-	public void setData(byte[] data){
-		_data = data;
+	/**
+	 * @param level		Level of the rendition in the ladder, which picks
+	 * 					the segment's key.
+	 * @see Rendition
+	 */
+	public void setRendition(int level){
+		_rendition = level;
 	}
-	public void setHeader(VideoSegmentHeader header){//should be called last
-		_header = header;
+
+	/**
+	 * Marks the segment as one part of a segment published in parts, which
+	 * is stored under its own key.
+	 * @param part		Which part it is, from 0.
+	 * @param parts		Parts the segment is published in.
+	 * @see Rendition#getPartKey
+	 */
+	public void setPart(int part, int parts){
+		_part = part;
+		_parts = Math.max(1, parts);
+	}
+
+	/**
+	 * Records how much of a segment being downloaded has arrived. The
+	 * bytes must already be in the buffer the segment was made from.
+	 * @param bytes		Bytes from the start of the header that have arrived;
+	 * 					the segment is complete once this reaches size().
+	 */
+	public synchronized void received(int bytes){
+		_received = (bytes >= size()) ? -1 : bytes;
+		notifyAll();
+	}
+
+	/**
+	 * Ends a download that will not finish. Frames that have not arrived
+	 * fail to decode instead of waiting.
+	 */
+	public synchronized void failed(){
+		_failed = true;
+		notifyAll();
 	}
-	
+
 	//-------------------------------------------------------------------------
 	//PUBLIC METHODS
 	//-------------------------------------------------------------------------
+	/**
+	 * Reuses a pooled segment for a new recording. The header fields and the
+	 * first length bytes of data are copied into the segment's own header
+	 * and buffer; the buffer only grows if they do not fit.
+	 * @param index		Index of video segment within video stream.
+	 * @param header	The header information (frame order must be set).
+	 * @param data		The data of every image recorded.
+	 * @param length	The number of valid bytes in data.
+	 */
+	public void fill(int index, VideoSegmentHeader header, byte[] data, int length){
+		fill(index, header, data, 0, length);
+	}
+	/**
+	 * Same as fill(index, header, data, length), but the video data starts
+	 * at offset, ie. for a part of a segment.
+	 */
+	public void fill(int index, VideoSegmentHeader header, byte[] data, int offset, int length){
+		int size = header.size() + length;
+		if(_buffer.capacity() < size){
+			_buffer = allocate(size + size/4, _buffer.isDirect());
+		}
+		_header.copy(header);
+		_buffer.clear();
+		_header.write(_buffer);
+		_buffer.put(data, offset, length);
+		_buffer.flip();
+		_index = index;
+		_rendition = 0;
+		_part = -1;
+		_parts = 1;
+		_imglist = null;
+		_payload = slice(_header.size());
+	}
+	/**
+	 * Hands a pooled segment back for reuse, ie. once its upload is done.
+	 * Does nothing for segments without a pool.
+	 */
+	public void release(){
+		if(_pool != null){
+			_pool.release(this);
+		}
+	}
+
 	public String toString(){
-		return FileData.VIDEO_PREFIX + _index + FileData.VIDEO_SUFFIX;
+		if(_part >= 0){
+			return Rendition.getPartKey(_rendition, _index, _part);
+		}
+		return Rendition.getKey(_rendition, _index);
 	}
 	public static String toString(int index){
-		return FileData.VIDEO_PREFIX + index + FileData.VIDEO_SUFFIX;
+		return Rendition.getKey(0, index);
 	}
-	
+
+	//-------------------------------------------------------------------------
+	//PACKAGE METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Waits until the video data up to end has arrived.
+	 * @param end	An offset into the video data, not counting the header.
+	 * @throws IOException if the download failed or the thread was
+	 * 			interrupted.
+	 */
+	synchronized void awaitPayload(int end) throws IOException {
+		int needed = _header.size() + end;
+		while(_received >= 0 && _received < needed){
+			if(_failed){
+				throw new IOException("Download of '" + this + "' failed");
+			}
+			try{
+				wait();
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for '" + this + "'");
+			}
+		}
+	}
+
 	//-------------------------------------------------------------------------
 	//PRIVATE METHODS
 	//-------------------------------------------------------------------------
-	private byte[] assembleData(){
-		byte[] headerData = _header.data();
-		byte[] data = new byte[headerData.length + _data.length];
-		//store header data
-		System.arraycopy(headerData, 0, data, 0, headerData.length);
-		//store video data
-		System.arraycopy(_data, 0, data, headerData.length, _data.length);
-		
-		return data;
+	private static ByteBuffer allocate(int capacity, boolean direct){
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
 	}
 
-	private LinkedList<BufferedImage> convertToImageList(){
+	private LinkedList<BufferedImage> convertToImageList(ExecutorService executor){
 		LinkedList<BufferedImage> imglist = null;
 
 		try {
-			imglist = ICCFrameReader.readAll(_header.getFrameOrder(), _data);
+			awaitPayload(_payload.remaining());
+			imglist = ICCFrameReader.readAll(_header, payloadArray(),
+					payloadOffset(), executor);
 		} catch (IllegalArgumentException | IOException e) {
 			e.printStackTrace();
 		}
 
 		return imglist;
 	}
-	
-	private byte[] parseHeaderData(byte[] data, int headerLength){
-		return Arrays.copyOfRange(data, 0, headerLength);
+
+	/**
+	 * Decoders read frames from an array. A heap buffer is used in place; a
+	 * direct buffer is copied out once and kept.
+	 */
+	private byte[] payloadArray(){
+		if(!_payload.hasArray()){
+			byte[] data = new byte[_payload.remaining()];
+			_payload.duplicate().get(data);
+			_payload = ByteBuffer.wrap(data);
+		}
+		return _payload.array();
+	}
+
+	private int payloadOffset(){
+		payloadArray();
+		return _payload.arrayOffset() + _payload.position();
+	}
+
+	private ByteBuffer slice(int from){
+		return slice(from, _buffer.remaining());
 	}
-	
-	private byte[] parseVideoData(byte[] data, int headerLength){
-		return Arrays.copyOfRange(data, headerLength, data.length);
+
+	private ByteBuffer slice(int from, int to){
+		ByteBuffer view = _buffer.duplicate();
+		view.position(_buffer.position() + from);
+		view.limit(_buffer.position() + to);
+		return view.slice();
 	}
 }
@@ -9,7 +9,16 @@ import java.nio.ByteBuffer;
  * This class holds all the information stored in the header of each
  * video segment.
  * 
+ * @param	_codec		The FrameCodec id used to encode every image
+ * @param	_decimation	Frames recorded per frame encoded; the others are
+ * 						repeats
+ * @param	_firstFrame	Position in its segment of the first frame, which
+ * 						is 0 unless the header starts a part (see
+ * 						ICCSetup.setPartFrames)
  * @param	_frameOrder	The index positions of each image
+ * @param	_frameTypes	The type of each image (key, delta or repeat)
+ * @param	_quality	The codec quality the images were encoded at
+ * @param	_scale		The resolution, in percent of the camera's
  * @param	_timeStamp	The time the video was recorded. This is done
  * 						automatically when a video segment is created.
  * @param	_startTime	The start time of the program (ICCRunner).
@@ -20,7 +29,26 @@ public class VideoSegmentHeader {
 	//-------------------------------------------------------------------------
 	//PARAMETERS
 	//-------------------------------------------------------------------------
+	/*
+	 * @param KEY_FRAME		The frame can be decoded on its own.
+	 * @param DELTA_FRAME	The frame only holds changes to the previous frame.
+	 * @param REPEAT_FRAME	The frame has no data; the previous frame is shown
+	 * 						again (nothing changed in the scene).
+	 */
+	public static final byte KEY_FRAME = 0;
+	public static final byte DELTA_FRAME = 1;
+	public static final byte REPEAT_FRAME = 2;
+
+	private static final int FIXED_SIZE = 8 + 1 + 3 + 2; //timestamp + codec + quality, scale, decimation + first frame
+	private static final int FRAME_SIZE = 4 + 1; //position + type
+
+	private byte _codec = FrameCodec.JPEG;
+	private int _decimation = 1;
+	private int _firstFrame = 0;
 	private int[] _frameOrder;
+	private byte[] _frameTypes;
+	private int _quality = 0;
+	private int _scale = 100;
 	private long _timeStamp;
 
 	//-------------------------------------------------------------------------
@@ -32,49 +60,178 @@ public class VideoSegmentHeader {
 	public VideoSegmentHeader(int[] frameOrder){
 		_frameOrder = frameOrder;
 	}
+	public VideoSegmentHeader(int[] frameOrder, byte[] frameTypes){
+		_frameOrder = frameOrder;
+		_frameTypes = frameTypes;
+	}
 	/**
 	 * Reads in the header data to supply values to member variables.
 	 * @param data	The video header data grabbed from the video file.
 	 */
 	public VideoSegmentHeader(byte[] data){
-		init(data);
+		init(ByteBuffer.wrap(data));
+	}
+	/**
+	 * Reads in the header from position to limit of the buffer, without
+	 * copying it. The position of the buffer is left unchanged.
+	 * @param data	A view of the header within the video segment.
+	 */
+	public VideoSegmentHeader(ByteBuffer data){
+		init(data.duplicate());
+	}
+
+	//-------------------------------------------------------------------------
+	//PUBLIC METHODS
+	//-------------------------------------------------------------------------
+	/**
+	 * Copies every field of another header, reusing this header's arrays
+	 * when they are the right length.
+	 * @param header	The header to copy.
+	 */
+	public void copy(VideoSegmentHeader header){
+		int[] frameOrder = header.getFrameOrder();
+		byte[] frameTypes = header.getFrameTypes();
+		_codec = header.getCodec();
+		_quality = header.getQuality();
+		_scale = header.getScale();
+		_decimation = header.getDecimation();
+		_firstFrame = header.getFirstFrame();
+		_timeStamp = header.getTimeStamp();
+		if(_frameOrder == null || _frameOrder.length != frameOrder.length){
+			_frameOrder = new int[frameOrder.length];
+			_frameTypes = new byte[frameOrder.length];
+		}
+		System.arraycopy(frameOrder, 0, _frameOrder, 0, frameOrder.length);
+		for(int i = 0; i < _frameTypes.length; i++){
+			_frameTypes[i] = (frameTypes == null) ? KEY_FRAME : frameTypes[i];
+		}
 	}
 
 	//-------------------------------------------------------------------------
 	//GETS
 	//-------------------------------------------------------------------------
 	public byte[] data(){
-		assert(_frameOrder != null);
-		
 		ByteBuffer buffer = ByteBuffer.allocate(this.size());
-		buffer.putLong(_timeStamp);
-		
-		for(int i = 0; i < _frameOrder.length; i++){
-			buffer.putInt(_frameOrder[i]);
-		}
-		
+		write(buffer);
 		return buffer.array();
 	}
+	public byte getCodec(){
+		return _codec;
+	}
+	/**
+	 * @return	Frames recorded per frame encoded.
+	 */
+	public int getDecimation(){
+		return _decimation;
+	}
+	/**
+	 * @return	Position in its segment of the first frame.
+	 */
+	public int getFirstFrame(){
+		return _firstFrame;
+	}
 	public int[] getFrameOrder(){
 		return _frameOrder;
 	}
+	/**
+	 * @param frame	The position of the frame within the segment.
+	 * @return		The frame type, KEY_FRAME if none were set.
+	 */
+	public byte getFrameType(int frame){
+		if(_frameTypes == null){
+			return KEY_FRAME;
+		}
+		return _frameTypes[frame];
+	}
+	public byte[] getFrameTypes(){
+		return _frameTypes;
+	}
+	/**
+	 * @return	The codec quality, or 0 if the codec has none.
+	 */
+	public int getQuality(){
+		return _quality;
+	}
+	/**
+	 * @return	The resolution, in percent of the camera's.
+	 */
+	public int getScale(){
+		return _scale;
+	}
 	public long getTimeStamp(){
 		return _timeStamp;
 	}
 	public int size(){
-//		return Long.BYTES + (_frameOrder.length * Integer.BYTES);
-		return 8 + (_frameOrder.length * 4);
+		return size(_frameOrder.length);
+	}
+	/**
+	 * @param totalFrames	The number of frames in a video segment.
+	 * @return				The size of the header for that many frames.
+	 */
+	public static int size(int totalFrames){
+		return FIXED_SIZE + (totalFrames * FRAME_SIZE);
 	}
 
 	//-------------------------------------------------------------------------
 	//SETS
 	//-------------------------------------------------------------------------
+	public void setCodec(byte codec){
+		_codec = codec;
+	}
 	public void setTimeStamp(long timeStamp){
 		_timeStamp = timeStamp;
 	}
+	/**
+	 * @param decimation	Frames recorded per frame encoded (1-255).
+	 */
+	public void setDecimation(int decimation){
+		_decimation = decimation;
+	}
+	/**
+	 * @param quality	The codec quality (0-255).
+	 */
+	public void setQuality(int quality){
+		_quality = quality;
+	}
+	/**
+	 * @param scale		The resolution, in percent of the camera's (1-100).
+	 */
+	public void setScale(int scale){
+		_scale = scale;
+	}
+	/**
+	 * @param frame		Position in its segment of the first frame (0-65535).
+	 */
+	public void setFirstFrame(int frame){
+		_firstFrame = frame;
+	}
 	public void setFrameOrder(int[] frameOrder){
 		_frameOrder = frameOrder;
 	}
+	public void setFrameTypes(byte[] frameTypes){
+		_frameTypes = frameTypes;
+	}
+
+	/**
+	 * Writes the header at the position of the buffer, which must have
+	 * size() bytes remaining.
+	 * @param buffer	Usually the start of the video segment's buffer.
+	 */
+	public void write(ByteBuffer buffer){
+		assert(_frameOrder != null);
+
+		buffer.putLong(_timeStamp);
+		buffer.put(_codec);
+		buffer.put((byte)_quality);
+		buffer.put((byte)_scale);
+		buffer.put((byte)_decimation);
+		buffer.putShort((short)_firstFrame);
+
+		for(int i = 0; i < _frameOrder.length; i++){
+			buffer.putInt(_frameOrder[i]);
+			buffer.put(getFrameType(i));
+		}
+	}
 
 	//-------------------------------------------------------------------------
 	//TOSTRING
@@ -83,6 +240,9 @@ public class VideoSegmentHeader {
 		StringBuilder sbuilder = new StringBuilder();
 
 		sbuilder.append(printTimeStamp());
+		sbuilder.append(" " + FrameCodec.toString(_codec) + " q" + _quality
+				+ " " + _scale + "% 1/" + _decimation
+				+ (_firstFrame > 0 ? " from " + _firstFrame : "") + "\n");
 		sbuilder.append(printSegmentFrameData());
 		
 		return sbuilder.toString();
@@ -91,19 +251,21 @@ public class VideoSegmentHeader {
 	//-------------------------------------------------------------------------
 	//PRIVATE METHODS
 	//-------------------------------------------------------------------------
-	private void init(byte[] data){
-//		int frameSize = (data.length - Long.BYTES)/Integer.BYTES;
-		int frameSize = (data.length - 8)/4;
-		ByteBuffer buffer = ByteBuffer.allocate(data.length);
-		buffer.put(data);
-		buffer.flip();
+	private void init(ByteBuffer buffer){
+		int frameSize = (buffer.remaining() - FIXED_SIZE)/FRAME_SIZE;
 		_timeStamp = buffer.getLong();
+		_codec = buffer.get();
+		_quality = buffer.get() & 0xFF;
+		_scale = buffer.get() & 0xFF;
+		_decimation = buffer.get() & 0xFF;
+		_firstFrame = buffer.getShort() & 0xFFFF;
 		_frameOrder = new int[frameSize];
+		_frameTypes = new byte[frameSize];
 		
 		for(int i = 0; i < _frameOrder.length; i++){
 			_frameOrder[i] = buffer.getInt();
+			_frameTypes[i] = buffer.get();
 		}
-		buffer = null;
 	}
 	
 	private String printTimeStamp(){
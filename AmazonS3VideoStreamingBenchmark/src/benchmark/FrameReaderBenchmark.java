@@ -0,0 +1,102 @@
+package benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import videoUtility.FrameCodec;
+import videoUtility.ICCFrameReader;
+import videoUtility.VideoSegmentHeader;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Decodes a whole segment of 640x480 JPEG frames with
+ * ICCFrameReader.readAll, one frame at a time on the calling thread or
+ * spread over a pool of one decode thread per core. Frames are a moving
+ * gradient with noise, encoded with ImageIO, so OpenCV is not needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FrameReaderBenchmark {
+
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+
+	@Param({"24", "120"})
+	public int frames;
+
+	@Param({"sequential", "parallel"})
+	public String decode;
+
+	private byte[] 				_data;
+	private ExecutorService 	_executor;
+	private VideoSegmentHeader 	_header;
+
+	@Setup
+	public void setUp() throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		BufferedImage img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+		byte[] pixels = new byte[WIDTH * HEIGHT];
+		int[] frameOrder = new int[frames];
+		Random random = new Random(567);
+
+		for(int i = 0; i < frames; i++){
+			for(int p = 0; p < pixels.length; p++){
+				int x = p % WIDTH, y = p / WIDTH;
+				pixels[p] = (byte)((x + y + i*4) / 5 + random.nextInt(24));
+			}
+			img.getRaster().setDataElements(0, 0, WIDTH, HEIGHT, pixels);
+			ImageIO.write(img, "jpg", data);
+			frameOrder[i] = data.size();
+		}
+		_data = data.toByteArray();
+		_header = new VideoSegmentHeader(frameOrder, new byte[frames]);
+		_header.setCodec(FrameCodec.JPEG);
+		if(decode.equals("parallel")){
+			_executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	@TearDown
+	public void tearDown(){
+		if(_executor != null){
+			_executor.shutdown();
+		}
+	}
+
+	//-------------------------------------------------------------------------
+	//Benchmarks
+	//-------------------------------------------------------------------------
+	/**
+	 * @return	Every frame of the segment, so none is left undecoded.
+	 */
+	@Benchmark
+	public List<BufferedImage> readAll() throws IOException {
+		return ICCFrameReader.readAll(_header, _data, _executor);
+	}
+}
@@ -0,0 +1,144 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import videoSender.ICCSetup;
+import videoSender.SyntheticFrameSource;
+import videoUtility.ICCFrameWriter;
+import videoUtility.Utility;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Encodes one grayscale frame with ICCFrameWriter.write. write encodes
+ * with the codec directly, per resolution and codec; writeImageIO takes
+ * the old ImageIO round trip, which only writes JPEG. Frames come from a
+ * SyntheticFrameSource with a little motion and noise, so the delta codecs
+ * have changes to find, and are copied into the writer's mat first, as
+ * capture would fill it. The writer is reset every SEGMENT_FRAMES frames,
+ * as it is between segments.
+ * <p>
+ * Needs the OpenCV native library, ie. -Dopencv.lib=path, which the
+ * forked JVMs inherit.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameWriterBenchmark {
+
+	private static final int FRAMES = 8;//distinct frames cycled
+	private static final int SEGMENT_FRAMES = 30;
+	private static final double MOTION = 4;
+	private static final double NOISE = 8;
+
+	//-------------------------------------------------------------------------
+	//Benchmarks
+	//-------------------------------------------------------------------------
+	@Benchmark
+	public long write(Direct writer) throws IOException {
+		return writer.write();
+	}
+
+	@Benchmark
+	public long writeImageIO(RoundTrip writer) throws IOException {
+		return writer.write();
+	}
+
+	//-------------------------------------------------------------------------
+	//States
+	//-------------------------------------------------------------------------
+	/**
+	 * A writer and the frames it cycles through.
+	 */
+	public static abstract class Writer {
+		@Param({"320x240", "640x480", "1280x720"})
+		public String resolution;
+
+		private Mat[] 			_frames;
+		private Mat 			_mat;
+		private int 			_next = 0;
+		private int 			_written = 0;
+		private ICCFrameWriter 	_writer;
+
+		@Setup
+		public void setUp(){
+			Utility.loadOpenCV();
+			String[] size = resolution.split("x");
+			SyntheticFrameSource source = new SyntheticFrameSource(Integer.parseInt(size[0]),
+					Integer.parseInt(size[1]), 0, MOTION, NOISE, SyntheticFrameSource.DEFAULT_SEED);
+			_frames = new Mat[FRAMES];
+			for(int i = 0; i < FRAMES; i++){
+				_frames[i] = new Mat();
+				source.read(_frames[i]);
+				Imgproc.cvtColor(_frames[i], _frames[i], Imgproc.COLOR_BGR2GRAY);
+			}
+			source.release();
+
+			_mat = new Mat();
+			_writer = new ICCFrameWriter(_mat, new ByteArrayOutputStream());
+			_writer.setFrames(SEGMENT_FRAMES);
+			configure(_writer);
+		}
+
+		@TearDown
+		public void tearDown(){
+			_writer.close();
+			for(Mat frame : _frames){
+				frame.release();
+			}
+		}
+
+		/**
+		 * Picks how the writer encodes.
+		 */
+		protected abstract void configure(ICCFrameWriter writer);
+
+		long write() throws IOException {
+			if(_written == SEGMENT_FRAMES){
+				_writer.reset();
+				_written = 0;
+			}
+			_frames[_next].copyTo(_mat);
+			_next = (_next + 1) % FRAMES;
+			_writer.write();
+			_written++;
+			return _writer.size();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Direct extends Writer {
+		@Param({"jpeg", "png", "raw", "delta", "block"})
+		public String codec;
+
+		protected void configure(ICCFrameWriter writer){
+			writer.setEncoder(new ICCSetup().setCodec(codec).getFrameEncoder());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class RoundTrip extends Writer {
+		protected void configure(ICCFrameWriter writer){
+			writer.setDirectEncoding(false);
+		}
+	}
+}
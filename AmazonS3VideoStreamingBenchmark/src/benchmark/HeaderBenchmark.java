@@ -0,0 +1,59 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import videoUtility.FrameCodec;
+import videoUtility.VideoSegmentHeader;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Writes a VideoSegmentHeader with data() and reads it back, as the
+ * uploader and downloader do once per segment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderBenchmark {
+
+	@Param({"24", "120"})
+	public int frames;
+
+	private VideoSegmentHeader _header;
+
+	@Setup
+	public void setUp(){
+		int[] frameOrder = new int[frames];
+		byte[] frameTypes = new byte[frames];
+		for(int i = 0; i < frames; i++){
+			frameOrder[i] = (i + 1) * 20000;
+			frameTypes[i] = i % 10 == 0 ? VideoSegmentHeader.KEY_FRAME : VideoSegmentHeader.DELTA_FRAME;
+		}
+		_header = new VideoSegmentHeader(frameOrder, frameTypes);
+		_header.setCodec(FrameCodec.DELTA);
+		_header.setTimeStamp(System.currentTimeMillis());
+	}
+
+	//-------------------------------------------------------------------------
+	//Benchmarks
+	//-------------------------------------------------------------------------
+	@Benchmark
+	public VideoSegmentHeader roundTrip(){
+		return new VideoSegmentHeader(_header.data());
+	}
+}
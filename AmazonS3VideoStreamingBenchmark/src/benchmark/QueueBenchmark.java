@@ -0,0 +1,111 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import videoUtility.BoundedQueue;
+import videoUtility.SharedQueue;
+import videoUtility.SpscQueue;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Hands elements between producer and consumer threads through the queues
+ * between the ICC threads. handoff runs one producer and one consumer on
+ * each queue; contended runs four producers and one consumer on
+ * SharedQueue, since SpscQueue only allows one producer. Each group's score
+ * is its puts plus takes.
+ * <p>
+ * Puts and takes wait at most WAIT, which only happens once the other side
+ * has stopped at the end of an iteration, so no thread is left blocked.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+	private static final int CAPACITY = 64;
+	private static final long WAIT = 10;//ms
+
+	//-------------------------------------------------------------------------
+	//Benchmarks
+	//-------------------------------------------------------------------------
+	@Benchmark
+	@Group("handoff")
+	@GroupThreads(1)
+	public boolean put(Handoff handoff, Producer producer) throws InterruptedException {
+		return handoff._queue.offer(producer.next(), WAIT, TimeUnit.MILLISECONDS);
+	}
+
+	@Benchmark
+	@Group("handoff")
+	@GroupThreads(1)
+	public Integer take(Handoff handoff) throws InterruptedException {
+		return handoff._queue.poll(WAIT, TimeUnit.MILLISECONDS);
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(4)
+	public boolean contendedPut(Contended contended, Producer producer) throws InterruptedException {
+		return contended._queue.offer(producer.next(), WAIT, TimeUnit.MILLISECONDS);
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(1)
+	public Integer contendedTake(Contended contended) throws InterruptedException {
+		return contended._queue.poll(WAIT, TimeUnit.MILLISECONDS);
+	}
+
+	//-------------------------------------------------------------------------
+	//States
+	//-------------------------------------------------------------------------
+	@State(Scope.Group)
+	public static class Handoff {
+		@Param({"SharedQueue", "SpscQueue"})
+		public String queue;
+
+		BoundedQueue<Integer> _queue;
+
+		@Setup
+		public void setUp(){
+			_queue = queue.equals("SpscQueue") ? new SpscQueue<Integer>(CAPACITY)
+					: new SharedQueue<Integer>(CAPACITY);
+		}
+	}
+
+	@State(Scope.Group)
+	public static class Contended {
+		SharedQueue<Integer> _queue = new SharedQueue<>(CAPACITY);
+	}
+
+	/**
+	 * Elements of one producer; small, so they are cached Integers and no
+	 * allocation is measured.
+	 */
+	@State(Scope.Thread)
+	public static class Producer {
+		private int _next = 0;
+
+		Integer next(){
+			_next = (_next + 1) & 0x7F;
+			return _next;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import videoUtility.FrameCodec;
+import videoUtility.SegmentPool;
+import videoUtility.VideoSegment;
+import videoUtility.VideoSegmentHeader;
+
+/**
+ * @author Ryan Babcock
+ *
+ * Assembles a segment from its header and encoded frames, the last step
+ * before upload, two ways:
+ * <ul>
+ * <li>assemble - a new VideoSegment, then data(), as the tests and older
+ * callers build one,</li>
+ * <li>fill - a VideoSegment taken from a SegmentPool, filled and released,
+ * as the ICCRunner builds one.</li>
+ * </ul>
+ * Frames are seeded random bytes of FRAME_BYTES each; only their size
+ * matters here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentBenchmark {
+
+	private static final int FRAME_BYTES = 24 * 1024;
+
+	@Param({"24", "120"})
+	public int frames;
+
+	private byte[] 				_data;
+	private VideoSegmentHeader 	_header;
+	private int 				_index = 0;
+	private SegmentPool 		_pool;
+
+	@Setup
+	public void setUp(){
+		_data = new byte[frames * FRAME_BYTES];
+		new Random(42).nextBytes(_data);
+		int[] frameOrder = new int[frames];
+		for(int i = 0; i < frames; i++){
+			frameOrder[i] = (i + 1) * FRAME_BYTES;
+		}
+		_header = new VideoSegmentHeader(frameOrder, new byte[frames]);
+		_header.setCodec(FrameCodec.JPEG);
+		_header.setTimeStamp(System.currentTimeMillis());
+		_pool = new SegmentPool(2, VideoSegmentHeader.size(frames) + _data.length, false);
+	}
+
+	//-------------------------------------------------------------------------
+	//Benchmarks
+	//-------------------------------------------------------------------------
+	@Benchmark
+	public byte[] assemble(){
+		_index = (_index + 1) % 500;
+		return new VideoSegment(_index, _header, _data, _data.length).data();
+	}
+
+	@Benchmark
+	public long fill() throws InterruptedException {
+		_index = (_index + 1) % 500;
+		VideoSegment segment = _pool.take();
+		segment.fill(_index, _header, _data, _data.length);
+		long size = segment.size();
+		segment.release();
+		return size;
+	}
+}